@@ -0,0 +1,133 @@
+package fr.mgargadennec.es.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import fr.mgargadennec.es.examples.generator.DocumentGenerator;
+import fr.mgargadennec.es.examples.generator.DocumentShape;
+import fr.mgargadennec.es.examples.generator.DocumentWriter;
+import fr.mgargadennec.es.examples.generator.IndexingSink;
+import fr.mgargadennec.es.examples.generator.Vocabulary;
+import fr.mgargadennec.es.examples.index.IndexBootstrap;
+import fr.mgargadennec.es.examples.index.IndexResources;
+import fr.mgargadennec.es.examples.ingest.BulkIngester;
+
+/**
+ * Corpus reproductible pour les benchmarks de recherche
+ * Un seul thread de génération, une seed et une date de référence fixées : le corpus ne dépend que de la seed et du
+ * nombre de documents. Un corpus déjà chargé n'est réutilisé que si son empreinte (nombre de documents et hash des
+ * premiers documents générés) correspond : un changement du générateur ou de son vocabulaire force le rechargement.
+ *
+ * @author mgargadennec
+ *
+ */
+public final class BenchCorpus {
+
+	public static final String INDEX = "mon_index";
+	public static final String TYPE = "mon_type";
+
+	private static final String FINGERPRINT_FILE = "corpus.fingerprint";
+	private static final int FINGERPRINT_DOCS = 1000;
+
+	private BenchCorpus() {
+	}
+
+	/**
+	 * Démarre un noeud dont les données sont conservées entre deux forks JMH, et y charge le corpus s'il n'est pas déjà présent
+	 */
+	public static EmbeddedNode start(String clusterName, int size, long seed) throws IOException, InterruptedException {
+		File home = new File(System.getProperty("java.io.tmpdir"), clusterName + "-" + size + "-" + seed);
+		EmbeddedNode node = new EmbeddedNode(clusterName, home, false);
+		Client client = node.client();
+		File fingerprintFile = new File(home, FINGERPRINT_FILE);
+		String fingerprint = fingerprint(size, seed);
+		boolean loaded = fingerprintFile.exists()
+				&& fingerprint.equals(Files.toString(fingerprintFile, Charsets.UTF_8))
+				&& client.admin().indices().prepareExists(INDEX).get().isExists()
+				&& client.prepareCount(INDEX).get().getCount() == size;
+		if (!loaded) {
+			fingerprintFile.delete();
+			load(client, size, seed);
+			Files.write(fingerprint, fingerprintFile, Charsets.UTF_8);
+		}
+		return node;
+	}
+
+	/**
+	 * (Re)crée l'index et y charge size documents générés avec la seed donnée
+	 */
+	public static void load(Client client, int size, long seed) throws IOException, InterruptedException {
+		if (client.admin().indices().prepareExists(INDEX).get().isExists()) {
+			client.admin().indices().prepareDelete(INDEX).get();
+		}
+		IndexBootstrap bootstrap = IndexBootstrap.builder(client, INDEX)
+				.settings(IndexResources.SETTINGS)
+				.mapping(TYPE, IndexResources.MAPPING)
+				.replicas(0)
+				.build();
+		bootstrap.createForLoad();
+
+		BulkIngester ingester = BulkIngester.builder(client).build();
+		generator(seed).generate(size, new IndexingSink(ingester, INDEX, TYPE));
+		ingester.awaitClose(10, TimeUnit.MINUTES);
+
+		bootstrap.finishLoad();
+		//Fusion des segments : les mesures ne dépendent pas de l'état des merges
+		client.admin().indices().prepareOptimize(INDEX).setMaxNumSegments(1).get();
+	}
+
+	/**
+	 * Un seul thread de génération, date de référence fixe : le corpus ne dépend que de la seed
+	 */
+	private static DocumentGenerator generator(long seed) {
+		return new DocumentGenerator(Vocabulary.DEFAULT, DocumentShape.FULL_WITH_CATEGORY, XContentType.JSON, seed,
+				DocumentGenerator.DEFAULT_REFERENCE_TIME, 1, null);
+	}
+
+	/**
+	 * Nombre de documents et hash des premiers documents, générés comme par load()
+	 */
+	private static String fingerprint(int size, long seed) throws IOException {
+		DocumentWriter writer = generator(seed).newWriter(0);
+		Hasher hasher = Hashing.murmur3_128().newHasher();
+		for (int i = 0; i < Math.min(size, FINGERPRINT_DOCS); i++) {
+			hasher.putBytes(writer.next().toBytes());
+		}
+		return size + "-" + hasher.hash();
+	}
+
+	/**
+	 * Termes de recherche tirés du vocabulaire du générateur
+	 */
+	public static String[] terms(int count, long seed) {
+		Random random = new Random(seed);
+		String[] words = Vocabulary.DEFAULT.getWords();
+		String[] terms = new String[count];
+		for (int i = 0; i < count; i++) {
+			terms[i] = words[random.nextInt(words.length)];
+		}
+		return terms;
+	}
+
+	/**
+	 * Années filtrées, dans la plage du générateur
+	 */
+	public static int[] years(int count, long seed) {
+		Random random = new Random(seed);
+		int[] years = new int[count];
+		for (int i = 0; i < count; i++) {
+			years[i] = 1950 + random.nextInt(2015 - 1950);
+		}
+		return years;
+	}
+}
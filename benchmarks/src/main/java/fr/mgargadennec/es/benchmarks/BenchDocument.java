@@ -0,0 +1,73 @@
+package fr.mgargadennec.es.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.joda.time.DateTime;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import fr.mgargadennec.es.examples.generator.DocumentGenerator;
+import fr.mgargadennec.es.examples.generator.DocumentShape;
+import fr.mgargadennec.es.examples.generator.DocumentWriter;
+import fr.mgargadennec.es.examples.generator.Vocabulary;
+
+/**
+ * Document de benchmark, pré-généré avec le générateur des exemples et disponible dans tous les formats
+ *
+ * @author mgargadennec
+ *
+ */
+public class BenchDocument {
+
+	final String id;
+	final String titre;
+	final String sousTitre;
+	final int year;
+	final String category;
+	final Date createdAt;
+
+	final byte[] json;
+	final byte[] smile;
+
+	private BenchDocument(Map<String, Object> source, byte[] json) throws IOException {
+		this.id = (String) source.get("id");
+		this.titre = (String) source.get("titre");
+		this.sousTitre = (String) source.get("sousTitre");
+		this.year = ((Number) source.get("year")).intValue();
+		this.category = (String) source.get("category");
+		this.createdAt = DateTime.parse((String) source.get("createdAt")).toDate();
+		this.json = json;
+		this.smile = SourceFormat.serialize(this, XContentType.SMILE);
+	}
+
+	public XContentBuilder toXContent(XContentBuilder builder) throws IOException {
+		return builder.startObject()
+				.field("id", id)
+				.field("titre", titre)
+				.field("sousTitre", sousTitre)
+				.field("year", year)
+				.field("category", category)
+				.field("createdAt", createdAt)
+				.endObject();
+	}
+
+	/**
+	 * Corpus reproductible (seed et date de référence fixes) de count documents
+	 */
+	public static List<BenchDocument> corpus(int count, long seed) throws IOException {
+		DocumentWriter writer = new DocumentWriter(Vocabulary.DEFAULT, DocumentShape.FULL_WITH_CATEGORY, XContentType.JSON,
+				DocumentGenerator.DEFAULT_SEED + seed, DocumentGenerator.DEFAULT_REFERENCE_TIME);
+		List<BenchDocument> documents = new ArrayList<BenchDocument>(count);
+		for (int i = 0; i < count; i++) {
+			BytesReference source = writer.next();
+			documents.add(new BenchDocument(XContentHelper.convertToMap(source, false).v2(), source.toBytes()));
+		}
+		return documents;
+	}
+}
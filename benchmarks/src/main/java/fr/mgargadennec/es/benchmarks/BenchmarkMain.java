@@ -0,0 +1,28 @@
+package fr.mgargadennec.es.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Point d'entrée des benchmarks (java -jar target/benchmarks.jar [options JMH])
+ * Identique au Main de JMH, mais les résultats sont écrits par défaut en JSON dans jmh-result.json,
+ * pour pouvoir comparer les versions entre elles.
+ *
+ * @author mgargadennec
+ *
+ */
+public class BenchmarkMain {
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions cmd = new CommandLineOptions(args);
+		Options options = new OptionsBuilder()
+				.parent(cmd)
+				.resultFormat(cmd.getResultFormat().orElse(ResultFormatType.JSON))
+				.result(cmd.getResult().orElse("jmh-result.json"))
+				.build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,124 @@
+package fr.mgargadennec.es.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.mgargadennec.es.examples.index.IndexBootstrap;
+import fr.mgargadennec.es.examples.index.IndexResources;
+import fr.mgargadennec.es.examples.ingest.BulkIngester;
+
+/**
+ * Débit d'indexation bulk
+ * Mesure les documents/s (score principal) et les octets/s (compteur "bytes") selon :
+ *  - le format de la source (Map, XContentBuilder, JSON en byte[], SMILE)
+ *  - la taille des bulks
+ *  - le nombre de bulks envoyés en parallèle (0 = synchrone)
+ *
+ * @author mgargadennec
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+public class BulkIndexingBenchmark {
+
+	static final int DOCUMENTS = 10000;
+	static final String INDEX = "mon_index";
+	static final String TYPE = "mon_type";
+
+	@Param({ "MAP", "XCONTENT", "JSON_BYTES", "SMILE" })
+	SourceFormat format;
+
+	@Param({ "100", "1000", "5000" })
+	int bulkActions;
+
+	@Param({ "0", "1", "4" })
+	int concurrentRequests;
+
+	private EmbeddedNode node;
+	private Client client;
+	private List<BenchDocument> documents;
+
+	/**
+	 * Compteurs secondaires, rapportés par seconde dans les résultats
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Counters {
+		public long bytes;
+		public long failures;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			bytes = 0;
+			failures = 0;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void startNode() throws Exception {
+		node = new EmbeddedNode("bench-bulk");
+		client = node.client();
+		documents = BenchDocument.corpus(DOCUMENTS, 0);
+	}
+
+	/**
+	 * Index recréé à chaque itération, pour que sa taille ne fausse pas les itérations suivantes
+	 */
+	@Setup(Level.Iteration)
+	public void createIndex() throws Exception {
+		if (client.admin().indices().prepareExists(INDEX).get().isExists()) {
+			client.admin().indices().prepareDelete(INDEX).get();
+		}
+		IndexBootstrap.builder(client, INDEX)
+				.settings(IndexResources.SETTINGS)
+				.mapping(TYPE, IndexResources.MAPPING)
+				.build()
+				.createForLoad();
+	}
+
+	@TearDown(Level.Trial)
+	public void stopNode() {
+		node.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(DOCUMENTS)
+	public void bulkIndex(Counters counters) throws Exception {
+		BulkIngester ingester = BulkIngester.builder(client)
+				.bulkActions(bulkActions)
+				.bulkSize(new ByteSizeValue(-1))
+				.flushInterval(null)
+				.concurrentRequests(concurrentRequests)
+				.build();
+		for (BenchDocument document : documents) {
+			ingester.add(format.source(new IndexRequest(INDEX, TYPE), document));
+		}
+		ingester.awaitClose(1, TimeUnit.MINUTES);
+
+		counters.bytes += ingester.getStats().getBytes();
+		counters.failures += ingester.getStats().getFailures();
+	}
+}
@@ -0,0 +1,33 @@
+package fr.mgargadennec.es.benchmarks;
+
+import org.elasticsearch.client.Client;
+
+/**
+ * Etat des caches (filtres, fielddata) avant chaque requête
+ *
+ * @author mgargadennec
+ *
+ */
+public enum CacheState {
+
+	/**
+	 * Caches conservés d'une requête à l'autre
+	 */
+	WARM {
+		@Override
+		public void prepare(Client client, String indexName) {
+		}
+	},
+
+	/**
+	 * Caches vidés avant chaque requête
+	 */
+	COLD {
+		@Override
+		public void prepare(Client client, String indexName) {
+			client.admin().indices().prepareClearCache(indexName).get();
+		}
+	};
+
+	public abstract void prepare(Client client, String indexName);
+}
@@ -0,0 +1,55 @@
+package fr.mgargadennec.es.benchmarks;
+
+import java.io.Closeable;
+import java.io.File;
+
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.io.FileSystemUtils;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.node.NodeBuilder;
+
+import com.google.common.io.Files;
+
+/**
+ * Noeud embarqué (transport local, sans HTTP)
+ * Par défaut dans un répertoire temporaire supprimé à la fermeture ; un répertoire persistant permet de réutiliser
+ * un corpus déjà chargé d'un fork JMH à l'autre.
+ *
+ * @author mgargadennec
+ *
+ */
+public class EmbeddedNode implements Closeable {
+
+	private final File home;
+	private final boolean deleteOnClose;
+	private final Node node;
+
+	public EmbeddedNode(String clusterName) {
+		this(clusterName, Files.createTempDir(), true);
+	}
+
+	public EmbeddedNode(String clusterName, File home, boolean deleteOnClose) {
+		this.home = home;
+		this.deleteOnClose = deleteOnClose;
+		Settings settings = ImmutableSettings.settingsBuilder()
+				.put("path.home", home.getAbsolutePath())
+				.put("http.enabled", false)
+				.build();
+		this.node = NodeBuilder.nodeBuilder().clusterName(clusterName).local(true).settings(settings).node();
+		client().admin().cluster().prepareHealth().setWaitForYellowStatus().get();
+	}
+
+	public Client client() {
+		return node.client();
+	}
+
+	@Override
+	public void close() {
+		node.close();
+		if (deleteOnClose) {
+			FileSystemUtils.deleteRecursively(home);
+		}
+	}
+}
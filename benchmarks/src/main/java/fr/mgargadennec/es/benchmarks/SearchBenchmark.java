@@ -0,0 +1,89 @@
+package fr.mgargadennec.es.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.mgargadennec.es.examples.search.QueryShape;
+
+/**
+ * Latence et débit de chaque famille de requêtes des exemples
+ * Le corpus (seedé) est chargé une seule fois par taille, puis réutilisé par tous les forks.
+ *
+ * En mode COLD, les caches sont vidés avant chaque requête (hors mesure) : c'est le comportement de la première
+ * requête après un refresh ou un merge.
+ *
+ * @author mgargadennec
+ *
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class SearchBenchmark {
+
+	static final long SEED = 42L;
+	static final int INPUTS = 1024;
+
+	@Param({ "QUERY_STRING", "FUNCTION_SCORE", "BOOL_SIMPLE_QUERY_STRING", "FILTERED_YEAR", "AGGREGATIONS" })
+	QueryShape shape;
+
+	@Param({ "10000", "100000", "1000000" })
+	int corpusSize;
+
+	@Param({ "WARM", "COLD" })
+	CacheState cache;
+
+	private EmbeddedNode node;
+	private Client client;
+	private String[] terms;
+	private int[] years;
+
+	/**
+	 * Curseur sur les saisies, propre à chaque thread
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+		int next;
+	}
+
+	@Setup(Level.Trial)
+	public void startNode() throws Exception {
+		node = BenchCorpus.start("bench-search", corpusSize, SEED);
+		client = node.client();
+		terms = BenchCorpus.terms(INPUTS, SEED);
+		years = BenchCorpus.years(INPUTS, SEED);
+	}
+
+	@Setup(Level.Invocation)
+	public void prepareCache() {
+		cache.prepare(client, BenchCorpus.INDEX);
+	}
+
+	@TearDown(Level.Trial)
+	public void stopNode() {
+		node.close();
+	}
+
+	@Benchmark
+	public SearchResponse search(Cursor cursor) {
+		int i = cursor.next++ & (INPUTS - 1);
+		return shape.prepare(client, BenchCorpus.INDEX, terms[i], years[i]).get();
+	}
+}
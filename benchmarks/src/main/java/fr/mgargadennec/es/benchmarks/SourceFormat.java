@@ -0,0 +1,73 @@
+package fr.mgargadennec.es.benchmarks;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.collect.Maps;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
+
+/**
+ * Format de la source d'un document à indexer
+ *
+ * @author mgargadennec
+ *
+ */
+public enum SourceFormat {
+
+	/**
+	 * setSource(Map) : la Map est construite puis sérialisée pour chaque document (comme dans les exemples)
+	 */
+	MAP {
+		@Override
+		public IndexRequest source(IndexRequest request, BenchDocument document) {
+			Map<String, Object> item = Maps.newHashMap();
+			item.put("id", document.id);
+			item.put("titre", document.titre);
+			item.put("sousTitre", document.sousTitre);
+			item.put("year", document.year);
+			item.put("category", document.category);
+			item.put("createdAt", document.createdAt);
+			return request.source(item);
+		}
+	},
+
+	/**
+	 * setSource(XContentBuilder) : écriture champ par champ, sans Map intermédiaire
+	 */
+	XCONTENT {
+		@Override
+		public IndexRequest source(IndexRequest request, BenchDocument document) throws IOException {
+			return request.source(document.toXContent(XContentFactory.jsonBuilder()));
+		}
+	},
+
+	/**
+	 * setSource(byte[]) : JSON déjà sérialisé
+	 */
+	JSON_BYTES {
+		@Override
+		public IndexRequest source(IndexRequest request, BenchDocument document) {
+			return request.source(document.json);
+		}
+	},
+
+	/**
+	 * setSource(byte[]) : SMILE (JSON binaire) déjà sérialisé
+	 */
+	SMILE {
+		@Override
+		public IndexRequest source(IndexRequest request, BenchDocument document) {
+			return request.source(document.smile);
+		}
+	};
+
+	public abstract IndexRequest source(IndexRequest request, BenchDocument document) throws IOException;
+
+	static byte[] serialize(BenchDocument document, XContentType contentType) throws IOException {
+		XContentBuilder builder = XContentFactory.contentBuilder(contentType);
+		return document.toXContent(builder).bytes().toBytes();
+	}
+}
@@ -5,8 +5,8 @@ import java.util.UUID;
 import org.elasticsearch.action.admin.indices.alias.Alias;
 import org.elasticsearch.action.admin.indices.get.GetIndexResponse;
 import org.elasticsearch.client.Client;
-import org.elasticsearch.node.Node;
-import org.elasticsearch.node.NodeBuilder;
+
+import fr.mgargadennec.es.examples.node.FastNode;
 
 /**
  * Création d'index
@@ -17,8 +17,8 @@ import org.elasticsearch.node.NodeBuilder;
 public class Example1 
 {
     public static void main( String[] args ){
-    	//Création d'un noeud et récupération d'un client
-    	Node node = NodeBuilder.nodeBuilder().clusterName("exemple1").local(true).node();
+    	//Création d'un noeud (profil rapide : local, en mémoire, sans HTTP) et récupération d'un client
+    	FastNode node = FastNode.builder("exemple1").build();
     	Client client = node.client();
     	
     	//On créé un index
@@ -30,6 +30,9 @@ public class Example1
     	for(String index: indices.getIndices()){
     		System.out.println("Found index : "+index);
     	}
+
+    	//Décomposition du temps de démarrage du noeud
+    	node.getTiming().print(System.out);
     	
     	node.close();
     	
@@ -1,21 +1,27 @@
 package fr.mgargadennec.es.examples;
 
+import java.io.IOException;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
 
-import org.elasticsearch.action.bulk.BulkRequestBuilder;
-import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.count.CountResponse;
 import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.action.search.SearchResponse;
-import org.elasticsearch.client.Client;
 import org.elasticsearch.common.collect.Maps;
 import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.node.Node;
 import org.elasticsearch.node.NodeBuilder;
-import org.fluttercode.datafactory.impl.DataFactory;
+
+import fr.mgargadennec.es.examples.client.InstrumentedClient;
+import fr.mgargadennec.es.examples.generator.DocumentGenerator;
+import fr.mgargadennec.es.examples.generator.DocumentShape;
+import fr.mgargadennec.es.examples.generator.IndexingSink;
+import fr.mgargadennec.es.examples.index.IndexBootstrap;
+import fr.mgargadennec.es.examples.ingest.BulkIngester;
+import fr.mgargadennec.es.examples.ingest.IngestStats;
 
 /**
  * Indexation + Indexation Bulk
@@ -28,12 +34,13 @@ import org.fluttercode.datafactory.impl.DataFactory;
  */
 public class Example2 
 {
-    public static void main( String[] args ) throws InterruptedException
+    public static void main( String[] args ) throws InterruptedException, IOException
     {
 
     	//Création d'un noeud et récupération d'un client
     	Node node = NodeBuilder.nodeBuilder().clusterName("exemple2").node();
-    	Client client = node.client();
+    	//Client instrumenté : latences, tailles et échecs de chaque action, exposés en JMX
+    	InstrumentedClient client = InstrumentedClient.builder(node.client()).name("exemple2").build();
 
         //On attend le statut "jaune" (= index rechargés)
         client.admin().cluster().prepareHealth().setWaitForYellowStatus().get();
@@ -41,15 +48,14 @@ public class Example2
     	//Nettoyage des données précédentes (_all indique que tous les index doivent être supprimés)
     	client.admin().indices().prepareDelete("_all").execute().actionGet();
     	
-    	//Datafactory = générateur de données aléatoires
-    	DataFactory df = new DataFactory();
 
     	//Paramétrage
     	String indexName = "mon_index";
     	String type = "mon_type";
     	
-    	//Création de l'index
-    	client.admin().indices().prepareCreate(indexName).execute().actionGet();
+    	//Création de l'index, avec des settings optimisés pour le chargement
+    	IndexBootstrap bootstrap = IndexBootstrap.builder(client, indexName).build();
+    	bootstrap.createForLoad();
 
     	//Un objet basique à indexer
     	Map<String,Object> object = Maps.newHashMap();
@@ -61,34 +67,24 @@ public class Example2
         System.out.println("First content indexed with id: " + response.getId()+" and type "+response.getType());
 
     	//Indexation en bulk
-        BulkRequestBuilder bulkRequest = client.prepareBulk();
-
-        //Pour 5431 éléments
-        for(int i=0;i<5341;i++){
-        	StringBuilder b = new StringBuilder();
-			do{
-				b.append(df.getRandomWord(2,10));
-				b.append(" ");
-			}while(b.length()<70);
+        BulkIngester ingester = BulkIngester.builder(client).stats(new IngestStats(true)).build();
 
-            //On prend un titre aléatoire
-			Map<String,Object> item = Maps.newHashMap();
-			item.put("titre",b.toString());
+        //Génération parallèle des documents aléatoires, sérialisés directement dans le bulk
+        DocumentGenerator generator = new DocumentGenerator(DocumentShape.TITLE_ONLY);
+        generator.generate(5341, new IndexingSink(ingester, indexName, type));
+        //Envoi des derniers documents et attente de la fin des bulks en cours
+        ingester.awaitClose(1, TimeUnit.MINUTES);
+        System.out.println(ingester.getStats());
 
-            //Et on ajoute la requête préparée au bulk
-        	bulkRequest.add(client.prepareIndex(indexName,type).setSource(item));
-        }
-        //Execution du bulk
-        BulkResponse bulkResponse = bulkRequest.execute().actionGet();
-
-        //Affichage de la réponse
-        System.out.println(bulkResponse.getItems().length+" documents indexed in "+bulkResponse.getTookInMillis()+"ms. Any failures ? "+bulkResponse.hasFailures() );
-    	        
-        Thread.sleep(2000);
+        //Restauration des settings de production, refresh explicite et attente du statut de santé
+        bootstrap.finishLoad();
 
         //On compte le nombre total de documents dans l'index
         CountResponse countResponse2 = client.prepareCount(indexName).get();
         System.out.println("Total documents "+countResponse2.getCount());
+
+        //Bilan des actions exécutées
+        client.metrics().dump(System.out);
         
         
     	node.close();
@@ -1,10 +1,10 @@
 package fr.mgargadennec.es.examples;
 
+import java.io.IOException;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
 
-import org.elasticsearch.action.bulk.BulkRequestBuilder;
-import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.count.CountResponse;
 import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.action.search.SearchResponse;
@@ -13,7 +13,15 @@ import org.elasticsearch.common.collect.Maps;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.node.Node;
 import org.elasticsearch.node.NodeBuilder;
-import org.fluttercode.datafactory.impl.DataFactory;
+
+import fr.mgargadennec.es.examples.generator.DocumentGenerator;
+import fr.mgargadennec.es.examples.generator.DocumentShape;
+import fr.mgargadennec.es.examples.generator.IndexingSink;
+import fr.mgargadennec.es.examples.index.IndexBootstrap;
+import fr.mgargadennec.es.examples.ingest.BulkIngester;
+import fr.mgargadennec.es.examples.ingest.IngestStats;
+import fr.mgargadennec.es.examples.search.ResponseProfile;
+import fr.mgargadennec.es.examples.search.ResponseRenderer;
 
 /**
  * Recherche sans mapping
@@ -25,7 +33,7 @@ import org.fluttercode.datafactory.impl.DataFactory;
  */
 public class Example3 
 {
-    public static void main( String[] args ) throws InterruptedException
+    public static void main( String[] args ) throws InterruptedException, IOException
     {
 
     	//Création d'un noeud et récupération d'un client
@@ -38,15 +46,14 @@ public class Example3
     	//Nettoyage des données précédentes
     	client.admin().indices().prepareDelete("_all").execute().actionGet();
     	
-    	//Datafactory
-    	DataFactory df = new DataFactory();
 
     	//Paramétrage
     	String indexName = "mon_index";
     	String type = "mon_type";
     	
-    	//Création de l'index
-    	client.admin().indices().prepareCreate(indexName).execute().actionGet();
+    	//Création de l'index, avec des settings optimisés pour le chargement
+    	IndexBootstrap bootstrap = IndexBootstrap.builder(client, indexName).build();
+    	bootstrap.createForLoad();
 
     	//Un objet à indexer
     	Map<String,Object> object = Maps.newHashMap();
@@ -58,24 +65,17 @@ public class Example3
         System.out.println("First content indexed with id: " + response.getId()+" and type "+response.getType());
 
     	//Indexation en bulk
-        BulkRequestBuilder bulkRequest = client.prepareBulk();
-        
-        for(int i=0;i<5999;i++){
-        	StringBuilder b = new StringBuilder();
-			do{
-				b.append(df.getRandomWord(2,10));
-				b.append(" ");
-			}while(b.length()<70);
-			
-			Map<String,Object> item = Maps.newHashMap();
-			item.put("titre",b.toString());
-				
-        	bulkRequest.add(client.prepareIndex(indexName,type).setSource(item));
-        }
-        BulkResponse bulkResponse = bulkRequest.execute().actionGet();
-        System.out.println(bulkResponse.getItems().length+" documents indexed in "+bulkResponse.getTookInMillis()+"ms. Any failures ? "+bulkResponse.hasFailures() );
-    	        
-        Thread.sleep(2000);
+        BulkIngester ingester = BulkIngester.builder(client).stats(new IngestStats(true)).build();
+
+        //Génération parallèle des documents aléatoires, sérialisés directement dans le bulk
+        DocumentGenerator generator = new DocumentGenerator(DocumentShape.TITLE_ONLY);
+        generator.generate(5999, new IndexingSink(ingester, indexName, type));
+        //Envoi des derniers documents et attente de la fin des bulks en cours
+        ingester.awaitClose(1, TimeUnit.MINUTES);
+        System.out.println(ingester.getStats());
+
+        //Restauration des settings de production, refresh explicite et attente du statut de santé
+        bootstrap.finishLoad();
 
         //On compte le nombre total de documents dans l'index
         CountResponse countResponse2 = client.prepareCount(indexName).get();
@@ -90,7 +90,10 @@ public class Example3
     	System.exit(0);
     }
 
-	private static void let_start_playing(Client client, String indexName) {
+	private static void let_start_playing(Client client, String indexName) throws IOException {
+
+        //Affichage des réponses en streaming, hit par hit, sans construire de String
+        ResponseRenderer renderer = new ResponseRenderer(System.out, true);
 
         Scanner keyboard = new Scanner(System.in);
         String queryString = null;
@@ -98,9 +101,10 @@ public class Example3
         	System.out.println("Enter a search term :");
             queryString = keyboard.nextLine();	
             
-            //Une réponse
-            SearchResponse searchResponse = client.prepareSearch(indexName).setQuery(QueryBuilders.queryStringQuery(queryString)).get();
-            System.out.println(searchResponse.toString());
+            //Une réponse (seul le titre est renvoyé)
+            SearchResponse searchResponse = ResponseProfile.TITLES.apply(
+            		client.prepareSearch(indexName).setQuery(QueryBuilders.queryStringQuery(queryString))).get();
+            renderer.render(searchResponse);
             
         }while(!queryString.equals("exit"));
         keyboard.close();
@@ -1,14 +1,11 @@
 package fr.mgargadennec.es.examples;
 
 import java.io.IOException;
-import java.net.URL;
 import java.util.Map;
 import java.util.Scanner;
-import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import org.elasticsearch.action.admin.indices.delete.DeleteIndexResponse;
-import org.elasticsearch.action.bulk.BulkRequestBuilder;
-import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.count.CountResponse;
 import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.action.search.SearchResponse;
@@ -17,13 +14,23 @@ import org.elasticsearch.common.collect.Maps;
 import org.elasticsearch.common.joda.time.DateTime;
 import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.node.Node;
 import org.elasticsearch.node.NodeBuilder;
-import org.fluttercode.datafactory.impl.DataFactory;
 
-import com.google.common.base.Charsets;
-import com.google.common.io.Resources;
+import fr.mgargadennec.es.examples.generator.DocumentGenerator;
+import fr.mgargadennec.es.examples.generator.DocumentShape;
+import fr.mgargadennec.es.examples.generator.IndexingSink;
+import fr.mgargadennec.es.examples.id.FlakeIdGenerator;
+import fr.mgargadennec.es.examples.id.IdGenerator;
+import fr.mgargadennec.es.examples.index.IndexBootstrap;
+import fr.mgargadennec.es.examples.index.IndexResources;
+import fr.mgargadennec.es.examples.search.ResponseProfile;
+import fr.mgargadennec.es.examples.search.ResponseRenderer;
+import fr.mgargadennec.es.examples.ingest.BulkIngester;
+import fr.mgargadennec.es.examples.ingest.IngestStats;
+import fr.mgargadennec.es.examples.metrics.StatsSampler;
 
 /**
  * Recherche avec Mapping
@@ -57,19 +64,22 @@ public class Example4
 		//Initialisation de l'index
     	initIndex(client, indexName, type);
 
+        //Affichage des réponses en streaming, hit par hit, sans construire de String
+        ResponseRenderer renderer = new ResponseRenderer(System.out, true);
+
         Scanner keyboard = new Scanner(System.in);
         String queryString = null;
         do{
         	System.out.println("Enter a search term :");
             queryString = keyboard.nextLine();	
             
-            //Une réponse
-            SearchResponse searchResponse = client.prepareSearch(indexName).setQuery(
+            //Une réponse (seul le titre est renvoyé)
+            SearchResponse searchResponse = ResponseProfile.TITLES.apply(client.prepareSearch(indexName).setQuery(
             		QueryBuilders.functionScoreQuery(QueryBuilders.queryStringQuery(queryString)
                     		.field("titre",10)
                     		.field("sousTitre"))
-            		).get();
-            System.out.println(searchResponse.toString());
+            		)).get();
+            renderer.render(searchResponse);
             
         }while(!queryString.equals("exit"));
         keyboard.close();
@@ -84,65 +94,55 @@ public class Example4
     	DeleteIndexResponse deleteResponse = client.admin().indices().prepareDelete("_all").get();
     	System.out.println("Is deleted : "+deleteResponse.isAcknowledged());
     	 
-    	//Datafactory
-    	DataFactory df = new DataFactory();
 
-		//Chargement d'un fichier JSON de mapping à l'aide de Guava (peut-être buildé manuellement à l'aide des XContentBuilder également)
-    	URL url = Resources.getResource("mapping.json");
-    	String mapping = Resources.toString(url, Charsets.UTF_8);
-    	
-    	System.out.println(mapping);
+    	//Création de l'index avec settings (analyzers) et mapping, optimisé pour le chargement
+    	//(settings.json et mapping.json peuvent aussi être construits à l'aide des XContentBuilder)
+    	IndexBootstrap bootstrap = IndexBootstrap.builder(client, indexName)
+    			.settings(IndexResources.SETTINGS)
+    			.mapping(type, IndexResources.MAPPING)
+    			.build();
+    	bootstrap.createForLoad();
 
-		//Chargement d'un fichier JSON de settings à l'aide de Guava (peut-être buildé manuellement à l'aide des XContentBuilder également)
-    	URL urlSettings = Resources.getResource("settings.json");
-    	String settings = Resources.toString(urlSettings, Charsets.UTF_8);
-    	System.out.println(settings);
-    	
-    	//Création de l'index avec mapping
-    	client
-    		.admin()
-    		.indices()
-    		.prepareCreate(indexName)
-    		.setSettings(settings) //Application des settings sur l'index
-    		.addMapping(type, mapping) // Application des mappings sur le type voulu (peut-etre ajouté après création)
-    			.execute().actionGet();
+    	//Identifiants ordonnés dans le temps, sans verrou, utilisés aussi comme _id
+    	IdGenerator ids = new FlakeIdGenerator();
 
     	//Un objet à indexer
+    	String id = ids.next();
     	Map<String,Object> object = Maps.newHashMap();
-    	object.put("id",UUID.randomUUID().toString());
+    	object.put("id",id);
     	object.put("titre","Ma première indexation est un succès!");
     	object.put("sousTitre","En espérant qu'aucune erreur ne vienne poser problème :'( ");
     	object.put("year",2015);
     	object.put("createdAt",DateTime.now());
     	
     	//Indexation unitaire
-    	IndexResponse response = client.prepareIndex(indexName, type).setSource(object).execute().actionGet();
+    	IndexResponse response = client.prepareIndex(indexName, type, id).setSource(object).execute().actionGet();
         System.out.println("First content indexed with id: " + response.getId()+" and type "+response.getType());
 
+    	//Echantillonnage des statistiques du cluster (segments, merges, refresh, GC, rejets) pendant le chargement
+    	StatsSampler sampler = StatsSampler.builder(client)
+    			.indices(indexName)
+    			.interval(TimeValue.timeValueMillis(500))
+    			.build()
+    			.start();
+
     	//Indexation en bulk
-        BulkRequestBuilder bulkRequest = client.prepareBulk();
-        
-        for(int i=0;i<5999;i++){
-        	StringBuilder b = new StringBuilder();
-			do{
-				b.append(df.getRandomWord(2,10));
-				b.append(" ");
-			}while(b.length()<70);
-
-			//On manipule dans l'objet différents types
-			Map<String,Object> item = Maps.newHashMap();
-			item.put("id",UUID.randomUUID().toString()); //ID : ne doit pas être analysé
-			item.put("titre",b.toString()); //Titre : analysé avec l'analyzer "french"
-			item.put("sousTitre",b.toString()); // Sous-Titre : analyzer custom
-			item.put("year",df.getNumberBetween(1950, 2015)); // Année : entier aléatoire
-			item.put("createdAt",df.getDateBetween(DateTime.now().minusYears(3).toDate(), DateTime.now().toDate())); // ES gère très bien les dates (merci JodaTime)
-
-        	bulkRequest.add(client.prepareIndex(indexName,type).setSource(item));
-        }
-        BulkResponse bulkResponse = bulkRequest.execute().actionGet();
-        System.out.println(bulkResponse.getItems().length+" documents indexed in "+bulkResponse.getTookInMillis()+"ms. Any failures ? "+bulkResponse.hasFailures() );
-    	        
-        Thread.sleep(2000);
+        BulkIngester ingester = BulkIngester.builder(client).stats(new IngestStats(true)).build();
+
+        //Génération parallèle des documents aléatoires, sérialisés directement dans le bulk
+        DocumentGenerator generator = new DocumentGenerator(DocumentShape.FULL, ids);
+        generator.generate(5999, new IndexingSink(ingester, indexName, type));
+        //Envoi des derniers documents et attente de la fin des bulks en cours
+        ingester.awaitClose(1, TimeUnit.MINUTES);
+        System.out.println(ingester.getStats());
+
+        //Restauration des settings de production, refresh explicite et attente du statut de santé
+        bootstrap.finishLoad();
+
+        //Dernier relevé, puis résumé du chargement
+        sampler.sample();
+        sampler.close();
+        sampler.printSummary(System.out);
 
         //On compte le nombre total de documents dans l'index
         CountResponse countResponse2 = client.prepareCount(indexName).get();
@@ -1,14 +1,15 @@
 package fr.mgargadennec.es.examples;
 
 import java.io.IOException;
-import java.net.URL;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 import org.elasticsearch.action.admin.indices.delete.DeleteIndexResponse;
-import org.elasticsearch.action.bulk.BulkRequestBuilder;
-import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.count.CountResponse;
 import org.elasticsearch.action.delete.DeleteResponse;
 import org.elasticsearch.action.index.IndexResponse;
@@ -22,10 +23,20 @@ import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.node.Node;
 import org.elasticsearch.node.NodeBuilder;
-import org.fluttercode.datafactory.impl.DataFactory;
 
-import com.google.common.base.Charsets;
-import com.google.common.io.Resources;
+import fr.mgargadennec.es.examples.client.CachingClient;
+import fr.mgargadennec.es.examples.generator.DocumentGenerator;
+import fr.mgargadennec.es.examples.generator.DocumentShape;
+import fr.mgargadennec.es.examples.generator.IndexingSink;
+import fr.mgargadennec.es.examples.id.FlakeIdGenerator;
+import fr.mgargadennec.es.examples.id.IdGenerator;
+import fr.mgargadennec.es.examples.index.IndexBootstrap;
+import fr.mgargadennec.es.examples.index.IndexResources;
+import fr.mgargadennec.es.examples.ingest.BulkIngester;
+import fr.mgargadennec.es.examples.ingest.IngestStats;
+import fr.mgargadennec.es.examples.search.Autocomplete;
+import fr.mgargadennec.es.examples.search.ResponseProfile;
+import fr.mgargadennec.es.examples.search.ResponseRenderer;
 
 /**
  * Recherche builders
@@ -54,6 +65,16 @@ public class Example5
     	String type = "mon_type";
     	
     	initIndex(client, indexName, type);
+
+    	//Cache des recherches côté client : une saisie déjà faite est servie sans aller-retour vers le cluster
+    	//(le cache est invalidé dès que l'index est modifié ou rafraîchi)
+    	CachingClient searchClient = CachingClient.builder(client).build();
+
+    	//Autocomplétion sur le titre : completion suggester (FST en mémoire), fuzzy, avec debounce des frappes
+    	Autocomplete autocomplete = Autocomplete.builder(client, indexName).build();
+
+    	//Affichage des réponses en streaming, hit par hit, sans construire de String
+    	ResponseRenderer renderer = new ResponseRenderer(System.out, true);
     	
         Scanner keyboard = new Scanner(System.in);
         String queryString = null;
@@ -61,17 +82,39 @@ public class Example5
         	System.out.println("Enter a search term :");
             queryString = keyboard.nextLine();	
 
+            //Saisie simulée caractère par caractère : les frappes trop rapprochées sont annulées, seule la dernière
+            //interroge le suggester
+            CompletableFuture<List<String>> suggestions = null;
+            for (int i = 1; i <= queryString.length(); i++) {
+            	suggestions = autocomplete.type(queryString.substring(0, i));
+            	Thread.sleep(30);
+            }
+            if (suggestions != null) {
+            	//Echec ou délai dépassé : pas de suggestion, la recherche a lieu quand même
+            	List<String> titles = suggestions.exceptionally(failure -> {
+            		Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+            		System.out.println("Suggestions failed : " + cause);
+            		return Collections.emptyList();
+            	}).join();
+            	System.out.println("Suggestions : " + titles);
+            }
+
         	QueryBuilder query = QueryBuilders.boolQuery().should(
         				QueryBuilders.simpleQueryStringQuery(queryString))
         			.mustNot(
     					QueryBuilders.simpleQueryStringQuery("cold"));
         	
             
-            SearchResponse searchResponse = client.prepareSearch(indexName).setQuery(query).get();
-            System.out.println(searchResponse.toString());
+            //Seul le titre est renvoyé
+            SearchResponse searchResponse = ResponseProfile.TITLES.apply(searchClient.prepareSearch(indexName).setQuery(query)).get();
+            renderer.render(searchResponse);
             
         }while(!queryString.equals("exit"));
         keyboard.close();
+        System.out.println("Search cache : "+searchClient.stats());
+        System.out.println("Autocomplete : "+autocomplete);
+        autocomplete.close();
+        searchClient.close();
         
     	node.close();
     	
@@ -83,55 +126,44 @@ public class Example5
     	DeleteIndexResponse deleteResponse= client.admin().indices().prepareDelete("_all").get();
     	System.out.println("Is deleted : "+deleteResponse.isAcknowledged());
     	
-    	Thread.sleep(2000);
-    	
-    	//Datafactory
-    	DataFactory df = new DataFactory();
 
-    	URL url = Resources.getResource("mapping.json");
-    	String mapping = Resources.toString(url, Charsets.UTF_8);
-    	
-    	URL urlSettings = Resources.getResource("settings.json");
-    	String settings = Resources.toString(urlSettings, Charsets.UTF_8);
-    	
-    	//Création de l'index avec mapping
-    	client.admin().indices().prepareCreate(indexName).setSettings(settings).addMapping(type, mapping).execute().actionGet();
+    	//Création de l'index avec settings (analyzers) et mapping, optimisé pour le chargement
+    	//(settings.json et mapping.json peuvent aussi être construits à l'aide des XContentBuilder)
+    	//Le sous-champ titre.suggest (completion) est alimenté à l'indexation, à partir du titre
+    	IndexBootstrap bootstrap = IndexBootstrap.builder(client, indexName)
+    			.settings(IndexResources.SETTINGS)
+    			.mapping(type, IndexResources.MAPPING_SUGGEST)
+    			.build();
+    	bootstrap.createForLoad();
+
+    	//Identifiants ordonnés dans le temps, sans verrou, utilisés aussi comme _id
+    	IdGenerator ids = new FlakeIdGenerator();
 
     	//Un objet à indexer
+    	String id = ids.next();
     	Map<String,Object> object = Maps.newHashMap();
-    	object.put("id",UUID.randomUUID().toString());
+    	object.put("id",id);
     	object.put("titre","Ma première indexation est un succès!");
     	object.put("sousTitre","En espérant qu'aucune erreur ne vienne poser problème :'( ");
     	object.put("year",2015);
     	object.put("createdAt",DateTime.now());
     	
     	//Indexation unitaire
-    	IndexResponse response = client.prepareIndex(indexName, type).setSource(object).execute().actionGet();
+    	IndexResponse response = client.prepareIndex(indexName, type, id).setSource(object).execute().actionGet();
         System.out.println("First content indexed with id: " + response.getId()+" and type "+response.getType());
 
     	//Indexation en bulk
-        BulkRequestBuilder bulkRequest = client.prepareBulk();
-        
-        for(int i=0;i<5999;i++){
-        	StringBuilder b = new StringBuilder();
-			do{
-				b.append(df.getRandomWord(2,10));
-				b.append(" ");
-			}while(b.length()<70);
-			
-			Map<String,Object> item = Maps.newHashMap();
-			item.put("id",UUID.randomUUID().toString());
-			item.put("titre",b.toString());
-			item.put("sousTitre",b.toString());
-			item.put("year",df.getNumberBetween(1950, 2015));
-			item.put("createdAt",df.getDateBetween(DateTime.now().minusYears(3).toDate(), DateTime.now().toDate()));
-				
-        	bulkRequest.add(client.prepareIndex(indexName,type).setSource(item));
-        }
-        BulkResponse bulkResponse = bulkRequest.execute().actionGet();
-        System.out.println(bulkResponse.getItems().length+" documents indexed in "+bulkResponse.getTookInMillis()+"ms. Any failures ? "+bulkResponse.hasFailures() );
-    	        
-        Thread.sleep(2000);
+        BulkIngester ingester = BulkIngester.builder(client).stats(new IngestStats(true)).build();
+
+        //Génération parallèle des documents aléatoires, sérialisés directement dans le bulk
+        DocumentGenerator generator = new DocumentGenerator(DocumentShape.FULL, ids);
+        generator.generate(5999, new IndexingSink(ingester, indexName, type));
+        //Envoi des derniers documents et attente de la fin des bulks en cours
+        ingester.awaitClose(1, TimeUnit.MINUTES);
+        System.out.println(ingester.getStats());
+
+        //Restauration des settings de production, refresh explicite et attente du statut de santé
+        bootstrap.finishLoad();
 
         //On compte le nombre total de documents dans l'index
         CountResponse countResponse2 = client.prepareCount(indexName).get();
@@ -1,13 +1,12 @@
 package fr.mgargadennec.es.examples;
 
 import java.io.IOException;
-import java.net.URL;
 import java.util.Map;
 import java.util.Scanner;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
-import org.elasticsearch.action.bulk.BulkRequestBuilder;
-import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.count.CountResponse;
 import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.action.search.SearchResponse;
@@ -16,6 +15,7 @@ import org.elasticsearch.common.collect.Maps;
 import org.elasticsearch.common.joda.time.DateTime;
 import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.query.FilterBuilders;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.node.Node;
@@ -23,10 +23,22 @@ import org.elasticsearch.node.NodeBuilder;
 import org.elasticsearch.search.aggregations.AggregationBuilder;
 import org.elasticsearch.search.aggregations.AggregationBuilders;
 import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogram.Interval;
-import org.fluttercode.datafactory.impl.DataFactory;
 
-import com.google.common.base.Charsets;
-import com.google.common.io.Resources;
+import fr.mgargadennec.es.examples.client.AsyncClient;
+import fr.mgargadennec.es.examples.generator.DocumentGenerator;
+import fr.mgargadennec.es.examples.generator.DocumentShape;
+import fr.mgargadennec.es.examples.generator.IndexingSink;
+import fr.mgargadennec.es.examples.id.FlakeIdGenerator;
+import fr.mgargadennec.es.examples.id.IdGenerator;
+import fr.mgargadennec.es.examples.index.IndexBootstrap;
+import fr.mgargadennec.es.examples.index.IndexResources;
+import fr.mgargadennec.es.examples.index.WarmerManager;
+import fr.mgargadennec.es.examples.ingest.BulkIngester;
+import fr.mgargadennec.es.examples.ingest.IngestStats;
+import fr.mgargadennec.es.examples.search.CachedFilter;
+import fr.mgargadennec.es.examples.search.FilterRewriter;
+import fr.mgargadennec.es.examples.search.ResponseProfile;
+import fr.mgargadennec.es.examples.search.ResponseRenderer;
 
 /**
  * Recherche : Filters
@@ -55,6 +67,19 @@ public class Example6
     	
     	initIndex(client,indexName,type);
     	
+    	//Client asynchrone : au plus 64 recherches en vol, chacune abandonnée au bout de 10s
+    	AsyncClient async = AsyncClient.builder(client)
+    			.maxInFlight(64)
+    			.timeout(TimeValue.timeValueSeconds(10))
+    			.build();
+
+    	//Les filtres sur year sont mis en cache avec une clé stable ; les plus fréquents sont préchauffés
+    	//sur les nouveaux segments par un warmer
+    	FilterRewriter rewriter = new FilterRewriter();
+    	WarmerManager warmers = new WarmerManager(client, indexName);
+
+    	//Affichage des réponses en streaming, hit par hit, sans construire de String
+    	ResponseRenderer renderer = new ResponseRenderer(System.out, true);
 
         Scanner keyboard = new Scanner(System.in);
         String queryString = null;
@@ -66,13 +91,19 @@ public class Example6
             String filter = keyboard.nextLine();	
             
             try{
-            SearchResponse searchResponse = client.prepareSearch(indexName).setQuery(
+            int year = Integer.parseInt(filter);
+
+            //La recherche est asynchrone (bornée en nombre et en durée par l'AsyncClient), mais on attend sa réponse
+            //avant de lire la saisie suivante : une réponse par saisie, affichée dans le thread courant
+            //Résumé des documents uniquement (titre, année, date, catégorie)
+            CompletableFuture<SearchResponse> search = async.execute(ResponseProfile.SUMMARY.apply(client.prepareSearch(indexName)).setQuery(
 					// La filteredQuery permet d'appliquer un filtre en amont de la recherche
 					// Ce filtre peut-etre un booleanFilter, contenant des andFilter/orFilter, etc...
 					// Composez un ensemble de filtres selon vos besoins !
-            		QueryBuilders.filteredQuery(
+					// Le FilterRewriter en extrait la contrainte sur year et la remplace par un filtre en cache (CachedFilter)
+            		rewriter.rewrite(QueryBuilders.filteredQuery(
             				QueryBuilders.simpleQueryStringQuery(queryString), 
-            				FilterBuilders.termFilter("year", Integer.parseInt(filter)))
+            				FilterBuilders.termFilter("year", year)))
             		)
 
 					//D'autres filtres existent (postfilter) mais ne sont pas conseillés dans la plupart des cas,
@@ -80,8 +111,20 @@ public class Example6
 					// finalement exclus)
 					//.setPostFilter(FilterBuilders.termFilter("year", Integer.parseInt(filter)))
 
-					.get();
-            System.out.println(searchResponse.toString());
+					);
+            try {
+            	renderer.render(search.join());
+            } catch (CompletionException e) {
+            	System.out.println("Search failed : " + e.getCause().getMessage());
+            } catch (IOException e) {
+            	System.out.println("Rendering failed : " + e.getMessage());
+            }
+
+            //Filtre récurrent : préchauffé sur les prochains segments
+            CachedFilter yearFilter = CachedFilter.year(year);
+            if (rewriter.getUsage(yearFilter) == 3) {
+            	warmers.warmFilter(yearFilter);
+            }
             }catch(Exception e){
             	
             }
@@ -97,56 +140,44 @@ public class Example6
 		//Nettoyage des données précédentes
     	client.admin().indices().prepareDelete("_all").execute().actionGet();
     	
-    	//Datafactory
-    	DataFactory df = new DataFactory();
 
 
-    	//Mapping
-    	URL url = Resources.getResource("mapping.json");
-    	String mapping = Resources.toString(url, Charsets.UTF_8);
-    	
-    	//Settings
-    	URL urlSettings = Resources.getResource("settings.json");
-    	String settings = Resources.toString(urlSettings, Charsets.UTF_8);
-    	
-    	//Création de l'index avec mapping
-    	client.admin().indices().prepareCreate(indexName).setSettings(settings).addMapping(type, mapping).execute().actionGet();
+    	//Création de l'index avec settings (analyzers) et mapping, optimisé pour le chargement
+    	//(settings.json et mapping.json peuvent aussi être construits à l'aide des XContentBuilder)
+    	IndexBootstrap bootstrap = IndexBootstrap.builder(client, indexName)
+    			.settings(IndexResources.SETTINGS)
+    			.mapping(type, IndexResources.MAPPING)
+    			.build();
+    	bootstrap.createForLoad();
+
+    	//Identifiants ordonnés dans le temps, sans verrou, utilisés aussi comme _id
+    	IdGenerator ids = new FlakeIdGenerator();
 
     	//Un objet à indexer
+    	String id = ids.next();
     	Map<String,Object> object = Maps.newHashMap();
-    	object.put("id",UUID.randomUUID().toString());
+    	object.put("id",id);
     	object.put("titre","Ma première indexation est un succès!");
     	object.put("sousTitre","En espérant qu'aucune erreur ne vienne poser problème :'( ");
     	object.put("year",2015);
     	object.put("createdAt",DateTime.now());
     	
     	//Indexation unitaire
-    	IndexResponse response = client.prepareIndex(indexName, type).setSource(object).execute().actionGet();
+    	IndexResponse response = client.prepareIndex(indexName, type, id).setSource(object).execute().actionGet();
         System.out.println("First content indexed with id: " + response.getId()+" and type "+response.getType());
 
     	//Indexation en bulk
-        BulkRequestBuilder bulkRequest = client.prepareBulk();
-        
-        for(int i=0;i<5999;i++){
-        	StringBuilder b = new StringBuilder();
-			do{
-				b.append(df.getRandomWord(2,10));
-				b.append(" ");
-			}while(b.length()<70);
-			
-			Map<String,Object> item = Maps.newHashMap();
-			item.put("id",UUID.randomUUID().toString());
-			item.put("titre",b.toString());
-			item.put("sousTitre",b.toString());
-			item.put("year",df.getNumberBetween(1950, 2015));
-			item.put("createdAt",df.getDateBetween(DateTime.now().minusYears(3).toDate(), DateTime.now().toDate()));
-				
-        	bulkRequest.add(client.prepareIndex(indexName,type).setSource(item));
-        }
-        BulkResponse bulkResponse = bulkRequest.execute().actionGet();
-        System.out.println(bulkResponse.getItems().length+" documents indexed in "+bulkResponse.getTookInMillis()+"ms. Any failures ? "+bulkResponse.hasFailures() );
-    	        
-        Thread.sleep(2000);
+        BulkIngester ingester = BulkIngester.builder(client).stats(new IngestStats(true)).build();
+
+        //Génération parallèle des documents aléatoires, sérialisés directement dans le bulk
+        DocumentGenerator generator = new DocumentGenerator(DocumentShape.FULL, ids);
+        generator.generate(5999, new IndexingSink(ingester, indexName, type));
+        //Envoi des derniers documents et attente de la fin des bulks en cours
+        ingester.awaitClose(1, TimeUnit.MINUTES);
+        System.out.println(ingester.getStats());
+
+        //Restauration des settings de production, refresh explicite et attente du statut de santé
+        bootstrap.finishLoad();
 
         //On compte le nombre total de documents dans l'index
         CountResponse countResponse2 = client.prepareCount(indexName).get();
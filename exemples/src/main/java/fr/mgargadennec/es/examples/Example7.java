@@ -1,13 +1,10 @@
 package fr.mgargadennec.es.examples;
 
 import java.io.IOException;
-import java.net.URL;
 import java.util.Map;
 import java.util.Scanner;
-import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
-import org.elasticsearch.action.bulk.BulkRequestBuilder;
-import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.count.CountResponse;
 import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.action.search.SearchResponse;
@@ -25,10 +22,21 @@ import org.elasticsearch.search.aggregations.AggregationBuilder;
 import org.elasticsearch.search.aggregations.AggregationBuilders;
 import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogram.Interval;
 import org.elasticsearch.search.aggregations.bucket.terms.Terms;
-import org.fluttercode.datafactory.impl.DataFactory;
 
-import com.google.common.base.Charsets;
-import com.google.common.io.Resources;
+import fr.mgargadennec.es.examples.generator.DocumentGenerator;
+import fr.mgargadennec.es.examples.generator.DocumentShape;
+import fr.mgargadennec.es.examples.generator.IndexingSink;
+import fr.mgargadennec.es.examples.id.FlakeIdGenerator;
+import fr.mgargadennec.es.examples.id.IdGenerator;
+import fr.mgargadennec.es.examples.index.IndexBootstrap;
+import fr.mgargadennec.es.examples.index.IndexResources;
+import fr.mgargadennec.es.examples.index.MappingProfile;
+import fr.mgargadennec.es.examples.ingest.BulkIngester;
+import fr.mgargadennec.es.examples.ingest.IngestStats;
+import fr.mgargadennec.es.examples.rollup.RollupAggregations;
+import fr.mgargadennec.es.examples.rollup.YearCategoryRollup;
+import fr.mgargadennec.es.examples.search.ResponseProfile;
+import fr.mgargadennec.es.examples.search.ResponseRenderer;
 
 /**
  * Recherche : Aggrégations
@@ -57,6 +65,11 @@ public class Example7
     	
     	initIndex(client,indexName,type);
     	
+    	//Sans saisie, l'agrégation est lue dans le rollup maintenu pendant l'ingestion
+    	RollupAggregations rollupAggregations = new RollupAggregations(client, indexName, YearCategoryRollup.rollupIndexOf(indexName));
+
+    	//Affichage des réponses en streaming, hit par hit, sans construire de String
+    	ResponseRenderer renderer = new ResponseRenderer(System.out, true);
 
         Scanner keyboard = new Scanner(System.in);
         String queryString = null;
@@ -65,13 +78,16 @@ public class Example7
             queryString = keyboard.nextLine();	
             
             try{
-            SearchResponse searchResponse = client.prepareSearch(indexName)
-					// Pendant que la QueryBuilder nous permet d'effectuer une recherche... (ou un matchAll si saisie vide)
-					.setQuery(
-							Strings.isNullOrEmpty(queryString) ?
-									QueryBuilders.matchAllQuery()
-									:
-									QueryBuilders.simpleQueryStringQuery(queryString)
+            if (Strings.isNullOrEmpty(queryString)) {
+            	System.out.println(rollupAggregations.byYearAndCategory(queryString));
+            	continue;
+            }
+
+            //Seules les agrégations sont lues : les hits sont renvoyés sans _source
+            SearchResponse searchResponse = ResponseProfile.IDS.apply(client.prepareSearch(indexName))
+					// Pendant que la QueryBuilder nous permet d'effectuer une recherche...
+					// (sans saisie, le rollup répond à la place d'un matchAll : voir RollupAggregations)
+					.setQuery(QueryBuilders.simpleQueryStringQuery(queryString)
 
 					//L'aggrégation permet de calculer des statistiques sur les documents matchés par la recherche
 
@@ -91,9 +107,9 @@ public class Example7
 								)
 							)
             		.get();
-            System.out.println(searchResponse.toString());
+            renderer.render(searchResponse);
             }catch(Exception e){
-            	
+            	System.out.println("Search failed : " + e.getMessage());
             }
         }while(!queryString.equals("exit"));
         keyboard.close();
@@ -107,58 +123,56 @@ public class Example7
 		//Nettoyage des données précédentes
     	client.admin().indices().prepareDelete("_all").execute().actionGet();
     	
-    	//Datafactory
-    	DataFactory df = new DataFactory();
 
 
-    	//Mapping
-    	URL url = Resources.getResource("mapping.json");
-    	String mapping = Resources.toString(url, Charsets.UTF_8);
-    	
-    	//Settings
-    	URL urlSettings = Resources.getResource("settings.json");
-    	String settings = Resources.toString(urlSettings, Charsets.UTF_8);
-    	
-    	//Création de l'index avec mapping
-    	client.admin().indices().prepareCreate(indexName).setSettings(settings).addMapping(type, mapping).execute().actionGet();
+    	//Création de l'index avec settings (analyzers) et mapping, optimisé pour le chargement
+    	//(settings.json et mapping.json peuvent aussi être construits à l'aide des XContentBuilder)
+    	//Profil doc_values : les champs agrégés restent hors heap, et category est un mot-clé non analysé
+    	IndexBootstrap bootstrap = IndexBootstrap.builder(client, indexName)
+    			.settings(IndexResources.SETTINGS)
+    			.mapping(type, MappingProfile.DOC_VALUES)
+    			.build();
+    	bootstrap.createForLoad();
+
+    	//Identifiants ordonnés dans le temps, sans verrou, utilisés aussi comme _id
+    	IdGenerator ids = new FlakeIdGenerator();
 
     	//Un objet à indexer
+    	String id = ids.next();
     	Map<String,Object> object = Maps.newHashMap();
-    	object.put("id",UUID.randomUUID().toString());
+    	object.put("id",id);
     	object.put("titre","Ma première indexation est un succès!");
     	object.put("sousTitre","En espérant qu'aucune erreur ne vienne poser problème :'( ");
     	object.put("category", "Personnalisé");
     	object.put("year",2015);
     	object.put("createdAt",DateTime.now());
     	
-    	//Indexation unitaire
-    	IndexResponse response = client.prepareIndex(indexName, type).setSource(object).execute().actionGet();
+    	//Rollup (année, catégorie) -> nombre de documents, alimenté par les bulks
+    	YearCategoryRollup rollup = YearCategoryRollup.builder(client, indexName).build();
+
+    	//Indexation unitaire (hors bulk : comptée explicitement dans le rollup)
+    	IndexResponse response = client.prepareIndex(indexName, type, id).setSource(object).execute().actionGet();
         System.out.println("First content indexed with id: " + response.getId()+" and type "+response.getType());
+        rollup.record(2015, "Personnalisé", 1);
 
     	//Indexation en bulk
-        BulkRequestBuilder bulkRequest = client.prepareBulk();
-        
-        for(int i=0;i<5999;i++){
-        	StringBuilder b = new StringBuilder();
-			do{
-				b.append(df.getRandomWord(2,10));
-				b.append(" ");
-			}while(b.length()<70);
-			
-			Map<String,Object> item = Maps.newHashMap();
-			item.put("id",UUID.randomUUID().toString());
-			item.put("titre",b.toString());
-			item.put("sousTitre",b.toString());
-			item.put("year",df.getNumberBetween(1950, 2015));
-	    	item.put("category", df.getBusinessName());
-			item.put("createdAt",df.getDateBetween(DateTime.now().minusYears(3).toDate(), DateTime.now().toDate()));
-				
-        	bulkRequest.add(client.prepareIndex(indexName,type).setSource(item));
-        }
-        BulkResponse bulkResponse = bulkRequest.execute().actionGet();
-        System.out.println(bulkResponse.getItems().length+" documents indexed in "+bulkResponse.getTookInMillis()+"ms. Any failures ? "+bulkResponse.hasFailures() );
-    	        
-        Thread.sleep(2000);
+        BulkIngester ingester = BulkIngester.builder(client)
+        		.stats(new IngestStats(true))
+        		.listener(rollup)
+        		.build();
+
+        //Génération parallèle des documents aléatoires, sérialisés directement dans le bulk
+        DocumentGenerator generator = new DocumentGenerator(DocumentShape.FULL_WITH_CATEGORY, ids);
+        generator.generate(5999, new IndexingSink(ingester, indexName, type));
+        //Envoi des derniers documents et attente de la fin des bulks en cours
+        ingester.awaitClose(1, TimeUnit.MINUTES);
+        System.out.println(ingester.getStats());
+        //Report des derniers compteurs dans l'index de rollup
+        rollup.close();
+        System.out.println(rollup);
+
+        //Restauration des settings de production, refresh explicite et attente du statut de santé
+        bootstrap.finishLoad();
 
         //On compte le nombre total de documents dans l'index
         CountResponse countResponse2 = client.prepareCount(indexName).get();
@@ -0,0 +1,137 @@
+package fr.mgargadennec.es.examples.analysis;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.analysis.AnalysisService;
+
+import fr.mgargadennec.es.examples.generator.DocumentGenerator;
+import fr.mgargadennec.es.examples.generator.DocumentShape;
+import fr.mgargadennec.es.examples.generator.DocumentWriter;
+import fr.mgargadennec.es.examples.generator.Vocabulary;
+import fr.mgargadennec.es.examples.index.IndexResources;
+import fr.mgargadennec.es.examples.util.CommandLineOptions;
+
+/**
+ * Débit des analyzers
+ * Construit les analyzers de settings.json (et les analyzers prédéfinis comme french) via AnalysisServices, sans
+ * noeud, puis mesure le nombre de tokens produits par seconde sur les titres du corpus généré :
+ *  - titre : toutes les valeurs sont différentes
+ *  - sousTitre : valeurs tirées parmi un petit nombre de sous-titres, qui se répètent
+ * Chaque mesure est faite sans cache, puis avec un CachingAnalyzer (taux de succès affiché).
+ *
+ * Options (--option=valeur) :
+ *  --docs      : nombre de documents générés (20000)
+ *  --distinct  : nombre de sous-titres différents (500)
+ *  --analyzers : analyzers mesurés, séparés par des virgules (mon_analyzer,french,standard)
+ *  --runs      : nombre de passes sur le corpus, la première servant de chauffe (7) ; temps médian affiché
+ *  --cache     : nombre maximum d'entrées du cache (10000)
+ *
+ * @author mgargadennec
+ *
+ */
+public class AnalysisBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		Settings options = CommandLineOptions.parse(args);
+		int docs = options.getAsInt("docs", 20000);
+		int distinct = options.getAsInt("distinct", 500);
+		int runs = Math.max(2, options.getAsInt("runs", 7));
+		int cacheSize = options.getAsInt("cache", 10000);
+		String[] analyzers = options.getAsArray("analyzers", new String[] { "mon_analyzer", "french", "standard" });
+
+		String[] titles = generateTitles(docs);
+		String[] subtitles = new String[docs];
+		Random random = new Random(DocumentGenerator.DEFAULT_SEED);
+		for (int i = 0; i < docs; i++) {
+			subtitles[i] = titles[random.nextInt(Math.min(distinct, docs))];
+		}
+
+		AnalysisService analysisService = AnalysisServices.fromResource("benchmark", IndexResources.SETTINGS);
+		try {
+			System.out.println(String.format("%-14s %-10s %-6s %10s %12s %10s %8s",
+					"analyzer", "field", "cache", "tokens", "tokens/s", "MB/s", "hits"));
+			for (String name : analyzers) {
+				Analyzer analyzer = analysisService.analyzer(name.trim());
+				if (analyzer == null) {
+					throw new IllegalArgumentException("Unknown analyzer [" + name + "]");
+				}
+				measure(name, "titre", titles, analyzer, 0, runs);
+				measure(name, "titre", titles, analyzer, cacheSize, runs);
+				measure(name, "sousTitre", subtitles, analyzer, 0, runs);
+				measure(name, "sousTitre", subtitles, analyzer, cacheSize, runs);
+			}
+		} finally {
+			analysisService.close();
+		}
+	}
+
+	/**
+	 * @param cacheSize taille du cache (0 : pas de cache). Chaque passe part d'un cache vide.
+	 */
+	private static void measure(String name, String field, String[] values, Analyzer analyzer, int cacheSize, int runs) throws IOException {
+		long chars = 0;
+		for (String value : values) {
+			chars += value.length();
+		}
+
+		long tokens = 0;
+		long[] nanos = new long[runs - 1];
+		Analyzer measured = analyzer;
+		for (int run = 0; run < runs; run++) {
+			if (cacheSize > 0) {
+				measured = new CachingAnalyzer(analyzer, cacheSize, 1024);
+			}
+			long start = System.nanoTime();
+			tokens = consume(measured, field, values);
+			if (run > 0) {
+				nanos[run - 1] = System.nanoTime() - start;
+			}
+		}
+		Arrays.sort(nanos);
+		long median = Math.max(1, nanos[nanos.length / 2]);
+
+		String hits = "-";
+		if (measured instanceof CachingAnalyzer) {
+			hits = String.format("%.1f%%", ((CachingAnalyzer) measured).getStats().hitRate() * 100);
+		}
+		System.out.println(String.format("%-14s %-10s %-6s %10d %12.0f %10.1f %8s",
+				name, field, cacheSize == 0 ? "off" : String.valueOf(cacheSize), tokens,
+				tokens * 1000000000d / median, chars * 2 * 1000d / median, hits));
+	}
+
+	private static long consume(Analyzer analyzer, String field, String[] values) throws IOException {
+		long tokens = 0;
+		for (String value : values) {
+			TokenStream stream = analyzer.tokenStream(field, value);
+			try {
+				stream.reset();
+				while (stream.incrementToken()) {
+					tokens++;
+				}
+				stream.end();
+			} finally {
+				stream.close();
+			}
+		}
+		return tokens;
+	}
+
+	/**
+	 * Titres du corpus généré (même générateur que pour l'indexation)
+	 */
+	private static String[] generateTitles(int docs) throws IOException {
+		DocumentWriter writer = new DocumentWriter(Vocabulary.DEFAULT, DocumentShape.FULL, XContentType.JSON, DocumentGenerator.DEFAULT_SEED);
+		String[] titles = new String[docs];
+		for (int i = 0; i < docs; i++) {
+			titles[i] = (String) XContentHelper.convertToMap(writer.next(), false).v2().get("titre");
+		}
+		return titles;
+	}
+}
@@ -0,0 +1,70 @@
+package fr.mgargadennec.es.examples.analysis;
+
+import java.io.IOException;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.inject.Injector;
+import org.elasticsearch.common.inject.ModulesBuilder;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.settings.SettingsModule;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.env.EnvironmentModule;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.IndexNameModule;
+import org.elasticsearch.index.analysis.AnalysisModule;
+import org.elasticsearch.index.analysis.AnalysisService;
+import org.elasticsearch.index.settings.IndexSettingsModule;
+import org.elasticsearch.indices.analysis.IndicesAnalysisModule;
+import org.elasticsearch.indices.analysis.IndicesAnalysisService;
+
+import fr.mgargadennec.es.examples.index.IndexResources;
+
+/**
+ * Construction d'un AnalysisService sans noeud
+ * Assemble uniquement les modules Guice nécessaires à l'analyse (settings, environnement, analyzers prédéfinis,
+ * analyzers de l'index) : les analyzers déclarés dans un fichier de settings (settings.json) sont construits
+ * exactement comme à la création de l'index, en quelques dizaines de millisecondes et sans cluster.
+ *
+ * L'AnalysisService retourné doit être fermé après usage.
+ *
+ * @author mgargadennec
+ *
+ */
+public final class AnalysisServices {
+
+	private AnalysisServices() {
+	}
+
+	/**
+	 * @param settingsResource settings de l'index, chargés depuis le classpath (ex : IndexResources.SETTINGS)
+	 */
+	public static AnalysisService fromResource(String indexName, String settingsResource) throws IOException {
+		return create(indexName, ImmutableSettings.settingsBuilder()
+				.loadFromSource(IndexResources.load(settingsResource))
+				.build());
+	}
+
+	public static AnalysisService create(String indexName, Settings indexSettings) {
+		//Comme à la création d'un index : les settings sont préfixés par "index."
+		Settings settings = ImmutableSettings.settingsBuilder()
+				.put(indexSettings)
+				.normalizePrefix("index.")
+				.put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT)
+				.build();
+		Index index = new Index(indexName);
+
+		Injector parent = new ModulesBuilder().add(
+				new SettingsModule(settings),
+				new EnvironmentModule(new Environment(settings)),
+				new IndicesAnalysisModule())
+				.createInjector();
+		Injector injector = new ModulesBuilder().add(
+				new IndexSettingsModule(index, settings),
+				new IndexNameModule(index),
+				new AnalysisModule(settings, parent.getInstance(IndicesAnalysisService.class)))
+				.createChildInjector(parent);
+		return injector.getInstance(AnalysisService.class);
+	}
+}
@@ -0,0 +1,110 @@
+package fr.mgargadennec.es.examples.analysis;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+
+/**
+ * Résultat figé de l'analyse d'une valeur : termes, offsets, incréments de position et types, dans l'ordre du flux.
+ * Immuable : peut être partagé entre threads et rejoué autant de fois que nécessaire.
+ *
+ * @author mgargadennec
+ *
+ */
+public final class AnalyzedText {
+
+	private final String[] terms;
+	private final int[] startOffsets;
+	private final int[] endOffsets;
+	private final int[] positionIncrements;
+	private final String[] types;
+	private final int finalOffset;
+
+	private AnalyzedText(List<String> terms, List<Integer> startOffsets, List<Integer> endOffsets,
+			List<Integer> positionIncrements, List<String> types, int finalOffset) {
+		this.terms = terms.toArray(new String[terms.size()]);
+		this.startOffsets = toArray(startOffsets);
+		this.endOffsets = toArray(endOffsets);
+		this.positionIncrements = toArray(positionIncrements);
+		this.types = types.toArray(new String[types.size()]);
+		this.finalOffset = finalOffset;
+	}
+
+	/**
+	 * Analyse complètement text avec l'analyzer donné
+	 */
+	public static AnalyzedText analyze(Analyzer analyzer, String fieldName, String text) throws IOException {
+		List<String> terms = new ArrayList<String>();
+		List<Integer> startOffsets = new ArrayList<Integer>();
+		List<Integer> endOffsets = new ArrayList<Integer>();
+		List<Integer> positionIncrements = new ArrayList<Integer>();
+		List<String> types = new ArrayList<String>();
+
+		TokenStream stream = analyzer.tokenStream(fieldName, text);
+		try {
+			CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+			OffsetAttribute offset = stream.addAttribute(OffsetAttribute.class);
+			PositionIncrementAttribute positionIncrement = stream.addAttribute(PositionIncrementAttribute.class);
+			TypeAttribute type = stream.addAttribute(TypeAttribute.class);
+
+			stream.reset();
+			while (stream.incrementToken()) {
+				terms.add(term.toString());
+				startOffsets.add(offset.startOffset());
+				endOffsets.add(offset.endOffset());
+				positionIncrements.add(positionIncrement.getPositionIncrement());
+				types.add(type.type());
+			}
+			stream.end();
+			return new AnalyzedText(terms, startOffsets, endOffsets, positionIncrements, types, offset.endOffset());
+		} finally {
+			stream.close();
+		}
+	}
+
+	public int size() {
+		return terms.length;
+	}
+
+	public String term(int i) {
+		return terms[i];
+	}
+
+	public int startOffset(int i) {
+		return startOffsets[i];
+	}
+
+	public int endOffset(int i) {
+		return endOffsets[i];
+	}
+
+	public int positionIncrement(int i) {
+		return positionIncrements[i];
+	}
+
+	public String type(int i) {
+		return types[i];
+	}
+
+	/**
+	 * Offset de fin du flux (après end()), utilisé pour décaler les valeurs suivantes d'un champ multi-valué
+	 */
+	public int finalOffset() {
+		return finalOffset;
+	}
+
+	private static int[] toArray(List<Integer> values) {
+		int[] array = new int[values.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = values.get(i);
+		}
+		return array;
+	}
+}
@@ -0,0 +1,137 @@
+package fr.mgargadennec.es.examples.analysis;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Analyzer avec cache des valeurs déjà analysées
+ * Certaines valeurs reviennent très souvent (sous-titres, libellés) : plutôt que de repasser toute la chaîne
+ * (char filters, tokenizer, filtres), le flux de tokens d'une valeur déjà vue est rejoué depuis un cache borné
+ * (LRU approché, nombre d'entrées maximum). Les valeurs trop longues ne sont pas mises en cache : elles se
+ * répètent rarement et occuperaient beaucoup de mémoire.
+ *
+ * La clé du cache est le nom du champ et la valeur : le cache ne doit servir qu'un seul analyzer délégué.
+ * Seuls les termes, offsets, incréments de position et types sont rejoués (pas de payloads).
+ *
+ * @author mgargadennec
+ *
+ */
+public class CachingAnalyzer extends Analyzer {
+
+	private final Analyzer delegate;
+	private final int maxValueLength;
+	private final Cache<String, AnalyzedText> cache;
+
+	/**
+	 * @param maxEntries nombre maximum de valeurs en cache
+	 * @param maxValueLength longueur (en caractères) au-delà de laquelle une valeur n'est pas mise en cache
+	 */
+	public CachingAnalyzer(Analyzer delegate, int maxEntries, int maxValueLength) {
+		super(PER_FIELD_REUSE_STRATEGY);
+		this.delegate = delegate;
+		this.maxValueLength = maxValueLength;
+		this.cache = CacheBuilder.newBuilder().maximumSize(maxEntries).recordStats().build();
+	}
+
+	public CacheStats getStats() {
+		return cache.stats();
+	}
+
+	public long size() {
+		return cache.size();
+	}
+
+	@Override
+	protected TokenStreamComponents createComponents(String fieldName, Reader reader) {
+		return new TokenStreamComponents(new ReplayTokenizer(fieldName, reader));
+	}
+
+	@Override
+	public int getPositionIncrementGap(String fieldName) {
+		return delegate.getPositionIncrementGap(fieldName);
+	}
+
+	@Override
+	public int getOffsetGap(String fieldName) {
+		return delegate.getOffsetGap(fieldName);
+	}
+
+	AnalyzedText analyze(String fieldName, String text) throws IOException {
+		if (text.length() > maxValueLength) {
+			return AnalyzedText.analyze(delegate, fieldName, text);
+		}
+		String key = fieldName + '\u0000' + text;
+		AnalyzedText analyzed = cache.getIfPresent(key);
+		if (analyzed == null) {
+			analyzed = AnalyzedText.analyze(delegate, fieldName, text);
+			cache.put(key, analyzed);
+		}
+		return analyzed;
+	}
+
+	/**
+	 * Lit toute la valeur, puis rejoue son analyse (en cache ou calculée par le délégué)
+	 */
+	private final class ReplayTokenizer extends Tokenizer {
+
+		private final String fieldName;
+		private final CharTermAttribute term = addAttribute(CharTermAttribute.class);
+		private final OffsetAttribute offset = addAttribute(OffsetAttribute.class);
+		private final PositionIncrementAttribute positionIncrement = addAttribute(PositionIncrementAttribute.class);
+		private final TypeAttribute type = addAttribute(TypeAttribute.class);
+		private final StringBuilder text = new StringBuilder();
+		private final char[] buffer = new char[1024];
+
+		private AnalyzedText analyzed;
+		private int next;
+
+		ReplayTokenizer(String fieldName, Reader reader) {
+			super(reader);
+			this.fieldName = fieldName;
+		}
+
+		@Override
+		public void reset() throws IOException {
+			super.reset();
+			text.setLength(0);
+			int read;
+			while ((read = input.read(buffer)) != -1) {
+				text.append(buffer, 0, read);
+			}
+			analyzed = analyze(fieldName, text.toString());
+			next = 0;
+		}
+
+		@Override
+		public boolean incrementToken() throws IOException {
+			if (next >= analyzed.size()) {
+				return false;
+			}
+			clearAttributes();
+			term.setEmpty().append(analyzed.term(next));
+			offset.setOffset(correctOffset(analyzed.startOffset(next)), correctOffset(analyzed.endOffset(next)));
+			positionIncrement.setPositionIncrement(analyzed.positionIncrement(next));
+			type.setType(analyzed.type(next));
+			next++;
+			return true;
+		}
+
+		@Override
+		public void end() throws IOException {
+			super.end();
+			int finalOffset = correctOffset(analyzed.finalOffset());
+			offset.setOffset(finalOffset, finalOffset);
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package fr.mgargadennec.es.examples.client;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import org.elasticsearch.ElasticsearchTimeoutException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.count.CountRequest;
+import org.elasticsearch.action.count.CountResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.threadpool.ThreadPool;
+
+/**
+ * Client asynchrone
+ * Adapte les ActionListener d'Elasticsearch en CompletableFuture : un seul thread peut ainsi garder des centaines de
+ * requêtes en vol, au lieu de bloquer un thread par requête sur actionGet().
+ *
+ * Le nombre de requêtes en vol est borné : au-delà, l'appelant attend qu'une requête se termine (backpressure),
+ * au plus acquireTimeout, puis la requête est rejetée (EsRejectedExecutionException).
+ *
+ * Une requête qui dépasse son timeout, ou qui est annulée, est terminée côté appelant, mais la requête déjà envoyée
+ * au cluster ne peut pas être interrompue : elle garde sa place dans la limite jusqu'à sa réponse, pour que la
+ * limite reflète bien la charge réelle du cluster.
+ *
+ * @author mgargadennec
+ *
+ */
+public class AsyncClient {
+
+	private final Client client;
+	private final Semaphore inFlight;
+	private final int maxInFlight;
+	private final TimeValue acquireTimeout;
+	private final TimeValue timeout;
+
+	private AsyncClient(Builder builder) {
+		this.client = builder.client;
+		this.maxInFlight = builder.maxInFlight;
+		this.inFlight = new Semaphore(builder.maxInFlight);
+		this.acquireTimeout = builder.acquireTimeout;
+		this.timeout = builder.timeout;
+	}
+
+	public static Builder builder(Client client) {
+		return new Builder(client);
+	}
+
+	public Client client() {
+		return client;
+	}
+
+	/**
+	 * Nombre de requêtes actuellement en vol
+	 */
+	public int inFlight() {
+		return maxInFlight - inFlight.availablePermits();
+	}
+
+	public CompletableFuture<IndexResponse> index(IndexRequest request) {
+		return submit(listener -> client.index(request, listener), timeout);
+	}
+
+	public CompletableFuture<BulkResponse> bulk(BulkRequest request) {
+		return submit(listener -> client.bulk(request, listener), timeout);
+	}
+
+	public CompletableFuture<CountResponse> count(CountRequest request) {
+		return submit(listener -> client.count(request, listener), timeout);
+	}
+
+	public CompletableFuture<SearchResponse> search(SearchRequest request) {
+		return submit(listener -> client.search(request, listener), timeout);
+	}
+
+	/**
+	 * Exécute n'importe quel builder (prepareSearch, prepareCount, prepareIndex, admin, ...)
+	 */
+	public <Response extends ActionResponse> CompletableFuture<Response> execute(ActionRequestBuilder<?, Response, ?, ?> builder) {
+		return execute(builder, timeout);
+	}
+
+	public <Response extends ActionResponse> CompletableFuture<Response> execute(ActionRequestBuilder<?, Response, ?, ?> builder, TimeValue timeout) {
+		return submit(listener -> builder.execute(listener), timeout);
+	}
+
+	private <Response> CompletableFuture<Response> submit(Consumer<ActionListener<Response>> call, TimeValue timeout) {
+		CompletableFuture<Response> future = new CompletableFuture<>();
+		try {
+			if (!inFlight.tryAcquire(acquireTimeout.millis(), TimeUnit.MILLISECONDS)) {
+				future.completeExceptionally(new EsRejectedExecutionException("Too many requests in flight [" + maxInFlight + "]"));
+				return future;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			future.completeExceptionally(e);
+			return future;
+		}
+
+		//Le permis est rendu une seule fois, à la réponse du cluster
+		AtomicBoolean released = new AtomicBoolean();
+		ScheduledFuture<?> timer = null;
+		if (timeout != null && timeout.millis() > 0) {
+			timer = client.threadPool().schedule(timeout, ThreadPool.Names.SAME,
+					() -> future.completeExceptionally(new ElasticsearchTimeoutException("Request timed out after " + timeout)));
+		}
+		ScheduledFuture<?> timeoutTask = timer;
+		if (timeoutTask != null) {
+			//Réponse, échec, timeout ou annulation par l'appelant : le timer n'a plus lieu d'être
+			future.whenComplete((response, failure) -> timeoutTask.cancel(false));
+		}
+
+		try {
+			call.accept(new ActionListener<Response>() {
+				@Override
+				public void onResponse(Response response) {
+					release();
+					future.complete(response);
+				}
+
+				@Override
+				public void onFailure(Throwable e) {
+					release();
+					future.completeExceptionally(e);
+				}
+
+				private void release() {
+					if (released.compareAndSet(false, true)) {
+						inFlight.release();
+					}
+				}
+			});
+		} catch (RuntimeException e) {
+			if (released.compareAndSet(false, true)) {
+				inFlight.release();
+			}
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	public static class Builder {
+
+		private final Client client;
+		private int maxInFlight = 256;
+		private TimeValue acquireTimeout = TimeValue.timeValueSeconds(30);
+		private TimeValue timeout = TimeValue.timeValueSeconds(30);
+
+		private Builder(Client client) {
+			this.client = client;
+		}
+
+		/**
+		 * Nombre maximum de requêtes en vol
+		 */
+		public Builder maxInFlight(int maxInFlight) {
+			this.maxInFlight = maxInFlight;
+			return this;
+		}
+
+		/**
+		 * Attente maximale d'une place libre avant rejet
+		 */
+		public Builder acquireTimeout(TimeValue acquireTimeout) {
+			this.acquireTimeout = acquireTimeout;
+			return this;
+		}
+
+		/**
+		 * Timeout par défaut des requêtes (null ou 0 : pas de timeout)
+		 */
+		public Builder timeout(TimeValue timeout) {
+			this.timeout = timeout;
+			return this;
+		}
+
+		public AsyncClient build() {
+			return new AsyncClient(this);
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package fr.mgargadennec.es.examples.client;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Statistiques du regroupement des recherches : taille des lots envoyés et délai ajouté par l'attente en file
+ * (en microsecondes)
+ *
+ * @author mgargadennec
+ *
+ */
+public class BatchStats {
+
+	private final Histogram batchSizes = new ConcurrentHistogram(3);
+	private final Histogram queueDelays = new ConcurrentHistogram(3);
+
+	void recordBatch(int size) {
+		batchSizes.recordValue(size);
+	}
+
+	void recordQueueDelay(long delayNanos) {
+		queueDelays.recordValue(Math.max(0, delayNanos / 1000));
+	}
+
+	/**
+	 * Nombre de lots envoyés (un lot = un aller-retour réseau)
+	 */
+	public long getBatches() {
+		return batchSizes.getTotalCount();
+	}
+
+	/**
+	 * Nombre de recherches regroupées
+	 */
+	public long getRequests() {
+		return queueDelays.getTotalCount();
+	}
+
+	public Histogram getBatchSizes() {
+		return batchSizes.copy();
+	}
+
+	public Histogram getQueueDelayMicros() {
+		return queueDelays.copy();
+	}
+
+	@Override
+	public String toString() {
+		return getRequests() + " searches sent in " + getBatches() + " batches (mean size "
+				+ String.format("%.1f", batchSizes.getMean()) + ", max " + batchSizes.getMaxValue()
+				+ "). Queueing delay p50 " + String.format("%.2f", queueDelays.getValueAtPercentile(50) / 1000d)
+				+ "ms, p99 " + String.format("%.2f", queueDelays.getValueAtPercentile(99) / 1000d)
+				+ "ms, max " + String.format("%.2f", queueDelays.getMaxValue() / 1000d) + "ms";
+	}
+}
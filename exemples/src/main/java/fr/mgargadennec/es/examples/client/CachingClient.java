@@ -0,0 +1,479 @@
+package fr.mgargadennec.es.examples.client;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.action.ActionFuture;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.CompositeIndicesRequest;
+import org.elasticsearch.action.IndicesRequest;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesAction;
+import org.elasticsearch.action.admin.indices.close.CloseIndexAction;
+import org.elasticsearch.action.admin.indices.create.CreateIndexAction;
+import org.elasticsearch.action.admin.indices.delete.DeleteIndexAction;
+import org.elasticsearch.action.admin.indices.mapping.put.PutMappingAction;
+import org.elasticsearch.action.admin.indices.open.OpenIndexAction;
+import org.elasticsearch.action.admin.indices.refresh.RefreshAction;
+import org.elasticsearch.action.admin.indices.stats.IndicesStatsResponse;
+import org.elasticsearch.action.search.SearchAction;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.FilterClient;
+import org.elasticsearch.client.IndicesAdminClient;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+
+/**
+ * Client avec cache de recherche
+ * Les réponses aux recherches sont conservées côté client, avec :
+ *  - une taille bornée (en octets et en nombre d'entrées), éviction LRU
+ *  - une durée de vie (TTL)
+ *  - une invalidation automatique :
+ *     - pour les écritures et opérations d'admin (refresh, suppression, ...) passant par ce client : à l'envoi, puis
+ *       à la fin de l'opération (réussie ou non), pour écarter les réponses mises en cache pendant son exécution
+ *     - périodique, en surveillant le nombre de refresh des indices interrogés (écritures faites par d'autres clients)
+ *
+ * Les recherches et les écritures sont rapprochées sur les indices concrets : les alias sont résolus à partir des
+ * métadonnées du cluster, relues à chaque intervalle de surveillance et après chaque création, suppression,
+ * ouverture, fermeture d'index ou modification d'alias (le cache est alors entièrement vidé). Les noms non résolus
+ * (wildcards, _all, index inconnu) concernent tout le cache.
+ *
+ * Une réponse peut donc rester en cache au plus un intervalle de surveillance après un refresh ou un changement
+ * d'alias fait par un autre client, ce qui est du même ordre que le refresh_interval de l'index.
+ *
+ * Le nombre de refresh d'un groupe d'indices est relevé avant sa première recherche, puis suivi tant que le groupe
+ * existe, que des réponses soient en cache ou non. Une réponse n'est mise en cache que si aucune invalidation n'a eu
+ * lieu pendant la recherche : elle a pu être calculée avant la modification.
+ *
+ * Les recherches scroll/scan ne sont pas mises en cache.
+ *
+ * @author mgargadennec
+ *
+ */
+public class CachingClient extends FilterClient {
+
+	private static final String WRITE_ACTIONS = "indices:data/write/";
+
+	/**
+	 * Opérations modifiant le contenu des indices qu'elles désignent
+	 */
+	private static final List<String> INDEX_ACTIONS = Arrays.asList(RefreshAction.NAME, PutMappingAction.NAME);
+
+	/**
+	 * Opérations modifiant la liste des indices ou des alias : la résolution des noms change
+	 */
+	private static final List<String> METADATA_ACTIONS = Arrays.asList(CreateIndexAction.NAME, DeleteIndexAction.NAME,
+			CloseIndexAction.NAME, OpenIndexAction.NAME, IndicesAliasesAction.NAME);
+
+	private final Cache<SearchKey, CachedResponse> cache;
+	private final IndicesAdminClient indicesAdmin;
+	private final ConcreteIndices concreteIndices;
+	private final ConcurrentMap<String, WatchedGroup> watchedGroups = new ConcurrentHashMap<String, WatchedGroup>();
+	/**
+	 * Incrémenté à chaque invalidation, avant la suppression des entrées
+	 */
+	private final AtomicLong invalidations = new AtomicLong();
+	private final ScheduledFuture<?> refreshWatcher;
+
+	private CachingClient(Builder builder) {
+		super(builder.client);
+		final long minWeight = Math.max(1, builder.maxBytes.bytes() / builder.maxEntries);
+		//Chaque entrée pèse au moins maxBytes/maxEntries : la limite en octets borne aussi le nombre d'entrées
+		this.cache = CacheBuilder.newBuilder()
+				.maximumWeight(builder.maxBytes.bytes())
+				.weigher(new Weigher<SearchKey, CachedResponse>() {
+					@Override
+					public int weigh(SearchKey key, CachedResponse value) {
+						return (int) Math.min(Integer.MAX_VALUE, Math.max(minWeight, key.weight() + value.weight));
+					}
+				})
+				.expireAfterWrite(builder.ttl.millis(), TimeUnit.MILLISECONDS)
+				.recordStats()
+				.build();
+		this.indicesAdmin = new InvalidatingIndicesAdmin(in.admin().indices());
+		this.concreteIndices = new ConcreteIndices(in);
+		refreshConcreteIndices();
+		this.refreshWatcher = in.threadPool().scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				checkRefreshes();
+			}
+		}, builder.refreshCheckInterval);
+	}
+
+	public static Builder builder(Client client) {
+		return new Builder(client);
+	}
+
+	public CacheStats stats() {
+		return cache.stats();
+	}
+
+	public long size() {
+		return cache.size();
+	}
+
+	public void invalidateAll() {
+		invalidations.incrementAndGet();
+		cache.invalidateAll();
+	}
+
+	@Override
+	public IndicesAdminClient indices() {
+		return indicesAdmin;
+	}
+
+	@Override
+	public void close() {
+		refreshWatcher.cancel(false);
+		super.close();
+	}
+
+	@Override
+	public <Request extends ActionRequest, Response extends ActionResponse, RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder, Client>> ActionFuture<Response> execute(
+			Action<Request, Response, RequestBuilder, Client> action, Request request) {
+		//Redirigé vers la version avec listener, pour passer par le cache
+		PlainActionFuture<Response> future = PlainActionFuture.newFuture();
+		execute(action, request, future);
+		return future;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <Request extends ActionRequest, Response extends ActionResponse, RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder, Client>> void execute(
+			Action<Request, Response, RequestBuilder, Client> action, Request request, ActionListener<Response> listener) {
+		if (action == SearchAction.INSTANCE && isCacheable((SearchRequest) request)) {
+			cachedSearch((SearchRequest) request, (ActionListener<SearchResponse>) listener);
+			return;
+		}
+		super.execute(action, request, invalidating(action.name(), request, listener));
+	}
+
+	private boolean isCacheable(SearchRequest request) {
+		return request.scroll() == null && request.searchType() != SearchType.SCAN;
+	}
+
+	private void cachedSearch(final SearchRequest request, final ActionListener<SearchResponse> listener) {
+		final SearchKey key = new SearchKey(request, concreteIndices.resolve(indicesOf(request)));
+		CachedResponse cached = cache.getIfPresent(key);
+		if (cached != null) {
+			listener.onResponse(cached.response);
+			return;
+		}
+		if (watchedGroups.containsKey(key.group())) {
+			search(key, request, listener);
+			return;
+		}
+		//Premier accès à ce groupe d'indices : le nombre de refresh de référence est relevé avant la recherche, un
+		//refresh ultérieur sera vu par la surveillance
+		readRefreshes(key.watchedIndices(), new ActionListener<Long>() {
+			@Override
+			public void onResponse(Long refreshes) {
+				watchedGroups.putIfAbsent(key.group(), new WatchedGroup(key.watchedIndices(), refreshes));
+				search(key, request, listener);
+			}
+
+			@Override
+			public void onFailure(Throwable e) {
+				//Indices introuvables : la recherche échouera ou portera sur des indices inconnus, pas de mise en cache
+				in.search(request, listener);
+			}
+		});
+	}
+
+	private void search(final SearchKey key, SearchRequest request, final ActionListener<SearchResponse> listener) {
+		final long generation = invalidations.get();
+		in.search(request, new ActionListener<SearchResponse>() {
+			@Override
+			public void onResponse(SearchResponse response) {
+				if (response.getFailedShards() == 0 && !response.isTimedOut() && invalidations.get() == generation) {
+					cache.put(key, new CachedResponse(response));
+					//Invalidation concurrente de la mise en cache : l'entrée a pu être ajoutée après la suppression
+					if (invalidations.get() != generation) {
+						cache.invalidate(key);
+					}
+				}
+				listener.onResponse(response);
+			}
+
+			@Override
+			public void onFailure(Throwable e) {
+				listener.onFailure(e);
+			}
+		});
+	}
+
+	/**
+	 * Invalide le cache à l'envoi d'une opération modifiante, puis à sa fin : une recherche exécutée pendant
+	 * l'opération a pu mettre en cache une réponse antérieure à la modification
+	 */
+	private <Response> ActionListener<Response> invalidating(final String actionName, final ActionRequest<?> request,
+			final ActionListener<Response> listener) {
+		if (!isModifying(actionName)) {
+			return listener;
+		}
+		invalidate(actionName, request);
+		return new ActionListener<Response>() {
+			@Override
+			public void onResponse(Response response) {
+				completed(actionName, request);
+				listener.onResponse(response);
+			}
+
+			@Override
+			public void onFailure(Throwable e) {
+				//Un échec peut être partiel (bulk, suppression de plusieurs indices...)
+				completed(actionName, request);
+				listener.onFailure(e);
+			}
+		};
+	}
+
+	private void completed(String actionName, ActionRequest<?> request) {
+		invalidate(actionName, request);
+		if (METADATA_ACTIONS.contains(actionName)) {
+			refreshConcreteIndices();
+		}
+	}
+
+	private void invalidate(String actionName, ActionRequest<?> request) {
+		if (METADATA_ACTIONS.contains(actionName)) {
+			//Les alias ont pu changer : les indices concrets des clés existantes ne sont plus sûrs
+			invalidateAll();
+		} else {
+			invalidate(concreteIndices.resolve(indicesOf(request)));
+		}
+	}
+
+	private static boolean isModifying(String actionName) {
+		return actionName.startsWith(WRITE_ACTIONS) || INDEX_ACTIONS.contains(actionName)
+				|| METADATA_ACTIONS.contains(actionName);
+	}
+
+	private static Set<String> indicesOf(ActionRequest<?> request) {
+		Set<String> indices = new HashSet<String>();
+		if (request instanceof IndicesRequest) {
+			addAll(indices, ((IndicesRequest) request).indices());
+		} else if (request instanceof CompositeIndicesRequest) {
+			for (IndicesRequest subRequest : ((CompositeIndicesRequest) request).subRequests()) {
+				addAll(indices, subRequest.indices());
+			}
+		}
+		return indices;
+	}
+
+	private static void addAll(Set<String> indices, String[] names) {
+		if (names != null) {
+			indices.addAll(Arrays.asList(names));
+		}
+	}
+
+	/**
+	 * Supprime les réponses portant sur les indices concrets donnés (toutes si null)
+	 */
+	private void invalidate(Set<String> indices) {
+		if (indices == null) {
+			invalidateAll();
+			return;
+		}
+		invalidations.incrementAndGet();
+		for (SearchKey key : cache.asMap().keySet()) {
+			if (key.targets(indices)) {
+				cache.invalidate(key);
+			}
+		}
+	}
+
+	/**
+	 * Relit les alias et indices du cluster ; si la résolution a changé, les clés existantes ne sont plus sûres
+	 */
+	private void refreshConcreteIndices() {
+		concreteIndices.refresh(new ActionListener<Boolean>() {
+			@Override
+			public void onResponse(Boolean changed) {
+				if (changed) {
+					invalidateAll();
+				}
+			}
+
+			@Override
+			public void onFailure(Throwable e) {
+				//Résolution précédente conservée, relue au prochain intervalle
+			}
+		});
+	}
+
+	/**
+	 * Compare le nombre de refresh de chaque groupe d'indices surveillé avec la valeur précédente
+	 */
+	private void checkRefreshes() {
+		refreshConcreteIndices();
+
+		for (final Map.Entry<String, WatchedGroup> group : watchedGroups.entrySet()) {
+			readRefreshes(group.getValue().indices, new ActionListener<Long>() {
+				@Override
+				public void onResponse(Long refreshes) {
+					WatchedGroup previous = group.getValue();
+					//Remplacement conditionnel : un relevé concurrent (ou la suppression du groupe) l'emporte
+					if (!watchedGroups.replace(group.getKey(), previous, new WatchedGroup(previous.indices, refreshes))
+							|| previous.refreshes != refreshes) {
+						invalidateGroup(group.getKey());
+					}
+				}
+
+				@Override
+				public void onFailure(Throwable e) {
+					//Index supprimé ou indisponible : le groupe sera de nouveau relevé à sa prochaine recherche
+					watchedGroups.remove(group.getKey());
+					invalidateGroup(group.getKey());
+				}
+			});
+		}
+	}
+
+	private void readRefreshes(String[] indices, final ActionListener<Long> listener) {
+		in.admin().indices().prepareStats(indices).clear().setRefresh(true).execute(new ActionListener<IndicesStatsResponse>() {
+			@Override
+			public void onResponse(IndicesStatsResponse response) {
+				listener.onResponse(response.getTotal().getRefresh().getTotal());
+			}
+
+			@Override
+			public void onFailure(Throwable e) {
+				listener.onFailure(e);
+			}
+		});
+	}
+
+	private void invalidateGroup(String group) {
+		invalidations.incrementAndGet();
+		for (SearchKey key : cache.asMap().keySet()) {
+			if (group.equals(key.group())) {
+				cache.invalidate(key);
+			}
+		}
+	}
+
+	/**
+	 * Groupe d'indices surveillé et dernier nombre de refresh relevé
+	 */
+	private static class WatchedGroup {
+
+		final String[] indices;
+		final long refreshes;
+
+		WatchedGroup(String[] indices, long refreshes) {
+			this.indices = indices;
+			this.refreshes = refreshes;
+		}
+	}
+
+	private static class CachedResponse {
+
+		final SearchResponse response;
+		final int weight;
+
+		CachedResponse(SearchResponse response) {
+			this.response = response;
+			this.weight = sizeOf(response);
+		}
+
+		private static int sizeOf(SearchResponse response) {
+			BytesStreamOutput out = new BytesStreamOutput();
+			try {
+				response.writeTo(out);
+				return out.size();
+			} catch (IOException e) {
+				return Integer.MAX_VALUE;
+			}
+		}
+	}
+
+	/**
+	 * Admin des indices : les opérations modifiant un index invalident le cache
+	 */
+	private class InvalidatingIndicesAdmin extends FilterClient.IndicesAdmin {
+
+		InvalidatingIndicesAdmin(IndicesAdminClient in) {
+			super(in);
+		}
+
+		@Override
+		public <Request extends ActionRequest, Response extends ActionResponse, RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder, IndicesAdminClient>> ActionFuture<Response> execute(
+				Action<Request, Response, RequestBuilder, IndicesAdminClient> action, Request request) {
+			//Redirigé vers la version avec listener, pour invalider à la fin de l'opération
+			PlainActionFuture<Response> future = PlainActionFuture.newFuture();
+			execute(action, request, future);
+			return future;
+		}
+
+		@Override
+		public <Request extends ActionRequest, Response extends ActionResponse, RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder, IndicesAdminClient>> void execute(
+				Action<Request, Response, RequestBuilder, IndicesAdminClient> action, Request request, ActionListener<Response> listener) {
+			super.execute(action, request, invalidating(action.name(), request, listener));
+		}
+	}
+
+	public static class Builder {
+
+		private final Client client;
+		private ByteSizeValue maxBytes = new ByteSizeValue(64, ByteSizeUnit.MB);
+		private int maxEntries = 10000;
+		private TimeValue ttl = TimeValue.timeValueMinutes(5);
+		private TimeValue refreshCheckInterval = TimeValue.timeValueSeconds(1);
+
+		private Builder(Client client) {
+			this.client = client;
+		}
+
+		public Builder maxBytes(ByteSizeValue maxBytes) {
+			this.maxBytes = maxBytes;
+			return this;
+		}
+
+		public Builder maxEntries(int maxEntries) {
+			this.maxEntries = maxEntries;
+			return this;
+		}
+
+		public Builder ttl(TimeValue ttl) {
+			this.ttl = ttl;
+			return this;
+		}
+
+		/**
+		 * Intervalle de surveillance des refresh (écritures faites par d'autres clients)
+		 */
+		public Builder refreshCheckInterval(TimeValue refreshCheckInterval) {
+			this.refreshCheckInterval = refreshCheckInterval;
+			return this;
+		}
+
+		public CachingClient build() {
+			return new CachingClient(this);
+		}
+	}
+}
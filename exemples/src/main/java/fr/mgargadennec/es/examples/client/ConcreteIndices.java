@@ -0,0 +1,94 @@
+package fr.mgargadennec.es.examples.client;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.admin.cluster.state.ClusterStateResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.common.hppc.cursors.ObjectCursor;
+
+/**
+ * Résolution des noms d'indices et d'alias en indices concrets
+ * S'appuie sur une copie des métadonnées du cluster, relue par refresh(). Les noms absents de cette copie (index
+ * inconnu, _all, wildcards, exclusions) ne sont pas résolus : null, c'est-à-dire tous les indices.
+ *
+ * @author mgargadennec
+ *
+ */
+final class ConcreteIndices {
+
+	private final Client client;
+	private volatile Map<String, Set<String>> names = Collections.emptyMap();
+
+	ConcreteIndices(Client client) {
+		this.client = client;
+	}
+
+	/**
+	 * Indices concrets désignés par les noms donnés
+	 * @return null si l'un des noms ne peut pas être résolu (ou si aucun nom n'est donné : _all)
+	 */
+	Set<String> resolve(Collection<String> indices) {
+		if (indices == null || indices.isEmpty()) {
+			return null;
+		}
+		Map<String, Set<String>> current = names;
+		Set<String> concrete = new HashSet<String>();
+		for (String index : indices) {
+			Set<String> resolved = current.get(index);
+			if (resolved == null) {
+				return null;
+			}
+			concrete.addAll(resolved);
+		}
+		return concrete;
+	}
+
+	/**
+	 * Relit les métadonnées du cluster
+	 * @param listener appelé avec true si la résolution d'au moins un nom a changé
+	 */
+	void refresh(final ActionListener<Boolean> listener) {
+		client.admin().cluster().prepareState().clear().setMetaData(true).execute(new ActionListener<ClusterStateResponse>() {
+			@Override
+			public void onResponse(ClusterStateResponse response) {
+				Map<String, Set<String>> updated = read(response.getState().metaData());
+				boolean changed = !updated.equals(names);
+				names = updated;
+				listener.onResponse(changed);
+			}
+
+			@Override
+			public void onFailure(Throwable e) {
+				listener.onFailure(e);
+			}
+		});
+	}
+
+	private static Map<String, Set<String>> read(MetaData metaData) {
+		Map<String, Set<String>> names = new HashMap<String, Set<String>>();
+		for (IndexMetaData index : metaData) {
+			add(names, index.getIndex(), index.getIndex());
+			for (ObjectCursor<String> alias : index.getAliases().keys()) {
+				add(names, alias.value, index.getIndex());
+			}
+		}
+		return names;
+	}
+
+	private static void add(Map<String, Set<String>> names, String name, String index) {
+		Set<String> indices = names.get(name);
+		if (indices == null) {
+			indices = new HashSet<String>();
+			names.put(name, indices);
+		}
+		indices.add(index);
+	}
+}
@@ -0,0 +1,326 @@
+package fr.mgargadennec.es.examples.client;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.Action;
+import org.elasticsearch.action.ActionFuture;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.IndicesRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.count.CountRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.ClusterAdminClient;
+import org.elasticsearch.client.FilterClient;
+import org.elasticsearch.client.IndicesAdminClient;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.SearchHit;
+
+import fr.mgargadennec.es.examples.metrics.ActionMetrics;
+import fr.mgargadennec.es.examples.metrics.ClientMetrics;
+
+/**
+ * Client instrumenté
+ * Toutes les actions (données, admin des indices, admin du cluster) passent par execute() : leur latence, la taille
+ * des requêtes et réponses, les échecs et les rejets (pools de threads saturés) sont mesurés par action, et par index
+ * pour les requêtes ciblant des indices (recherche, comptage, indexation unitaire, get, ...).
+ *
+ * Les requêtes composites (bulk, msearch) sont mesurées par action seulement ; les items d'un bulk rejetés par le
+ * cluster sont comptés comme rejets. La taille des réponses est celle des sources renvoyées (recherche, get).
+ * Une erreur pendant la mesure est comptée (getMeasureFailures()) sans jamais empêcher la transmission du résultat.
+ *
+ * Les métriques sont exposées en JMX (ClientMetrics) et affichées périodiquement si une sortie est fournie.
+ *
+ * @author mgargadennec
+ *
+ */
+public class InstrumentedClient extends FilterClient {
+
+	private final ClientMetrics metrics;
+	private final IndicesAdminClient indicesAdmin;
+	private final ClusterAdminClient clusterAdmin;
+	private final AtomicLong measureFailures = new AtomicLong();
+
+	private InstrumentedClient(Builder builder) {
+		super(builder.client);
+		this.metrics = new ClientMetrics(builder.name, in.threadPool(), builder.reportInterval, builder.out);
+		this.indicesAdmin = new InstrumentedIndicesAdmin(in.admin().indices());
+		this.clusterAdmin = new InstrumentedClusterAdmin(in.admin().cluster());
+	}
+
+	public static Builder builder(Client client) {
+		return new Builder(client);
+	}
+
+	public ClientMetrics metrics() {
+		return metrics;
+	}
+
+	/**
+	 * Nombre d'exécutions qui n'ont pas pu être mesurées (la réponse a tout de même été transmise)
+	 */
+	public long getMeasureFailures() {
+		return measureFailures.get();
+	}
+
+	@Override
+	public IndicesAdminClient indices() {
+		return indicesAdmin;
+	}
+
+	@Override
+	public ClusterAdminClient cluster() {
+		return clusterAdmin;
+	}
+
+	@Override
+	public void close() {
+		metrics.close();
+		super.close();
+	}
+
+	@Override
+	public <Request extends ActionRequest, Response extends ActionResponse, RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder, Client>> ActionFuture<Response> execute(
+			Action<Request, Response, RequestBuilder, Client> action, Request request) {
+		//Redirigé vers la version avec listener, pour être mesuré
+		PlainActionFuture<Response> future = PlainActionFuture.newFuture();
+		execute(action, request, future);
+		return future;
+	}
+
+	@Override
+	public <Request extends ActionRequest, Response extends ActionResponse, RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder, Client>> void execute(
+			Action<Request, Response, RequestBuilder, Client> action, Request request, ActionListener<Response> listener) {
+		super.execute(action, request, new MeasuringListener<Response>(action.name(), request, listener));
+	}
+
+	private static long requestBytes(ActionRequest<?> request) {
+		if (request instanceof BulkRequest) {
+			return ((BulkRequest) request).estimatedSizeInBytes();
+		} else if (request instanceof IndexRequest) {
+			return length(((IndexRequest) request).source());
+		} else if (request instanceof SearchRequest) {
+			SearchRequest search = (SearchRequest) request;
+			return length(search.source()) + length(search.extraSource()) + length(search.templateSource());
+		} else if (request instanceof CountRequest) {
+			return length(((CountRequest) request).source());
+		} else if (request instanceof MultiSearchRequest) {
+			long bytes = 0;
+			for (SearchRequest search : ((MultiSearchRequest) request).requests()) {
+				bytes += requestBytes(search);
+			}
+			return bytes;
+		}
+		return 0;
+	}
+
+	private static long responseBytes(ActionResponse response) {
+		if (response instanceof SearchResponse) {
+			long bytes = 0;
+			for (SearchHit hit : ((SearchResponse) response).getHits().getHits()) {
+				//sourceRef() échoue sur une source absente (setNoFields, _source désactivé)
+				bytes += hit.isSourceEmpty() ? 0 : hit.sourceRef().length();
+			}
+			return bytes;
+		} else if (response instanceof GetResponse) {
+			return length(((GetResponse) response).getSourceInternal());
+		} else if (response instanceof MultiSearchResponse) {
+			long bytes = 0;
+			for (MultiSearchResponse.Item item : ((MultiSearchResponse) response).getResponses()) {
+				if (!item.isFailure()) {
+					bytes += responseBytes(item.getResponse());
+				}
+			}
+			return bytes;
+		}
+		return 0;
+	}
+
+	private static long rejectedItems(ActionResponse response) {
+		if (!(response instanceof BulkResponse) || !((BulkResponse) response).hasFailures()) {
+			return 0;
+		}
+		long rejected = 0;
+		for (BulkItemResponse item : ((BulkResponse) response).getItems()) {
+			if (item.isFailed() && item.getFailure().getStatus() == RestStatus.TOO_MANY_REQUESTS) {
+				rejected++;
+			}
+		}
+		return rejected;
+	}
+
+	private static long length(BytesReference bytes) {
+		return bytes == null ? 0 : bytes.length();
+	}
+
+	/**
+	 * Mesure une exécution, puis transmet le résultat au listener de l'appelant
+	 */
+	private class MeasuringListener<Response> implements ActionListener<Response> {
+
+		private final String action;
+		private final ActionRequest<?> request;
+		private final ActionListener<Response> delegate;
+		private final long startNanos = System.nanoTime();
+
+		MeasuringListener(String action, ActionRequest<?> request, ActionListener<Response> delegate) {
+			this.action = action;
+			this.request = request;
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void onResponse(Response response) {
+			//Une erreur de mesure ne doit jamais priver l'appelant de sa réponse
+			try {
+				record(response);
+			} catch (RuntimeException e) {
+				measureFailures.incrementAndGet();
+			}
+			delegate.onResponse(response);
+		}
+
+		private void record(Response response) {
+			long latency = System.nanoTime() - startNanos;
+			long requestSize = requestBytes(request);
+			long responseSize = response instanceof ActionResponse ? responseBytes((ActionResponse) response) : 0;
+			long rejected = response instanceof ActionResponse ? rejectedItems((ActionResponse) response) : 0;
+
+			ActionMetrics all = metrics.forAction(action);
+			all.recordSuccess(latency, requestSize, responseSize);
+			all.recordRejections(rejected);
+			if (request instanceof IndicesRequest) {
+				String[] indices = ((IndicesRequest) request).indices();
+				if (indices != null) {
+					for (String index : indices) {
+						metrics.forIndex(action, index).recordSuccess(latency, requestSize, responseSize);
+					}
+				}
+			}
+		}
+
+		@Override
+		public void onFailure(Throwable e) {
+			try {
+				record(e);
+			} catch (RuntimeException measureFailure) {
+				measureFailures.incrementAndGet();
+			}
+			delegate.onFailure(e);
+		}
+
+		private void record(Throwable e) {
+			long latency = System.nanoTime() - startNanos;
+			long requestSize = requestBytes(request);
+			boolean rejected = ExceptionsHelper.unwrapCause(e) instanceof EsRejectedExecutionException;
+
+			metrics.forAction(action).recordFailure(latency, requestSize, rejected);
+			if (request instanceof IndicesRequest) {
+				String[] indices = ((IndicesRequest) request).indices();
+				if (indices != null) {
+					for (String index : indices) {
+						metrics.forIndex(action, index).recordFailure(latency, requestSize, rejected);
+					}
+				}
+			}
+		}
+	}
+
+	private class InstrumentedIndicesAdmin extends FilterClient.IndicesAdmin {
+
+		InstrumentedIndicesAdmin(IndicesAdminClient in) {
+			super(in);
+		}
+
+		@Override
+		public <Request extends ActionRequest, Response extends ActionResponse, RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder, IndicesAdminClient>> ActionFuture<Response> execute(
+				Action<Request, Response, RequestBuilder, IndicesAdminClient> action, Request request) {
+			PlainActionFuture<Response> future = PlainActionFuture.newFuture();
+			execute(action, request, future);
+			return future;
+		}
+
+		@Override
+		public <Request extends ActionRequest, Response extends ActionResponse, RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder, IndicesAdminClient>> void execute(
+				Action<Request, Response, RequestBuilder, IndicesAdminClient> action, Request request, ActionListener<Response> listener) {
+			super.execute(action, request, new MeasuringListener<Response>(action.name(), request, listener));
+		}
+	}
+
+	private class InstrumentedClusterAdmin extends FilterClient.ClusterAdmin {
+
+		InstrumentedClusterAdmin(ClusterAdminClient in) {
+			super(in);
+		}
+
+		@Override
+		public <Request extends ActionRequest, Response extends ActionResponse, RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder, ClusterAdminClient>> ActionFuture<Response> execute(
+				Action<Request, Response, RequestBuilder, ClusterAdminClient> action, Request request) {
+			PlainActionFuture<Response> future = PlainActionFuture.newFuture();
+			execute(action, request, future);
+			return future;
+		}
+
+		@Override
+		public <Request extends ActionRequest, Response extends ActionResponse, RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder, ClusterAdminClient>> void execute(
+				Action<Request, Response, RequestBuilder, ClusterAdminClient> action, Request request, ActionListener<Response> listener) {
+			super.execute(action, request, new MeasuringListener<Response>(action.name(), request, listener));
+		}
+	}
+
+	public static class Builder {
+
+		private final Client client;
+		private String name = "default";
+		private TimeValue reportInterval = TimeValue.timeValueSeconds(10);
+		private PrintStream out;
+
+		private Builder(Client client) {
+			this.client = client;
+		}
+
+		/**
+		 * Nom du client dans les noms JMX
+		 */
+		public Builder name(String name) {
+			this.name = name;
+			return this;
+		}
+
+		/**
+		 * Intervalle de mise à jour des histogrammes (et d'affichage)
+		 */
+		public Builder reportInterval(TimeValue reportInterval) {
+			this.reportInterval = reportInterval;
+			return this;
+		}
+
+		/**
+		 * Sortie du tableau périodique (aucune par défaut : JMX seulement)
+		 */
+		public Builder out(PrintStream out) {
+			this.out = out;
+			return this;
+		}
+
+		public InstrumentedClient build() {
+			return new InstrumentedClient(this);
+		}
+	}
+}
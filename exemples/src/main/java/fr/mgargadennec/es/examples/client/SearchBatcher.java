@@ -0,0 +1,223 @@
+package fr.mgargadennec.es.examples.client;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.threadpool.ThreadPool;
+
+/**
+ * Regroupement des recherches concurrentes
+ * Les recherches qui arrivent dans une même fenêtre de temps (ou jusqu'à maxBatchSize recherches) sont envoyées
+ * ensemble dans une seule MultiSearchRequest, puis chaque MultiSearchResponse.Item est rendu à son appelant.
+ *
+ * Sous charge, on échange ainsi un délai d'attente borné par la fenêtre contre moins d'allers-retours réseau et moins
+ * de surcoût par requête. Un lot réduit à une seule recherche est envoyé directement, sans passer par le msearch.
+ *
+ * @author mgargadennec
+ *
+ */
+public class SearchBatcher implements Closeable {
+
+	private final Client client;
+	private final TimeValue window;
+	private final int maxBatchSize;
+	private final BatchStats stats;
+
+	private final Object lock = new Object();
+	private List<Pending> pending;
+	private ScheduledFuture<?> scheduledFlush;
+	private boolean closed;
+
+	private SearchBatcher(Builder builder) {
+		this.client = builder.client;
+		this.window = builder.window;
+		this.maxBatchSize = builder.maxBatchSize;
+		this.stats = builder.stats;
+		this.pending = new ArrayList<Pending>(maxBatchSize);
+	}
+
+	public static Builder builder(Client client) {
+		return new Builder(client);
+	}
+
+	public CompletableFuture<SearchResponse> submit(SearchRequestBuilder builder) {
+		return submit(builder.request());
+	}
+
+	/**
+	 * Met la recherche en attente du prochain lot
+	 */
+	public CompletableFuture<SearchResponse> submit(SearchRequest request) {
+		Pending search = new Pending(request);
+		List<Pending> batch = null;
+		synchronized (lock) {
+			if (closed) {
+				search.future.completeExceptionally(new IllegalStateException("Search batcher is closed"));
+				return search.future;
+			}
+			pending.add(search);
+			if (pending.size() >= maxBatchSize) {
+				batch = drain();
+			} else if (pending.size() == 1) {
+				//Première recherche du lot : la fenêtre démarre
+				scheduledFlush = client.threadPool().schedule(window, ThreadPool.Names.SAME, new Runnable() {
+					@Override
+					public void run() {
+						flush();
+					}
+				});
+			}
+		}
+		if (batch != null) {
+			dispatch(batch);
+		}
+		return search.future;
+	}
+
+	public BatchStats getStats() {
+		return stats;
+	}
+
+	/**
+	 * Envoie immédiatement les recherches en attente
+	 */
+	public void flush() {
+		List<Pending> batch;
+		synchronized (lock) {
+			if (pending.isEmpty()) {
+				return;
+			}
+			batch = drain();
+		}
+		dispatch(batch);
+	}
+
+	@Override
+	public void close() {
+		synchronized (lock) {
+			closed = true;
+		}
+		flush();
+	}
+
+	private List<Pending> drain() {
+		if (scheduledFlush != null) {
+			scheduledFlush.cancel(false);
+			scheduledFlush = null;
+		}
+		List<Pending> batch = pending;
+		pending = new ArrayList<Pending>(maxBatchSize);
+		return batch;
+	}
+
+	private void dispatch(final List<Pending> batch) {
+		long now = System.nanoTime();
+		for (Pending search : batch) {
+			stats.recordQueueDelay(now - search.enqueuedNanos);
+		}
+		stats.recordBatch(batch.size());
+
+		if (batch.size() == 1) {
+			final Pending search = batch.get(0);
+			client.search(search.request, new ActionListener<SearchResponse>() {
+				@Override
+				public void onResponse(SearchResponse response) {
+					search.future.complete(response);
+				}
+
+				@Override
+				public void onFailure(Throwable e) {
+					search.future.completeExceptionally(e);
+				}
+			});
+			return;
+		}
+
+		MultiSearchRequest multiSearch = new MultiSearchRequest();
+		for (Pending search : batch) {
+			multiSearch.add(search.request);
+		}
+		client.multiSearch(multiSearch, new ActionListener<MultiSearchResponse>() {
+			@Override
+			public void onResponse(MultiSearchResponse response) {
+				//Les items sont dans l'ordre des requêtes du lot
+				MultiSearchResponse.Item[] items = response.getResponses();
+				for (int i = 0; i < batch.size(); i++) {
+					CompletableFuture<SearchResponse> future = batch.get(i).future;
+					if (items[i].isFailure()) {
+						future.completeExceptionally(new ElasticsearchException(items[i].getFailureMessage()));
+					} else {
+						future.complete(items[i].getResponse());
+					}
+				}
+			}
+
+			@Override
+			public void onFailure(Throwable e) {
+				for (Pending search : batch) {
+					search.future.completeExceptionally(e);
+				}
+			}
+		});
+	}
+
+	private static class Pending {
+
+		private final SearchRequest request;
+		private final CompletableFuture<SearchResponse> future = new CompletableFuture<SearchResponse>();
+		private final long enqueuedNanos = System.nanoTime();
+
+		Pending(SearchRequest request) {
+			this.request = request;
+		}
+	}
+
+	public static class Builder {
+
+		private final Client client;
+		private TimeValue window = TimeValue.timeValueMillis(5);
+		private int maxBatchSize = 64;
+		private BatchStats stats = new BatchStats();
+
+		private Builder(Client client) {
+			this.client = client;
+		}
+
+		/**
+		 * Durée maximale d'attente d'une recherche avant l'envoi de son lot
+		 */
+		public Builder window(TimeValue window) {
+			this.window = window;
+			return this;
+		}
+
+		/**
+		 * Nombre de recherches déclenchant l'envoi immédiat du lot
+		 */
+		public Builder maxBatchSize(int maxBatchSize) {
+			this.maxBatchSize = maxBatchSize;
+			return this;
+		}
+
+		public Builder stats(BatchStats stats) {
+			this.stats = stats;
+			return this;
+		}
+
+		public SearchBatcher build() {
+			return new SearchBatcher(this);
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package fr.mgargadennec.es.examples.client;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+
+/**
+ * Clé du cache de recherche
+ * Construite à partir de la requête sérialisée (source, extraSource, template) et de ses paramètres
+ * (indices, types, searchType, routing, preference).
+ * Les indices concrets interrogés (alias résolus) servent à l'invalidation, pas à l'égalité des clés.
+ *
+ * @author mgargadennec
+ *
+ */
+final class SearchKey {
+
+	private final String[] indices;
+	private final Set<String> concreteIndices;
+	private final String[] watchedIndices;
+	private final String[] types;
+	private final String searchType;
+	private final String routing;
+	private final String preference;
+	private final BytesReference source;
+	private final BytesReference extraSource;
+	private final BytesReference templateSource;
+	private final int hashCode;
+
+	/**
+	 * @param concreteIndices indices concrets interrogés, null s'ils ne sont pas connus
+	 */
+	SearchKey(SearchRequest request, Set<String> concreteIndices) {
+		this.indices = request.indices() == null ? new String[0] : request.indices().clone();
+		this.concreteIndices = concreteIndices == null ? null : Collections.unmodifiableSet(concreteIndices);
+		if (concreteIndices == null) {
+			this.watchedIndices = indices;
+		} else {
+			this.watchedIndices = concreteIndices.toArray(new String[concreteIndices.size()]);
+			Arrays.sort(watchedIndices);
+		}
+		this.types = request.types() == null ? new String[0] : request.types().clone();
+		this.searchType = request.searchType().name();
+		this.routing = request.routing();
+		this.preference = request.preference();
+		//Copie : les octets de la requête peuvent appartenir à un buffer réutilisé
+		this.source = copy(request.source());
+		this.extraSource = copy(request.extraSource());
+		this.templateSource = copy(request.templateSource());
+
+		int hash = Arrays.hashCode(indices);
+		hash = 31 * hash + Arrays.hashCode(types);
+		hash = 31 * hash + searchType.hashCode();
+		hash = 31 * hash + (routing == null ? 0 : routing.hashCode());
+		hash = 31 * hash + (preference == null ? 0 : preference.hashCode());
+		hash = 31 * hash + (source == null ? 0 : source.hashCode());
+		hash = 31 * hash + (extraSource == null ? 0 : extraSource.hashCode());
+		hash = 31 * hash + (templateSource == null ? 0 : templateSource.hashCode());
+		this.hashCode = hash;
+	}
+
+	private static BytesReference copy(BytesReference bytes) {
+		return bytes == null ? null : new BytesArray(bytes.toBytes());
+	}
+
+	/**
+	 * Indices dont le nombre de refresh est surveillé pour cette recherche : les indices concrets s'ils sont connus,
+	 * sinon les noms interrogés
+	 */
+	String[] watchedIndices() {
+		return watchedIndices;
+	}
+
+	/**
+	 * Nom du groupe d'indices surveillé, partagé par les recherches portant sur les mêmes indices
+	 */
+	String group() {
+		return Arrays.toString(watchedIndices);
+	}
+
+	/**
+	 * Taille approximative de la clé, en octets
+	 */
+	int weight() {
+		return (source == null ? 0 : source.length())
+				+ (extraSource == null ? 0 : extraSource.length())
+				+ (templateSource == null ? 0 : templateSource.length());
+	}
+
+	/**
+	 * Vrai si la recherche peut porter sur l'un des indices concrets modifiés
+	 * (toujours vrai si les indices interrogés ou les indices modifiés sont inconnus : null)
+	 */
+	boolean targets(Set<String> modifiedIndices) {
+		if (modifiedIndices == null || concreteIndices == null) {
+			return true;
+		}
+		return !Collections.disjoint(concreteIndices, modifiedIndices);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof SearchKey)) {
+			return false;
+		}
+		SearchKey other = (SearchKey) obj;
+		return hashCode == other.hashCode
+				&& Arrays.equals(indices, other.indices)
+				&& Arrays.equals(types, other.types)
+				&& searchType.equals(other.searchType)
+				&& equal(routing, other.routing)
+				&& equal(preference, other.preference)
+				&& equal(source, other.source)
+				&& equal(extraSource, other.extraSource)
+				&& equal(templateSource, other.templateSource);
+	}
+
+	private static boolean equal(Object a, Object b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+}
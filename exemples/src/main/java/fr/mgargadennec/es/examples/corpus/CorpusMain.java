@@ -0,0 +1,103 @@
+package fr.mgargadennec.es.examples.corpus;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.node.NodeBuilder;
+
+import fr.mgargadennec.es.examples.generator.DocumentGenerator;
+import fr.mgargadennec.es.examples.generator.DocumentShape;
+import fr.mgargadennec.es.examples.index.IndexBootstrap;
+import fr.mgargadennec.es.examples.index.IndexResources;
+import fr.mgargadennec.es.examples.index.MappingProfile;
+import fr.mgargadennec.es.examples.ingest.BulkIngester;
+import fr.mgargadennec.es.examples.ingest.IngestStats;
+import fr.mgargadennec.es.examples.util.CommandLineOptions;
+
+/**
+ * Ecriture et rejeu d'un corpus NDJSON
+ *
+ * Options (--option=valeur) :
+ *  --mode        : write (génère le fichier) ou replay (l'indexe)
+ *  --file        : fichier du corpus (corpus.ndjson)
+ *  write :
+ *   --docs       : nombre de documents (1000000)
+ *   --shape      : forme des documents (FULL_WITH_CATEGORY)
+ *   --seed       : graine du générateur
+ *  replay :
+ *   --cluster    : cluster à rejoindre en tant que noeud client (sinon : noeud local)
+ *   --index      : index alimenté, recréé (mon_index)
+ *   --profile    : profil de mapping (HEAP_FIELDDATA)
+ *   --chunk      : taille d'un bulk (5mb)
+ *   --concurrent : nombre de bulks en vol (4)
+ *
+ * @author mgargadennec
+ *
+ */
+public class CorpusMain {
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Settings options = CommandLineOptions.parse(args);
+		File file = new File(options.get("file", "corpus.ndjson"));
+
+		if ("write".equals(options.get("mode", "write"))) {
+			long start = System.nanoTime();
+			int docs = options.getAsInt("docs", 1000000);
+			long size = new CorpusWriter(
+					DocumentShape.valueOf(options.get("shape", DocumentShape.FULL_WITH_CATEGORY.name()).toUpperCase()),
+					options.getAsLong("seed", DocumentGenerator.DEFAULT_SEED),
+					CorpusWriter.DEFAULT_REFERENCE_TIME)
+					.write(file, docs);
+			System.out.println(docs + " documents written to " + file + " (" + new ByteSizeValue(size) + ") in "
+					+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+			return;
+		}
+
+		Node node;
+		String cluster = options.get("cluster");
+		if (cluster != null) {
+			node = NodeBuilder.nodeBuilder().clusterName(cluster).client(true).node();
+		} else {
+			node = NodeBuilder.nodeBuilder().clusterName("corpus-replay").local(true).node();
+		}
+		Client client = node.client();
+		client.admin().cluster().prepareHealth().setWaitForYellowStatus().get();
+
+		String indexName = options.get("index", "mon_index");
+		if (client.admin().indices().prepareExists(indexName).get().isExists()) {
+			client.admin().indices().prepareDelete(indexName).get();
+		}
+		IndexBootstrap bootstrap = IndexBootstrap.builder(client, indexName)
+				.settings(IndexResources.SETTINGS)
+				.mapping("mon_type", MappingProfile.valueOf(options.get("profile", MappingProfile.HEAP_FIELDDATA.name()).toUpperCase()))
+				.build();
+		bootstrap.createForLoad();
+
+		//Une tranche = un bulk
+		ByteSizeValue chunk = options.getAsBytesSize("chunk", new ByteSizeValue(5 * 1024 * 1024));
+		BulkIngester ingester = BulkIngester.builder(client)
+				.bulkActions(-1)
+				.bulkSize(chunk)
+				.flushInterval(null)
+				.concurrentRequests(options.getAsInt("concurrent", 4))
+				.stats(new IngestStats(false))
+				.build();
+
+		long chunks = new CorpusReplayer(file, chunk).replay(ingester, indexName, "mon_type");
+		ingester.awaitClose(10, TimeUnit.MINUTES);
+		bootstrap.finishLoad();
+
+		System.out.println(chunks + " chunks replayed from " + file);
+		System.out.println(ingester.getStats());
+		System.out.println("Total documents " + client.prepareCount(indexName).get().getCount());
+
+		node.close();
+
+		System.exit(0);
+	}
+}
@@ -0,0 +1,104 @@
+package fr.mgargadennec.es.examples.corpus;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.elasticsearch.common.bytes.ChannelBufferBytesReference;
+import org.elasticsearch.common.netty.buffer.ChannelBuffers;
+import org.elasticsearch.common.unit.ByteSizeValue;
+
+import com.google.common.base.Throwables;
+
+import fr.mgargadennec.es.examples.ingest.BulkIngester;
+
+/**
+ * Rejeu d'un corpus NDJSON (CorpusWriter) par mapping mémoire
+ * Le fichier est mappé (FileChannel.map) par fenêtres, puis découpé en tranches d'au plus chunkSize octets, coupées
+ * entre deux documents (après une ligne de source). Chaque tranche est une vue sur la zone mappée, passée telle
+ * quelle au BulkIngester : pas de copie dans le tas, ni de Map ou de String par document.
+ *
+ * Pour qu'une tranche donne exactement un bulk, le BulkIngester peut être configuré avec bulkActions(-1) et
+ * bulkSize(chunkSize) : le débit n'est alors limité que par le cluster (et le nombre de bulks en vol).
+ *
+ * @author mgargadennec
+ *
+ */
+public class CorpusReplayer {
+
+	/**
+	 * Taille maximale d'une fenêtre mappée (un MappedByteBuffer est limité à 2 Go)
+	 */
+	private static final long MAX_WINDOW = 1L << 30;
+
+	private final File file;
+	private final int chunkSize;
+
+	public CorpusReplayer(File file, ByteSizeValue chunkSize) {
+		this.file = file;
+		this.chunkSize = (int) Math.min(chunkSize.bytes(), MAX_WINDOW);
+	}
+
+	/**
+	 * Rejoue tout le fichier dans l'index (sans attendre la fin des bulks en vol)
+	 * @return le nombre de tranches envoyées
+	 */
+	public long replay(BulkIngester ingester, String indexName, String type) throws IOException {
+		long chunks = 0;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			long position = 0;
+			while (position < size) {
+				long windowSize = Math.min(size - position, MAX_WINDOW);
+				MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+				boolean last = position + windowSize == size;
+
+				int start = 0;
+				int pairEnd = 0;
+				int lines = 0;
+				for (int i = 0; i < windowSize; i++) {
+					if (window.get(i) != '\n' || ++lines % 2 != 0) {
+						continue;
+					}
+					//Fin d'un document : la tranche en cours est envoyée si ce document la ferait déborder
+					if (i + 1 - start > chunkSize && pairEnd > start) {
+						send(ingester, window, start, pairEnd, indexName, type);
+						chunks++;
+						start = pairEnd;
+					}
+					pairEnd = i + 1;
+				}
+				if (last && lines % 2 == 1 && window.get((int) windowSize - 1) != '\n') {
+					//Dernière source sans retour à la ligne
+					pairEnd = (int) windowSize;
+				}
+				if (pairEnd == 0) {
+					throw new IOException("No complete document in " + file + " at offset " + position);
+				}
+				if (pairEnd > start) {
+					send(ingester, window, start, pairEnd, indexName, type);
+					chunks++;
+				}
+				//La fenêtre suivante reprend au début du premier document incomplet
+				position += pairEnd;
+			}
+		}
+		return chunks;
+	}
+
+	private static void send(BulkIngester ingester, ByteBuffer window, int from, int to, String indexName, String type) {
+		ByteBuffer chunk = window.duplicate();
+		//Appels via ByteBuffer/Buffer : les versions covariantes de MappedByteBuffer n'existent qu'à partir de Java 9
+		((Buffer) chunk).position(from);
+		((Buffer) chunk).limit(to);
+		try {
+			ingester.add(new ChannelBufferBytesReference(ChannelBuffers.wrappedBuffer(chunk.slice())), indexName, type);
+		} catch (Exception e) {
+			throw Throwables.propagate(e);
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package fr.mgargadennec.es.examples.corpus;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.elasticsearch.common.xcontent.XContentType;
+
+import com.google.common.base.Charsets;
+
+import fr.mgargadennec.es.examples.generator.DocumentGenerator;
+import fr.mgargadennec.es.examples.generator.DocumentShape;
+import fr.mgargadennec.es.examples.generator.DocumentWriter;
+import fr.mgargadennec.es.examples.generator.Vocabulary;
+
+/**
+ * Ecriture d'un corpus sur disque, au format NDJSON de l'API bulk
+ * Chaque document occupe deux lignes : l'action {"index":{}} (index et type sont donnés au rejeu) puis la source.
+ *
+ * L'écriture se fait dans un seul thread, avec une seed et une date de référence fixées : le fichier produit est
+ * identique d'une génération à l'autre, et peut être rejoué autant de fois que nécessaire (CorpusReplayer).
+ *
+ * @author mgargadennec
+ *
+ */
+public class CorpusWriter {
+
+	/**
+	 * Date de référence par défaut (1er juin 2015) : les dates createdAt couvrent les 3 années précédentes
+	 */
+	public static final long DEFAULT_REFERENCE_TIME = DocumentGenerator.DEFAULT_REFERENCE_TIME;
+
+	static final byte[] INDEX_ACTION = "{\"index\":{}}\n".getBytes(Charsets.UTF_8);
+
+	private final DocumentShape shape;
+	private final long seed;
+	private final long referenceTime;
+
+	public CorpusWriter(DocumentShape shape, long seed, long referenceTime) {
+		this.shape = shape;
+		this.seed = seed;
+		this.referenceTime = referenceTime;
+	}
+
+	/**
+	 * Ecrit count documents dans le fichier (écrasé s'il existe)
+	 * @return la taille du fichier en octets
+	 */
+	public long write(File file, int count) throws IOException {
+		DocumentWriter writer = new DocumentWriter(Vocabulary.DEFAULT, shape, XContentType.JSON, seed, referenceTime);
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 20)) {
+			for (int i = 0; i < count; i++) {
+				out.write(INDEX_ACTION);
+				writer.next().writeTo(out);
+				out.write('\n');
+			}
+		}
+		return file.length();
+	}
+}
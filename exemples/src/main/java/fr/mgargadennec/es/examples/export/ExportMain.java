@@ -0,0 +1,62 @@
+package fr.mgargadennec.es.examples.export;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.node.NodeBuilder;
+
+import fr.mgargadennec.es.examples.util.CommandLineOptions;
+
+/**
+ * Export de tous les documents d'une année (le filtre de l'exemple 6), depuis un cluster existant
+ *
+ * Options (--option=valeur) :
+ *  --cluster     : cluster à rejoindre en tant que noeud client (exemple6)
+ *  --index       : index exporté (mon_index)
+ *  --year        : année à exporter (sinon : tout l'index)
+ *  --output      : répertoire de sortie (export)
+ *  --size        : documents par scroll et par shard (500)
+ *  --parallelism : nombre de shards lus en parallèle (nombre de coeurs)
+ *
+ * @author mgargadennec
+ *
+ */
+public class ExportMain {
+
+	public static void main(String[] args) throws InterruptedException, IOException {
+		Settings options = CommandLineOptions.parse(args);
+		String indexName = options.get("index", "mon_index");
+
+		Node node = NodeBuilder.nodeBuilder().clusterName(options.get("cluster", "exemple6")).client(true).node();
+		Client client = node.client();
+		client.admin().cluster().prepareHealth().setWaitForYellowStatus().get();
+
+		//Même filtre que l'exemple 6
+		QueryBuilder query = QueryBuilders.matchAllQuery();
+		if (options.get("year") != null) {
+			query = QueryBuilders.filteredQuery(query, FilterBuilders.termFilter("year", options.getAsInt("year", null)));
+		}
+
+		FileHitSink sink = new FileHitSink(new File(options.get("output", "export")), indexName);
+		ExportStats stats = ScrollExporter.builder(client, indexName)
+				.query(query)
+				.size(options.getAsInt("size", 500))
+				.parallelism(options.getAsInt("parallelism", Runtime.getRuntime().availableProcessors()))
+				.build()
+				.export(sink);
+		System.out.println(stats);
+		if (sink.getSkipped() > 0) {
+			System.out.println(sink.getSkipped() + " documents without _source skipped");
+		}
+
+		node.close();
+
+		System.exit(0);
+	}
+}
@@ -0,0 +1,64 @@
+package fr.mgargadennec.es.examples.export;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistiques d'un export : documents, octets de source, durée
+ *
+ * @author mgargadennec
+ *
+ */
+public class ExportStats {
+
+	private final AtomicLong docs = new AtomicLong();
+	private final AtomicLong bytes = new AtomicLong();
+	private final AtomicLong scrolls = new AtomicLong();
+	private final int shards;
+	private final long startNanos = System.nanoTime();
+	private volatile long endNanos;
+
+	ExportStats(int shards) {
+		this.shards = shards;
+	}
+
+	void onHit(int sourceLength) {
+		docs.incrementAndGet();
+		bytes.addAndGet(sourceLength);
+	}
+
+	void onScroll() {
+		scrolls.incrementAndGet();
+	}
+
+	void done() {
+		endNanos = System.nanoTime();
+	}
+
+	public long getDocs() {
+		return docs.get();
+	}
+
+	public long getBytes() {
+		return bytes.get();
+	}
+
+	public long getScrolls() {
+		return scrolls.get();
+	}
+
+	public int getShards() {
+		return shards;
+	}
+
+	public long getElapsedMillis() {
+		return ((endNanos == 0 ? System.nanoTime() : endNanos) - startNanos) / 1000000;
+	}
+
+	@Override
+	public String toString() {
+		long elapsed = Math.max(1, getElapsedMillis());
+		return getDocs() + " documents (" + getBytes() + " bytes) exported from " + shards + " shards in " + getScrolls()
+				+ " scrolls and " + elapsed + "ms (" + (getDocs() * 1000 / elapsed) + " docs/s, "
+				+ (getBytes() * 1000 / elapsed) + " bytes/s)";
+	}
+}
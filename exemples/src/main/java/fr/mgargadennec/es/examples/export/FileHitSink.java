@@ -0,0 +1,67 @@
+package fr.mgargadennec.es.examples.export;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.search.SearchHit;
+
+/**
+ * Export dans des fichiers NDJSON (une source de document par ligne), un fichier par shard
+ * Chaque shard écrit dans son propre fichier : pas de verrou partagé entre les threads d'export.
+ *
+ * Les documents sans _source (_source désactivé dans le mapping, ou exclu de la recherche) ne peuvent pas être
+ * exportés : ils sont ignorés et comptés (getSkipped()).
+ *
+ * @author mgargadennec
+ *
+ */
+public class FileHitSink implements HitSink {
+
+	private final File directory;
+	private final String prefix;
+	private final ConcurrentMap<Integer, OutputStream> outputs = new ConcurrentHashMap<Integer, OutputStream>();
+	private final AtomicLong skipped = new AtomicLong();
+
+	public FileHitSink(File directory, String prefix) {
+		this.directory = directory;
+		this.prefix = prefix;
+		directory.mkdirs();
+	}
+
+	@Override
+	public void accept(int shard, SearchHit hit) throws IOException {
+		//sourceRef() échoue sur une source absente
+		if (hit.isSourceEmpty()) {
+			skipped.incrementAndGet();
+			return;
+		}
+		OutputStream output = outputs.get(shard);
+		if (output == null) {
+			output = new BufferedOutputStream(new FileOutputStream(new File(directory, prefix + "-" + shard + ".json")), 1 << 16);
+			outputs.put(shard, output);
+		}
+		//Les octets de la source sont recopiés tels quels, sans parsing
+		hit.sourceRef().writeTo(output);
+		output.write('\n');
+	}
+
+	/**
+	 * Nombre de documents ignorés faute de _source
+	 */
+	public long getSkipped() {
+		return skipped.get();
+	}
+
+	@Override
+	public void close() throws IOException {
+		for (OutputStream output : outputs.values()) {
+			output.close();
+		}
+	}
+}
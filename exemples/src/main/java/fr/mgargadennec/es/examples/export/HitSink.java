@@ -0,0 +1,23 @@
+package fr.mgargadennec.es.examples.export;
+
+import java.io.IOException;
+
+import org.elasticsearch.search.SearchHit;
+
+/**
+ * Destination des documents exportés
+ * Appelé en parallèle par les threads d'export (un par shard) : les implémentations doivent être thread-safe.
+ * Pour un shard donné, les appels sont faits par un seul thread.
+ *
+ * @author mgargadennec
+ *
+ */
+public interface HitSink {
+
+	void accept(int shard, SearchHit hit) throws IOException;
+
+	/**
+	 * Appelé une fois l'export terminé (ou en échec)
+	 */
+	void close() throws IOException;
+}
@@ -0,0 +1,173 @@
+package fr.mgargadennec.es.examples.export;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.elasticsearch.action.admin.cluster.shards.ClusterSearchShardsGroup;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+
+import com.google.common.base.Throwables;
+
+/**
+ * Export complet d'un résultat de recherche
+ * Plutôt que de paginer avec from/size (de plus en plus coûteux à mesure que l'on avance), on ouvre un scroll de type
+ * SCAN par shard (preference=_shards:N), et les shards sont lus en parallèle. Les documents sont envoyés au fil de
+ * l'eau dans un HitSink : rien n'est conservé en mémoire.
+ *
+ * @author mgargadennec
+ *
+ */
+public class ScrollExporter {
+
+	private final Client client;
+	private final String indexName;
+	private final QueryBuilder query;
+	private final int size;
+	private final TimeValue keepAlive;
+	private final int parallelism;
+
+	private ScrollExporter(Builder builder) {
+		this.client = builder.client;
+		this.indexName = builder.indexName;
+		this.query = builder.query;
+		this.size = builder.size;
+		this.keepAlive = builder.keepAlive;
+		this.parallelism = builder.parallelism;
+	}
+
+	public static Builder builder(Client client, String indexName) {
+		return new Builder(client, indexName);
+	}
+
+	/**
+	 * Numéros des shards à lire (si l'index est un alias, le shard N de chaque index est lu par le même scroll)
+	 */
+	public SortedSet<Integer> shards() {
+		SortedSet<Integer> shards = new TreeSet<Integer>();
+		for (ClusterSearchShardsGroup group : client.admin().cluster().prepareSearchShards(indexName).get().getGroups()) {
+			shards.add(group.getShardId());
+		}
+		return shards;
+	}
+
+	public ExportStats export(final HitSink sink) throws InterruptedException, IOException {
+		SortedSet<Integer> shards = shards();
+		final ExportStats stats = new ExportStats(shards.size());
+
+		int threads = Math.max(1, Math.min(parallelism, shards.size()));
+		ExecutorService executor = Executors.newFixedThreadPool(threads, EsExecutors.daemonThreadFactory("export"));
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (final int shard : shards) {
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						exportShard(shard, sink, stats);
+						return null;
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (ExecutionException e) {
+			throw Throwables.propagate(e.getCause());
+		} finally {
+			executor.shutdownNow();
+			sink.close();
+			stats.done();
+		}
+		return stats;
+	}
+
+	private void exportShard(int shard, HitSink sink, ExportStats stats) throws IOException {
+		//Le SCAN ne renvoie aucun document à la première requête, seulement l'identifiant du scroll
+		SearchResponse response = client.prepareSearch(indexName)
+				.setSearchType(SearchType.SCAN)
+				.setPreference("_shards:" + shard)
+				.setQuery(query)
+				.setSize(size)
+				.setScroll(keepAlive)
+				.get();
+		String scrollId = response.getScrollId();
+		try {
+			while (true) {
+				response = client.prepareSearchScroll(scrollId).setScroll(keepAlive).get();
+				stats.onScroll();
+				scrollId = response.getScrollId();
+				if (response.getHits().getHits().length == 0) {
+					return;
+				}
+				for (SearchHit hit : response.getHits().getHits()) {
+					sink.accept(shard, hit);
+					stats.onHit(hit.isSourceEmpty() ? 0 : hit.sourceRef().length());
+				}
+			}
+		} finally {
+			client.prepareClearScroll().addScrollId(scrollId).execute();
+		}
+	}
+
+	public static class Builder {
+
+		private final Client client;
+		private final String indexName;
+		private QueryBuilder query = QueryBuilders.matchAllQuery();
+		private int size = 500;
+		private TimeValue keepAlive = TimeValue.timeValueMinutes(1);
+		private int parallelism = Runtime.getRuntime().availableProcessors();
+
+		private Builder(Client client, String indexName) {
+			this.client = client;
+			this.indexName = indexName;
+		}
+
+		public Builder query(QueryBuilder query) {
+			this.query = query;
+			return this;
+		}
+
+		/**
+		 * Nombre de documents par scroll et par shard
+		 */
+		public Builder size(int size) {
+			this.size = size;
+			return this;
+		}
+
+		/**
+		 * Durée de vie du contexte de scroll entre deux lectures
+		 */
+		public Builder keepAlive(TimeValue keepAlive) {
+			this.keepAlive = keepAlive;
+			return this;
+		}
+
+		/**
+		 * Nombre maximum de shards lus en parallèle
+		 */
+		public Builder parallelism(int parallelism) {
+			this.parallelism = parallelism;
+			return this;
+		}
+
+		public ScrollExporter build() {
+			return new ScrollExporter(this);
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package fr.mgargadennec.es.examples.generator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.joda.time.DateTime;
+import org.elasticsearch.common.joda.time.DateTimeZone;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import com.google.common.base.Throwables;
+
+import fr.mgargadennec.es.examples.id.IdGenerator;
+
+/**
+ * Générateur de documents aléatoires
+ * La génération est répartie sur plusieurs threads (par défaut, un par coeur). Chaque thread possède son propre
+ * DocumentWriter, initialisé avec seed + numéro de thread : pour une même seed, une même date de référence et un
+ * même nombre de threads, le corpus généré est identique (hors identifiants d'un IdGenerator).
+ *
+ * @author mgargadennec
+ *
+ */
+public class DocumentGenerator {
+
+	public static final long DEFAULT_SEED = 93285L;
+
+	/**
+	 * Date de référence par défaut (1er juin 2015) : les dates createdAt couvrent les 3 années précédentes
+	 */
+	public static final long DEFAULT_REFERENCE_TIME = new DateTime(2015, 6, 1, 0, 0, DateTimeZone.UTC).getMillis();
+
+	private final Vocabulary vocabulary;
+	private final DocumentShape shape;
+	private final XContentType contentType;
+	private final long seed;
+	private final long referenceTime;
+	private final int threads;
+	private final IdGenerator ids;
+
+	public DocumentGenerator(DocumentShape shape) {
+		this(shape, null);
+	}
+
+	public DocumentGenerator(DocumentShape shape, IdGenerator ids) {
+		this(Vocabulary.DEFAULT, shape, XContentType.JSON, DEFAULT_SEED, Runtime.getRuntime().availableProcessors(), ids);
+	}
+
+	public DocumentGenerator(Vocabulary vocabulary, DocumentShape shape, XContentType contentType, long seed, int threads) {
+		this(vocabulary, shape, contentType, seed, threads, null);
+	}
+
+	public DocumentGenerator(Vocabulary vocabulary, DocumentShape shape, XContentType contentType, long seed, int threads,
+			IdGenerator ids) {
+		this(vocabulary, shape, contentType, seed, DEFAULT_REFERENCE_TIME, threads, ids);
+	}
+
+	/**
+	 * @param referenceTime fin de la période des dates createdAt (3 ans)
+	 * @param ids générateur des identifiants, partagé par tous les threads et utilisés comme _id (null : UUID
+	 *            reproductibles dans le champ id, _id généré par Elasticsearch)
+	 */
+	public DocumentGenerator(Vocabulary vocabulary, DocumentShape shape, XContentType contentType, long seed, long referenceTime,
+			int threads, IdGenerator ids) {
+		this.vocabulary = vocabulary;
+		this.ids = ids;
+		this.shape = shape;
+		this.contentType = contentType;
+		this.seed = seed;
+		this.referenceTime = referenceTime;
+		this.threads = threads;
+	}
+
+	/**
+	 * Crée un writer indépendant, pour une génération dans le thread appelant
+	 */
+	public DocumentWriter newWriter(int partition) {
+		return new DocumentWriter(vocabulary, shape, contentType, seed + partition, referenceTime, ids);
+	}
+
+	/**
+	 * Génère count documents en parallèle et les envoie dans le sink
+	 * @return le nombre de documents générés
+	 */
+	public long generate(int count, final DocumentSink sink) throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads, EsExecutors.daemonThreadFactory("generator"));
+		try {
+			List<Future<Integer>> futures = new ArrayList<Future<Integer>>(threads);
+			for (int partition = 0; partition < threads; partition++) {
+				//Découpage du volume : les premières partitions prennent le reste de la division
+				final int partitionCount = count / threads + (partition < count % threads ? 1 : 0);
+				final DocumentWriter writer = newWriter(partition);
+				futures.add(executor.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() throws Exception {
+						for (int i = 0; i < partitionCount; i++) {
+							BytesReference source = writer.next();
+							sink.accept(writer.getId(), source);
+						}
+						return partitionCount;
+					}
+				}));
+			}
+
+			long generated = 0;
+			for (Future<Integer> future : futures) {
+				generated += future.get();
+			}
+			return generated;
+		} catch (ExecutionException e) {
+			throw Throwables.propagate(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
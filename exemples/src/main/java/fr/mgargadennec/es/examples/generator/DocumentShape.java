@@ -0,0 +1,29 @@
+package fr.mgargadennec.es.examples.generator;
+
+/**
+ * Forme des documents générés, selon les exemples
+ *
+ * @author mgargadennec
+ *
+ */
+public enum DocumentShape {
+
+	/**
+	 * titre uniquement (exemples 2 et 3)
+	 */
+	TITLE_ONLY,
+
+	/**
+	 * id, titre, sousTitre, year, createdAt (exemples 4 à 6)
+	 */
+	FULL,
+
+	/**
+	 * FULL + category (exemple 7)
+	 */
+	FULL_WITH_CATEGORY;
+
+	public boolean hasCategory() {
+		return this == FULL_WITH_CATEGORY;
+	}
+}
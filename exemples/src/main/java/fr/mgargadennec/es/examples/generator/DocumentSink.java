@@ -0,0 +1,20 @@
+package fr.mgargadennec.es.examples.generator;
+
+import org.elasticsearch.common.bytes.BytesReference;
+
+/**
+ * Destination des documents générés
+ * Appelé simultanément par tous les threads du générateur : les implémentations doivent être thread-safe.
+ *
+ * @author mgargadennec
+ *
+ */
+public interface DocumentSink {
+
+	/**
+	 * @param id le _id explicite du document, null pour un _id généré par Elasticsearch (DocumentWriter.getId())
+	 * @param source le document sérialisé. Le buffer est réutilisé par le générateur après l'appel :
+	 *               il doit être copié s'il est conservé.
+	 */
+	void accept(String id, BytesReference source);
+}
@@ -0,0 +1,145 @@
+package fr.mgargadennec.es.examples.generator;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.Random;
+import java.util.UUID;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.joda.time.DateTime;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import fr.mgargadennec.es.examples.id.IdGenerator;
+
+/**
+ * Ecriture d'un document aléatoire
+ * Le document est écrit directement dans un buffer réutilisé (pas de HashMap intermédiaire, pas de String pour
+ * le titre). Une instance par thread : cette classe n'est pas thread-safe.
+ *
+ * @author mgargadennec
+ *
+ */
+public class DocumentWriter {
+
+	private static final int MIN_TITLE_LENGTH = 70;
+
+	private final Vocabulary vocabulary;
+	private final DocumentShape shape;
+	private final XContentType contentType;
+	private final Random random;
+	private final IdGenerator ids;
+
+	private final BytesStreamOutput buffer = new BytesStreamOutput(512);
+	private final char[] title;
+	private final Date createdAt = new Date();
+	private final long createdFrom;
+	private final long createdRange;
+	private String id;
+
+	public DocumentWriter(Vocabulary vocabulary, DocumentShape shape, XContentType contentType, long seed) {
+		this(vocabulary, shape, contentType, seed, DocumentGenerator.DEFAULT_REFERENCE_TIME);
+	}
+
+	/**
+	 * @param referenceTime fin de la période des dates createdAt (3 ans) : le corpus ne dépend pas de la date de
+	 * génération
+	 */
+	public DocumentWriter(Vocabulary vocabulary, DocumentShape shape, XContentType contentType, long seed, long referenceTime) {
+		this(vocabulary, shape, contentType, seed, referenceTime, null);
+	}
+
+	/**
+	 * @param ids générateur des identifiants, aussi utilisés comme _id (null : UUID tiré du Random du writer, reproductible
+	 *            avec la graine, et _id généré par Elasticsearch)
+	 */
+	public DocumentWriter(Vocabulary vocabulary, DocumentShape shape, XContentType contentType, long seed, long referenceTime,
+			IdGenerator ids) {
+		this.vocabulary = vocabulary;
+		this.ids = ids;
+		this.shape = shape;
+		this.contentType = contentType;
+		this.random = new Random(seed);
+		//Pire cas : 69 caractères, puis le mot le plus long et son espace
+		this.title = new char[MIN_TITLE_LENGTH + vocabulary.getMaxWordLength()];
+
+		DateTime now = new DateTime(referenceTime);
+		this.createdFrom = now.minusYears(3).getMillis();
+		this.createdRange = now.getMillis() - createdFrom;
+	}
+
+	/**
+	 * Ecrit le document suivant
+	 * @return une vue sur le buffer interne, valable jusqu'au prochain appel
+	 */
+	public BytesReference next() throws IOException {
+		buffer.reset();
+		XContentBuilder builder = XContentFactory.contentBuilder(contentType, buffer);
+		int titleLength = nextTitle();
+
+		builder.startObject();
+		id = null;
+		if (shape != DocumentShape.TITLE_ONLY) {
+			if (ids != null) {
+				id = ids.next();
+				builder.field("id", id);
+			} else {
+				builder.field("id", nextId());
+			}
+		}
+		builder.field("titre", title, 0, titleLength);
+		if (shape != DocumentShape.TITLE_ONLY) {
+			builder.field("sousTitre", title, 0, titleLength);
+			builder.field("year", 1950 + random.nextInt(2015 - 1950));
+			if (shape.hasCategory()) {
+				builder.field("category", nextBusinessName());
+			}
+			createdAt.setTime(createdFrom + (long) (random.nextDouble() * createdRange));
+			builder.field("createdAt", createdAt);
+		}
+		builder.endObject();
+		builder.close();
+
+		return buffer.bytes();
+	}
+
+	/**
+	 * Identifiant du dernier document écrit, à utiliser comme _id ; null si le writer n'a pas de générateur
+	 * d'identifiants (le _id est alors généré par Elasticsearch) ou si la forme du document n'a pas de champ id
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * Suite de mots aléatoires séparés par des espaces, d'au moins 70 caractères
+	 */
+	private int nextTitle() {
+		String[] words = vocabulary.getWords();
+		int length = 0;
+		do {
+			String word = words[random.nextInt(words.length)];
+			word.getChars(0, word.length(), title, length);
+			length += word.length();
+			title[length++] = ' ';
+		} while (length < MIN_TITLE_LENGTH);
+		return length;
+	}
+
+	/**
+	 * UUID v4 tiré du Random du thread (UUID.randomUUID() passe par un SecureRandom partagé)
+	 */
+	private String nextId() {
+		long msb = (random.nextLong() & 0xffffffffffff0fffL) | 0x0000000000004000L;
+		long lsb = (random.nextLong() & 0x3fffffffffffffffL) | 0x8000000000000000L;
+		return new UUID(msb, lsb).toString();
+	}
+
+	private String nextBusinessName() {
+		String[] cities = vocabulary.getCities();
+		String[] businessTypes = vocabulary.getBusinessTypes();
+		return cities[random.nextInt(cities.length)] + " " + businessTypes[random.nextInt(businessTypes.length)];
+	}
+}
@@ -0,0 +1,34 @@
+package fr.mgargadennec.es.examples.generator;
+
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.bytes.BytesReference;
+
+import fr.mgargadennec.es.examples.ingest.Ingester;
+
+/**
+ * Envoie les documents générés dans le pipeline d'ingestion
+ * Si le générateur a reçu un IdGenerator, l'id du document est passé explicitement comme _id (prepareIndex(index, type,
+ * id)) : _id et champ id sont identiques. Sinon, le _id est généré par Elasticsearch, qui indexe alors sans rechercher
+ * de version existante (chemin le plus rapide en 1.x).
+ *
+ * @author mgargadennec
+ *
+ */
+public class IndexingSink implements DocumentSink {
+
+	private final Ingester ingester;
+	private final String indexName;
+	private final String type;
+
+	public IndexingSink(Ingester ingester, String indexName, String type) {
+		this.ingester = ingester;
+		this.indexName = indexName;
+		this.type = type;
+	}
+
+	@Override
+	public void accept(String id, BytesReference source) {
+		//Une seule copie, à la taille exacte : la requête reste en attente dans le bulk alors que le buffer est réutilisé
+		ingester.add(new IndexRequest(indexName, type, id).source(source.toBytes()));
+	}
+}
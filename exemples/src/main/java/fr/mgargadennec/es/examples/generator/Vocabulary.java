@@ -0,0 +1,63 @@
+package fr.mgargadennec.es.examples.generator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.fluttercode.datafactory.impl.DefaultAddressDataValues;
+import org.fluttercode.datafactory.impl.DefaultContentDataValues;
+
+/**
+ * Vocabulaire du générateur
+ * Reprend les dictionnaires de DataFactory (mots, villes, types d'entreprise), chargés une seule fois.
+ *
+ * Remarque : DataFactory utilise un Random statique, partagé par toutes ses instances. On ne peut donc pas
+ * avoir un DataFactory "seedé" par thread : on réutilise ses données, mais chaque thread tire ses valeurs
+ * avec son propre Random.
+ *
+ * @author mgargadennec
+ *
+ */
+public final class Vocabulary {
+
+	public static final Vocabulary DEFAULT = new Vocabulary(2, 10);
+
+	private final String[] words;
+	private final String[] cities;
+	private final String[] businessTypes;
+	private final int maxWordLength;
+
+	public Vocabulary(int minWordLength, int maxWordLength) {
+		DefaultContentDataValues content = new DefaultContentDataValues();
+		List<String> filtered = new ArrayList<String>();
+		int longest = 0;
+		for (String word : content.getWords()) {
+			if (word.length() >= minWordLength && word.length() <= maxWordLength) {
+				filtered.add(word);
+				longest = Math.max(longest, word.length());
+			}
+		}
+		this.maxWordLength = longest;
+		this.words = filtered.toArray(new String[filtered.size()]);
+		this.cities = new DefaultAddressDataValues().getCities();
+		this.businessTypes = content.getBusinessTypes();
+	}
+
+	public String[] getWords() {
+		return words;
+	}
+
+	public String[] getCities() {
+		return cities;
+	}
+
+	public String[] getBusinessTypes() {
+		return businessTypes;
+	}
+
+	/**
+	 * Longueur du plus long mot retenu
+	 */
+	public int getMaxWordLength() {
+		return maxWordLength;
+	}
+}
@@ -0,0 +1,107 @@
+package fr.mgargadennec.es.examples.id;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Identifiants ordonnés dans le temps ("flake")
+ * 96 bits, encodés en 16 caractères base64 dont l'alphabet respecte l'ordre ASCII (l'ordre lexicographique des
+ * identifiants est donc celui de leur génération) :
+ *  - 48 bits : horodatage en millisecondes
+ *  - 16 bits : identifiant du noeud d'ingestion (à fixer si plusieurs processus alimentent le même index)
+ *  - 16 bits : numéro du thread, attribué à sa première utilisation
+ *  - 16 bits : séquence dans la milliseconde
+ *
+ * Chaque thread a son propre état (ThreadLocal) : aucun verrou, aucune variable partagée sur le chemin courant.
+ * Si la séquence déborde, ou si l'horloge recule, le thread "emprunte" les millisecondes suivantes : ses identifiants
+ * restent strictement croissants, donc uniques.
+ *
+ * Des identifiants croissants sont écrits au même endroit du dictionnaire de termes de _uid : les blocs récents
+ * restent en cache et la recherche de version de chaque document indexé ne parcourt que les segments récents.
+ *
+ * Limite : le numéro de thread est pris modulo 65536 ; deux threads vivants ne partagent un numéro qu'après 65536
+ * créations de threads utilisant le même générateur.
+ *
+ * @author mgargadennec
+ *
+ */
+public class FlakeIdGenerator implements IdGenerator {
+
+	private static final char[] ALPHABET = "-0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ_abcdefghijklmnopqrstuvwxyz".toCharArray();
+
+	private final int nodeId;
+	private final AtomicInteger threadSlots = new AtomicInteger();
+	private final ThreadLocal<State> state = new ThreadLocal<State>() {
+		@Override
+		protected State initialValue() {
+			return new State(threadSlots.getAndIncrement() & 0xFFFF);
+		}
+	};
+
+	public FlakeIdGenerator() {
+		this(0);
+	}
+
+	/**
+	 * @param nodeId identifiant du processus d'ingestion, de 0 à 65535
+	 */
+	public FlakeIdGenerator(int nodeId) {
+		if (nodeId < 0 || nodeId > 0xFFFF) {
+			throw new IllegalArgumentException("nodeId must be between 0 and 65535 but was [" + nodeId + "]");
+		}
+		this.nodeId = nodeId;
+	}
+
+	@Override
+	public String next() {
+		State current = state.get();
+		long now = System.currentTimeMillis();
+		if (now > current.lastMillis) {
+			current.lastMillis = now;
+			current.sequence = 0;
+		} else if (++current.sequence > 0xFFFF) {
+			current.lastMillis++;
+			current.sequence = 0;
+		}
+
+		byte[] bytes = current.bytes;
+		long millis = current.lastMillis;
+		for (int i = 5; i >= 0; i--) {
+			bytes[i] = (byte) millis;
+			millis >>>= 8;
+		}
+		bytes[6] = (byte) (nodeId >>> 8);
+		bytes[7] = (byte) nodeId;
+		bytes[8] = (byte) (current.slot >>> 8);
+		bytes[9] = (byte) current.slot;
+		bytes[10] = (byte) (current.sequence >>> 8);
+		bytes[11] = (byte) current.sequence;
+		return encode(bytes, current.chars);
+	}
+
+	/**
+	 * 12 octets -> 16 caractères, 3 octets (24 bits) par groupe de 4 caractères
+	 */
+	private static String encode(byte[] bytes, char[] chars) {
+		for (int group = 0; group < 4; group++) {
+			int bits = (bytes[group * 3] & 0xFF) << 16 | (bytes[group * 3 + 1] & 0xFF) << 8 | (bytes[group * 3 + 2] & 0xFF);
+			chars[group * 4] = ALPHABET[bits >>> 18];
+			chars[group * 4 + 1] = ALPHABET[(bits >>> 12) & 0x3F];
+			chars[group * 4 + 2] = ALPHABET[(bits >>> 6) & 0x3F];
+			chars[group * 4 + 3] = ALPHABET[bits & 0x3F];
+		}
+		return new String(chars);
+	}
+
+	private static class State {
+
+		private final int slot;
+		private final byte[] bytes = new byte[12];
+		private final char[] chars = new char[16];
+		private long lastMillis;
+		private int sequence;
+
+		State(int slot) {
+			this.slot = slot;
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package fr.mgargadennec.es.examples.id;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.Histogram;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.node.NodeBuilder;
+
+import fr.mgargadennec.es.examples.generator.DocumentGenerator;
+import fr.mgargadennec.es.examples.generator.DocumentShape;
+import fr.mgargadennec.es.examples.generator.DocumentSink;
+import fr.mgargadennec.es.examples.generator.IndexingSink;
+import fr.mgargadennec.es.examples.index.IndexBootstrap;
+import fr.mgargadennec.es.examples.index.IndexResources;
+import fr.mgargadennec.es.examples.ingest.BulkIngester;
+import fr.mgargadennec.es.examples.util.CommandLineOptions;
+
+/**
+ * Identifiants aléatoires ou ordonnés
+ * Compare, pour chaque stratégie d'identifiants :
+ *  - la génération seule : identifiants par seconde, avec tous les threads du générateur de documents
+ *  - l'indexation d'un corpus généré : documents par seconde
+ *  - la latence des get et des updates partiels sur des identifiants tirés au hasard parmi ceux indexés
+ *
+ * Stratégies : auto (_id généré par Elasticsearch, référence sans recherche de version), random (UUID.randomUUID(),
+ * _id explicite) et flake (FlakeIdGenerator, _id explicite).
+ *
+ * Options (--option=valeur) :
+ *  --docs     : nombre de documents indexés par stratégie (200000)
+ *  --samples  : nombre de get et d'updates mesurés (2000)
+ *  --generate : nombre d'identifiants générés par thread pour la mesure de génération seule (500000)
+ *
+ * @author mgargadennec
+ *
+ */
+public class IdBenchmark {
+
+	private static final String INDEX = "mon_index";
+	private static final String TYPE = "mon_type";
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Settings options = CommandLineOptions.parse(args);
+		int docs = options.getAsInt("docs", 200000);
+		int samples = options.getAsInt("samples", 2000);
+		int generate = options.getAsInt("generate", 500000);
+		int threads = Runtime.getRuntime().availableProcessors();
+
+		System.out.println("Generation only (" + threads + " threads)");
+		System.out.println(String.format("  random : %12.0f ids/s", generationRate(new RandomIdGenerator(), threads, generate)));
+		System.out.println(String.format("  flake  : %12.0f ids/s", generationRate(new FlakeIdGenerator(), threads, generate)));
+
+		Node node = NodeBuilder.nodeBuilder().clusterName("id-benchmark").local(true).node();
+		Client client = node.client();
+		client.admin().cluster().prepareHealth().setWaitForYellowStatus().get();
+
+		System.out.println(String.format("%-8s %10s %10s %10s %12s %12s",
+				"ids", "docs/s", "get p50", "get p99", "update p50", "update p99"));
+		run(client, "auto", null, docs, samples);
+		run(client, "random", new RandomIdGenerator(), docs, samples);
+		run(client, "flake", new FlakeIdGenerator(), docs, samples);
+
+		node.close();
+
+		System.exit(0);
+	}
+
+	private static double generationRate(final IdGenerator ids, int threads, final int perThread) throws InterruptedException {
+		final CountDownLatch done = new CountDownLatch(threads);
+		final AtomicLong checksum = new AtomicLong();
+		long start = System.nanoTime();
+		for (int i = 0; i < threads; i++) {
+			EsExecutors.daemonThreadFactory("id-generation").newThread(new Runnable() {
+				@Override
+				public void run() {
+					long length = 0;
+					for (int j = 0; j < perThread; j++) {
+						length += ids.next().length();
+					}
+					checksum.addAndGet(length);
+					done.countDown();
+				}
+			}).start();
+		}
+		done.await();
+		return (long) threads * perThread * 1000000000d / (System.nanoTime() - start);
+	}
+
+	/**
+	 * @param ids null : _id généré par Elasticsearch
+	 */
+	private static void run(Client client, String label, IdGenerator ids, int docs, int samples) throws IOException, InterruptedException {
+		client.admin().indices().prepareDelete("_all").get();
+		IndexBootstrap bootstrap = IndexBootstrap.builder(client, INDEX)
+				.settings(IndexResources.SETTINGS)
+				.mapping(TYPE, IndexResources.MAPPING)
+				.build();
+		bootstrap.createForLoad();
+
+		BulkIngester ingester = BulkIngester.builder(client).build();
+		//Sans générateur, les documents n'ont pas d'id explicite : _id généré par Elasticsearch
+		final DocumentSink indexing = new IndexingSink(ingester, INDEX, TYPE);
+
+		//Un identifiant sur step est conservé pour les get et updates
+		final int step = Math.max(1, docs / samples);
+		final AtomicLong counter = new AtomicLong();
+		final ConcurrentLinkedQueue<String> sampled = new ConcurrentLinkedQueue<String>();
+		DocumentSink sampling = new DocumentSink() {
+			@Override
+			public void accept(String id, BytesReference source) {
+				indexing.accept(id, source);
+				if (id != null && counter.incrementAndGet() % step == 0) {
+					sampled.add(id);
+				}
+			}
+		};
+
+		long start = System.nanoTime();
+		new DocumentGenerator(DocumentShape.FULL, ids).generate(docs, sampling);
+		ingester.awaitClose(5, TimeUnit.MINUTES);
+		double docsPerSecond = docs * 1000000000d / (System.nanoTime() - start);
+		bootstrap.finishLoad();
+
+		if (ids == null) {
+			System.out.println(String.format("%-8s %10.0f %10s %10s %12s %12s", label, docsPerSecond, "-", "-", "-", "-"));
+			return;
+		}
+
+		List<String> targets = new ArrayList<String>(sampled);
+		Collections.shuffle(targets, new Random(DocumentGenerator.DEFAULT_SEED));
+		Histogram gets = new Histogram(TimeUnit.MINUTES.toMicros(1), 3);
+		Histogram updates = new Histogram(TimeUnit.MINUTES.toMicros(1), 3);
+		for (String id : targets) {
+			long sent = System.nanoTime();
+			client.prepareGet(INDEX, TYPE, id).get();
+			gets.recordValue((System.nanoTime() - sent) / 1000);
+
+			sent = System.nanoTime();
+			client.prepareUpdate(INDEX, TYPE, id).setDoc("year", 2016).get();
+			updates.recordValue((System.nanoTime() - sent) / 1000);
+		}
+		System.out.println(String.format("%-8s %10.0f %8.2fms %8.2fms %10.2fms %10.2fms", label, docsPerSecond,
+				gets.getValueAtPercentile(50) / 1000d, gets.getValueAtPercentile(99) / 1000d,
+				updates.getValueAtPercentile(50) / 1000d, updates.getValueAtPercentile(99) / 1000d));
+	}
+}
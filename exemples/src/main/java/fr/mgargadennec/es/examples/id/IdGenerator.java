@@ -0,0 +1,14 @@
+package fr.mgargadennec.es.examples.id;
+
+/**
+ * Génération des identifiants de documents (_id et champ id)
+ * Les implémentations sont appelées simultanément par tous les threads d'ingestion : elles doivent être thread-safe,
+ * idéalement sans verrou partagé.
+ *
+ * @author mgargadennec
+ *
+ */
+public interface IdGenerator {
+
+	String next();
+}
@@ -0,0 +1,19 @@
+package fr.mgargadennec.es.examples.id;
+
+import java.util.UUID;
+
+/**
+ * UUID v4 aléatoire : le comportement historique des exemples
+ * UUID.randomUUID() tire ses octets d'un SecureRandom partagé par tous les threads, et des identifiants aléatoires
+ * dispersent les écritures dans tout le dictionnaire de termes de _uid. Conservé comme référence pour IdBenchmark.
+ *
+ * @author mgargadennec
+ *
+ */
+public class RandomIdGenerator implements IdGenerator {
+
+	@Override
+	public String next() {
+		return UUID.randomUUID().toString();
+	}
+}
@@ -0,0 +1,129 @@
+package fr.mgargadennec.es.examples.index;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.elasticsearch.action.admin.cluster.node.stats.NodeStats;
+import org.elasticsearch.action.admin.indices.stats.CommonStats;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.hppc.ObjectLongOpenHashMap;
+import org.elasticsearch.common.hppc.cursors.ObjectLongCursor;
+import org.elasticsearch.common.unit.ByteSizeValue;
+
+import fr.mgargadennec.es.examples.search.QueryShape;
+
+/**
+ * Mémoire fielddata et coût des agrégations d'un index
+ * Rejoue l'agrégation de l'exemple 7 (matchAll) puis relève :
+ *  - IndicesStats : mémoire fielddata totale et par champ, temps passé dans les warmers (dont la construction
+ *    anticipée des global ordinals au refresh)
+ *  - NodesStats : heap utilisé par les noeuds
+ *  - le temps de la première agrégation après le chargement, et le temps médian des suivantes
+ *
+ * Permet de comparer les profils de mapping (MappingProfile) sur un même corpus.
+ *
+ * @author mgargadennec
+ *
+ */
+public class FielddataReport {
+
+	private final String label;
+	private final long fielddataBytes;
+	private final Map<String, Long> fieldBytes = new TreeMap<String, Long>();
+	private final long warmerMillis;
+	private final long heapUsedBytes;
+	private final long firstAggregationMillis;
+	private final long medianAggregationMillis;
+
+	private FielddataReport(String label, CommonStats stats, long heapUsedBytes, long firstAggregationMillis,
+			long medianAggregationMillis) {
+		this.label = label;
+		this.fielddataBytes = stats.getFieldData().getMemorySizeInBytes();
+		ObjectLongOpenHashMap<String> fields = stats.getFieldData().getFields();
+		if (fields != null) {
+			for (ObjectLongCursor<String> field : fields) {
+				fieldBytes.put(field.key, field.value);
+			}
+		}
+		this.warmerMillis = stats.getWarmer().totalTimeInMillis();
+		this.heapUsedBytes = heapUsedBytes;
+		this.firstAggregationMillis = firstAggregationMillis;
+		this.medianAggregationMillis = medianAggregationMillis;
+	}
+
+	/**
+	 * Exécute runs fois l'agrégation de l'exemple 7 puis relève les statistiques de l'index et des noeuds
+	 */
+	public static FielddataReport measure(Client client, String indexName, String label, int runs) {
+		long[] took = new long[runs];
+		for (int i = 0; i < runs; i++) {
+			took[i] = QueryShape.AGGREGATIONS.prepare(client, indexName, null, 0).setSize(0).get().getTookInMillis();
+		}
+		long first = took[0];
+		Arrays.sort(took);
+
+		CommonStats stats = client.admin().indices().prepareStats(indexName)
+				.clear()
+				.setFieldData(true)
+				.setFieldDataFields("*")
+				.setWarmer(true)
+				.get()
+				.getTotal();
+
+		long heapUsed = 0;
+		for (NodeStats node : client.admin().cluster().prepareNodesStats().clear().setJvm(true).get().getNodes()) {
+			heapUsed += node.getJvm().getMem().getHeapUsed().bytes();
+		}
+		return new FielddataReport(label, stats, heapUsed, first, took[runs / 2]);
+	}
+
+	public String getLabel() {
+		return label;
+	}
+
+	public long getFielddataBytes() {
+		return fielddataBytes;
+	}
+
+	public Map<String, Long> getFieldBytes() {
+		return fieldBytes;
+	}
+
+	public long getWarmerMillis() {
+		return warmerMillis;
+	}
+
+	public long getHeapUsedBytes() {
+		return heapUsedBytes;
+	}
+
+	public long getFirstAggregationMillis() {
+		return firstAggregationMillis;
+	}
+
+	public long getMedianAggregationMillis() {
+		return medianAggregationMillis;
+	}
+
+	public static void print(PrintStream out, List<FielddataReport> reports) {
+		out.println(String.format("%-16s %12s %12s %10s %12s %10s  %s",
+				"profile", "fielddata", "heap used", "warmer ms", "first agg ms", "p50 agg ms", "fielddata by field"));
+		for (FielddataReport report : reports) {
+			Map<String, String> fields = new TreeMap<String, String>();
+			for (Map.Entry<String, Long> field : report.fieldBytes.entrySet()) {
+				fields.put(field.getKey(), new ByteSizeValue(field.getValue()).toString());
+			}
+			out.println(String.format("%-16s %12s %12s %10d %12d %10d  %s",
+					report.label,
+					new ByteSizeValue(report.fielddataBytes),
+					new ByteSizeValue(report.heapUsedBytes),
+					report.warmerMillis,
+					report.firstAggregationMillis,
+					report.medianAggregationMillis,
+					fields));
+		}
+	}
+}
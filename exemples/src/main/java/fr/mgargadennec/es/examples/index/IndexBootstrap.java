@@ -0,0 +1,180 @@
+package fr.mgargadennec.es.examples.index;
+
+import java.io.IOException;
+
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthResponse;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthStatus;
+import org.elasticsearch.action.admin.indices.create.CreateIndexRequestBuilder;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+
+/**
+ * Initialisation d'un index
+ * Crée l'index avec des settings optimisés pour le chargement en masse :
+ *  - pas de refresh automatique (refresh_interval = -1)
+ *  - pas de réplique (les répliques sont recopiées une seule fois, à la fin)
+ *  - translog flushé moins souvent
+ *
+ * A la fin du chargement, les settings de chargement reprennent la valeur qu'ils auraient eue sans eux (LoadSettings :
+ * settings.json, configuration du noeud ou valeur par défaut d'Elasticsearch, sauf setting de production explicite),
+ * un refresh explicite est lancé et on attend le statut de santé voulu : plus besoin d'un Thread.sleep() en espérant
+ * que le refresh ait eu lieu. Si ce statut n'est pas atteint dans le délai, finishLoad() échoue.
+ *
+ * @author mgargadennec
+ *
+ */
+public class IndexBootstrap {
+
+	private final Client client;
+	private final String indexName;
+	private final String type;
+	private final String mappingResource;
+	private final String settingsResource;
+	private final Settings loadSettings;
+	private final Settings productionSettings;
+	private final ClusterHealthStatus targetStatus;
+	private final TimeValue timeout;
+	private volatile Settings restoreSettings;
+
+	private IndexBootstrap(Builder builder) {
+		this.client = builder.client;
+		this.indexName = builder.indexName;
+		this.type = builder.type;
+		this.mappingResource = builder.mappingResource;
+		this.settingsResource = builder.settingsResource;
+		this.loadSettings = builder.loadSettings.build();
+		this.productionSettings = builder.productionSettings.build();
+		this.targetStatus = builder.targetStatus;
+		this.timeout = builder.timeout;
+	}
+
+	public static Builder builder(Client client, String indexName) {
+		return new Builder(client, indexName);
+	}
+
+	public String getIndexName() {
+		return indexName;
+	}
+
+	/**
+	 * Crée l'index, avec ses settings/mapping et les settings de chargement
+	 */
+	public void createForLoad() throws IOException {
+		ImmutableSettings.Builder settings = ImmutableSettings.settingsBuilder();
+		if (settingsResource != null) {
+			settings.loadFromSource(IndexResources.load(settingsResource));
+		}
+		//Valeurs à restaurer, relevées avant d'appliquer les settings de chargement
+		restoreSettings = LoadSettings.restore(client, loadSettings, settings.build(), productionSettings);
+		settings.put(loadSettings);
+
+		CreateIndexRequestBuilder create = client.admin().indices().prepareCreate(indexName).setSettings(settings);
+		if (mappingResource != null) {
+			create.addMapping(type, IndexResources.load(mappingResource));
+		}
+		create.execute().actionGet();
+	}
+
+	/**
+	 * Restaure les settings de production, rend les documents visibles et attend la santé voulue
+	 * @throws IllegalStateException si l'index n'a pas été créé par createForLoad(), ou si la santé voulue n'est pas
+	 *             atteinte dans le délai
+	 */
+	public ClusterHealthResponse finishLoad() {
+		if (restoreSettings == null) {
+			throw new IllegalStateException("Index [" + indexName + "] was not created by createForLoad()");
+		}
+		if (!restoreSettings.getAsMap().isEmpty()) {
+			client.admin().indices().prepareUpdateSettings(indexName).setSettings(restoreSettings).execute().actionGet();
+		}
+		client.admin().indices().prepareRefresh(indexName).execute().actionGet();
+		ClusterHealthResponse health = client.admin().cluster().prepareHealth(indexName)
+				.setWaitForStatus(targetStatus)
+				.setTimeout(timeout)
+				.execute().actionGet();
+		if (health.isTimedOut()) {
+			throw new IllegalStateException("Index [" + indexName + "] is " + health.getStatus() + ", not " + targetStatus
+					+ " after " + timeout);
+		}
+		return health;
+	}
+
+	public static class Builder {
+
+		private final Client client;
+		private final String indexName;
+		private String type;
+		private String mappingResource;
+		private String settingsResource;
+		private ImmutableSettings.Builder loadSettings = LoadSettings.defaults();
+		private ImmutableSettings.Builder productionSettings = ImmutableSettings.settingsBuilder();
+		private ClusterHealthStatus targetStatus = ClusterHealthStatus.YELLOW;
+		private TimeValue timeout = TimeValue.timeValueSeconds(30);
+
+		private Builder(Client client, String indexName) {
+			this.client = client;
+			this.indexName = indexName;
+		}
+
+		/**
+		 * Mapping du type, chargé depuis le classpath
+		 */
+		public Builder mapping(String type, String mappingResource) {
+			this.type = type;
+			this.mappingResource = mappingResource;
+			return this;
+		}
+
+		/**
+		 * Mapping du profil choisi
+		 */
+		public Builder mapping(String type, MappingProfile profile) {
+			return mapping(type, profile.getResource());
+		}
+
+		/**
+		 * Settings de l'index (analyzers, ...), chargés depuis le classpath
+		 */
+		public Builder settings(String settingsResource) {
+			this.settingsResource = settingsResource;
+			return this;
+		}
+
+		/**
+		 * Ajoute/remplace un setting appliqué uniquement pendant le chargement
+		 */
+		public Builder loadSetting(String key, Object value) {
+			this.loadSettings.put(key, String.valueOf(value));
+			return this;
+		}
+
+		/**
+		 * Ajoute/remplace un setting appliqué à la fin du chargement (par défaut, chaque setting de chargement
+		 * reprend la valeur qu'il aurait eue sans lui)
+		 */
+		public Builder productionSetting(String key, Object value) {
+			this.productionSettings.put(key, String.valueOf(value));
+			return this;
+		}
+
+		public Builder replicas(int replicas) {
+			return productionSetting("index.number_of_replicas", replicas);
+		}
+
+		public Builder targetStatus(ClusterHealthStatus targetStatus) {
+			this.targetStatus = targetStatus;
+			return this;
+		}
+
+		public Builder timeout(TimeValue timeout) {
+			this.timeout = timeout;
+			return this;
+		}
+
+		public IndexBootstrap build() {
+			return new IndexBootstrap(this);
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package fr.mgargadennec.es.examples.index;
+
+import java.io.IOException;
+import java.net.URL;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+
+/**
+ * Chargement des fichiers de paramétrage (mapping.json, mapping-docvalues.json, mapping-suggest.json, settings.json)
+ * depuis le classpath
+ *
+ * @author mgargadennec
+ *
+ */
+public final class IndexResources {
+
+	public static final String MAPPING = "mapping.json";
+	public static final String MAPPING_DOC_VALUES = "mapping-docvalues.json";
+	/**
+	 * mapping.json + sous-champ titre.suggest (completion) pour l'autocomplétion
+	 */
+	public static final String MAPPING_SUGGEST = "mapping-suggest.json";
+	public static final String SETTINGS = "settings.json";
+
+	private IndexResources() {
+	}
+
+	public static String load(String resourceName) throws IOException {
+		URL url = Resources.getResource(resourceName);
+		return Resources.toString(url, Charsets.UTF_8);
+	}
+}
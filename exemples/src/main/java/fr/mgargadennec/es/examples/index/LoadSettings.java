@@ -0,0 +1,99 @@
+package fr.mgargadennec.es.examples.index;
+
+import java.util.Map;
+
+import org.elasticsearch.action.admin.cluster.node.info.NodeInfo;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.collect.ImmutableMap;
+import org.elasticsearch.common.collect.ImmutableSet;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+
+/**
+ * Settings de chargement en masse, et valeurs à restaurer à la fin du chargement
+ * Chaque setting de chargement reprend ensuite la valeur que l'index aurait eue sans lui, dans l'ordre :
+ *  - le setting de production explicite (productionSetting, replicas)
+ *  - les settings de l'index (settings.json, settings explicites)
+ *  - la configuration du noeud (index.* dans elasticsearch.yml)
+ *  - la valeur par défaut d'Elasticsearch
+ *
+ * Les settings fixés à la création (index.number_of_shards) ne sont pas restaurés.
+ *
+ * @author mgargadennec
+ *
+ */
+public final class LoadSettings {
+
+	/**
+	 * Valeurs par défaut d'Elasticsearch 1.5 des settings de chargement
+	 */
+	private static final Map<String, String> ELASTICSEARCH_DEFAULTS = ImmutableMap.of(
+			"index.refresh_interval", "1s",
+			"index.number_of_replicas", "1",
+			"index.translog.flush_threshold_size", "512mb",
+			"index.translog.flush_threshold_ops", String.valueOf(Integer.MAX_VALUE));
+
+	private static final ImmutableSet<String> CREATION_ONLY = ImmutableSet.of("index.number_of_shards");
+
+	private LoadSettings() {
+	}
+
+	/**
+	 * Settings de chargement par défaut : pas de refresh, pas de réplique, translog flushé moins souvent
+	 */
+	public static ImmutableSettings.Builder defaults() {
+		return ImmutableSettings.settingsBuilder()
+				.put("index.refresh_interval", "-1")
+				.put("index.number_of_replicas", 0)
+				.put("index.translog.flush_threshold_size", "1gb")
+				.put("index.translog.flush_threshold_ops", Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Settings à appliquer à la fin du chargement
+	 * @param indexSettings settings de l'index hors chargement
+	 * @throws IllegalStateException si la valeur d'un setting de chargement est introuvable : elle doit alors être
+	 *             donnée en setting de production
+	 */
+	public static Settings restore(Client client, Settings loadSettings, Settings indexSettings, Settings productionSettings) {
+		Settings nodeSettings = null;
+		ImmutableSettings.Builder restore = ImmutableSettings.settingsBuilder().put(productionSettings);
+		for (String key : loadSettings.getAsMap().keySet()) {
+			if (CREATION_ONLY.contains(key) || productionSettings.get(key) != null) {
+				continue;
+			}
+			String value = get(indexSettings, key);
+			if (value == null) {
+				if (nodeSettings == null) {
+					nodeSettings = nodeSettings(client);
+				}
+				value = get(nodeSettings, key);
+			}
+			if (value == null) {
+				value = ELASTICSEARCH_DEFAULTS.get(key);
+			}
+			if (value == null) {
+				throw new IllegalStateException("No value to restore for load setting [" + key
+						+ "] : set it as a production setting");
+			}
+			restore.put(key, value);
+		}
+		return restore.build();
+	}
+
+	/**
+	 * Valeur du setting, avec ou sans le préfixe index. (Elasticsearch l'ajoute à la création de l'index)
+	 */
+	private static String get(Settings settings, String key) {
+		String value = settings.get(key);
+		if (value == null && key.startsWith("index.")) {
+			value = settings.get(key.substring("index.".length()));
+		}
+		return value;
+	}
+
+	private static Settings nodeSettings(Client client) {
+		NodeInfo[] nodes = client.admin().cluster().prepareNodesInfo("_local").clear().setSettings(true).get().getNodes();
+		return nodes.length == 0 ? ImmutableSettings.EMPTY : nodes[0].getSettings();
+	}
+}
@@ -0,0 +1,32 @@
+package fr.mgargadennec.es.examples.index;
+
+/**
+ * Profils de mapping, à choisir à la création de l'index
+ *
+ * @author mgargadennec
+ *
+ */
+public enum MappingProfile {
+
+	/**
+	 * mapping.json : fielddata chargé dans le heap à la première agrégation, category mappé dynamiquement (analysé :
+	 * les buckets sont des tokens, pas des catégories)
+	 */
+	HEAP_FIELDDATA(IndexResources.MAPPING),
+
+	/**
+	 * mapping-docvalues.json : year, createdAt et category en doc_values (sur disque, hors heap), category non analysé
+	 * avec ses global ordinals construits au refresh plutôt qu'à la première agrégation
+	 */
+	DOC_VALUES(IndexResources.MAPPING_DOC_VALUES);
+
+	private final String resource;
+
+	private MappingProfile(String resource) {
+		this.resource = resource;
+	}
+
+	public String getResource() {
+		return resource;
+	}
+}
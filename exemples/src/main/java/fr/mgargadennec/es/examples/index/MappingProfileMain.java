@@ -0,0 +1,66 @@
+package fr.mgargadennec.es.examples.index;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.node.NodeBuilder;
+
+import fr.mgargadennec.es.examples.generator.DocumentGenerator;
+import fr.mgargadennec.es.examples.generator.DocumentShape;
+import fr.mgargadennec.es.examples.generator.IndexingSink;
+import fr.mgargadennec.es.examples.ingest.BulkIngester;
+import fr.mgargadennec.es.examples.util.CommandLineOptions;
+
+/**
+ * Comparaison des profils de mapping
+ * Charge le même corpus (exemple 7, avec catégories) avec chaque profil, puis affiche un FielddataReport par profil.
+ *
+ * Options (--option=valeur) :
+ *  --docs : nombre de documents générés (50000)
+ *  --runs : nombre d'agrégations exécutées par profil (20)
+ *
+ * @author mgargadennec
+ *
+ */
+public class MappingProfileMain {
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Settings options = CommandLineOptions.parse(args);
+		int docs = options.getAsInt("docs", 50000);
+		int runs = options.getAsInt("runs", 20);
+
+		Node node = NodeBuilder.nodeBuilder().clusterName("mapping-profiles").local(true).node();
+		Client client = node.client();
+		client.admin().cluster().prepareHealth().setWaitForYellowStatus().get();
+
+		List<FielddataReport> reports = new ArrayList<FielddataReport>();
+		for (MappingProfile profile : MappingProfile.values()) {
+			String indexName = "mon_index_" + profile.name().toLowerCase();
+			client.admin().indices().prepareDelete("_all").get();
+
+			IndexBootstrap bootstrap = IndexBootstrap.builder(client, indexName)
+					.settings(IndexResources.SETTINGS)
+					.mapping("mon_type", profile)
+					.build();
+			bootstrap.createForLoad();
+
+			BulkIngester ingester = BulkIngester.builder(client).build();
+			new DocumentGenerator(DocumentShape.FULL_WITH_CATEGORY).generate(docs, new IndexingSink(ingester, indexName, "mon_type"));
+			ingester.awaitClose(5, TimeUnit.MINUTES);
+			bootstrap.finishLoad();
+
+			reports.add(FielddataReport.measure(client, indexName, profile.name(), runs));
+		}
+
+		FielddataReport.print(System.out, reports);
+
+		node.close();
+
+		System.exit(0);
+	}
+}
@@ -0,0 +1,79 @@
+package fr.mgargadennec.es.examples.index;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.collect.ImmutableList;
+import org.elasticsearch.common.collect.ImmutableOpenMap;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.warmer.IndexWarmersMetaData;
+
+import fr.mgargadennec.es.examples.search.CachedFilter;
+
+/**
+ * Gestion des warmers d'un index
+ * Un warmer est une recherche exécutée par Elasticsearch sur chaque nouveau segment (refresh, merge) avant qu'il ne
+ * serve des recherches : les bitsets des filtres en cache et le fielddata des agrégations sont alors déjà chargés, et
+ * la première recherche utilisateur après un refresh ne paie plus leur construction.
+ *
+ * Tous les warmers créés ici sont préfixés par "warm-" pour pouvoir être listés et supprimés ensemble.
+ *
+ * @author mgargadennec
+ *
+ */
+public class WarmerManager {
+
+	public static final String PREFIX = "warm-";
+
+	private final Client client;
+	private final String indexName;
+
+	public WarmerManager(Client client, String indexName) {
+		this.client = client;
+		this.indexName = indexName;
+	}
+
+	/**
+	 * Préchauffe le bitset d'un filtre en cache
+	 */
+	public void warmFilter(CachedFilter filter) {
+		put("filter-" + filter.getCacheKey(), client.prepareSearch(indexName)
+				.setSize(0)
+				.setQuery(QueryBuilders.filteredQuery(QueryBuilders.matchAllQuery(), filter.getFilter())));
+	}
+
+	/**
+	 * Noms des warmers enregistrés sur l'index
+	 */
+	public Set<String> names() {
+		Set<String> names = new TreeSet<String>();
+		ImmutableOpenMap<String, ImmutableList<IndexWarmersMetaData.Entry>> warmers = client.admin().indices()
+				.prepareGetWarmers(indexName).get().warmers();
+		ImmutableList<IndexWarmersMetaData.Entry> entries = warmers.get(indexName);
+		if (entries != null) {
+			for (IndexWarmersMetaData.Entry entry : entries) {
+				names.add(entry.name());
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Supprime les warmers créés par ce gestionnaire
+	 */
+	public void clear() {
+		if (!names().isEmpty()) {
+			client.admin().indices().prepareDeleteWarmer().setIndices(indexName).setNames(PREFIX + "*").get();
+		}
+	}
+
+	private void put(String name, SearchRequestBuilder search) {
+		//Les clés de cache contiennent ':', '[' ou des espaces : le nom du warmer n'en garde que l'essentiel
+		String warmerName = PREFIX + name.replaceAll("[^A-Za-z0-9_-]+", "_");
+		//Le warmer est validé en exécutant sa recherche : les shards primaires doivent être démarrés
+		client.admin().cluster().prepareHealth(indexName).setWaitForYellowStatus().get();
+		client.admin().indices().preparePutWarmer(warmerName).setSearchRequest(search).get();
+	}
+}
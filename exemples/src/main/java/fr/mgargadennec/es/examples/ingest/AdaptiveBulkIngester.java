@@ -0,0 +1,440 @@
+package fr.mgargadennec.es.examples.ingest;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.rest.RestStatus;
+
+/**
+ * Pipeline d'ingestion auto-ajusté
+ * Contrairement au BulkIngester (taille de bulk et nombre de bulks en vol fixés à l'avance), la taille des bulks
+ * (en octets) et le nombre de bulks en vol sont ajustés en continu d'après les réponses du cluster, à la manière
+ * du contrôle de congestion TCP (AIMD : augmentation additive, diminution multiplicative) :
+ *  - des documents rejetés (file du pool "bulk" pleine) : la concurrence est divisée par deux
+ *  - un bulk plus long que la latence cible (getTookInMillis) : la taille des bulks est divisée par deux
+ *  - sinon, la taille augmente d'un pas, et la concurrence d'un bulk après autant de réponses saines qu'il y a de
+ *    bulks en vol
+ * Une diminution n'est appliquée qu'une fois par "époque" : les réponses des bulks envoyés avant la dernière
+ * diminution ne la répètent pas. Le débit se stabilise ainsi près du maximum que le cluster peut absorber.
+ *
+ * Seuls les documents rejetés (EsRejectedExecutionException, statut 429) sont renvoyés, après une attente
+ * exponentielle avec une part aléatoire (pour que les renvois ne se synchronisent pas), au plus maxRetries fois.
+ * Les autres échecs (mapping, parsing...) ne sont pas renvoyés : ils échoueraient de nouveau. Ils sont comptés dans
+ * getFailed(), et le message du dernier est exposé par getLastFailure().
+ *
+ * Les documents restent en mémoire jusqu'à ce qu'un bulk soit plein : appeler flush() ou awaitClose() en fin de
+ * chargement.
+ *
+ * @author mgargadennec
+ *
+ */
+public class AdaptiveBulkIngester implements Ingester, Closeable {
+
+	private final Client client;
+	private final long minBulkSize;
+	private final long maxBulkSize;
+	private final long bulkSizeStep;
+	private final int maxConcurrency;
+	private final long targetLatencyMillis;
+	private final int maxRetries;
+	private final TimeValue initialBackoff;
+	private final TimeValue maxBackoff;
+
+	private final Object bufferLock = new Object();
+	private BulkRequest buffer = new BulkRequest();
+
+	//Etat du contrôleur : protégé par le verrou de l'instance
+	private long bulkSize;
+	private int concurrency;
+	private int healthyResponses;
+	private long epoch;
+
+	private final InFlightLimit inFlight;
+	private final ScheduledExecutorService retryScheduler;
+	private final AtomicInteger pendingRetries = new AtomicInteger();
+
+	private final AtomicLong bulks = new AtomicLong();
+	private final AtomicLong indexed = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong tookInMillis = new AtomicLong();
+	private final AtomicLong decreases = new AtomicLong();
+	private volatile String lastFailure;
+
+	private AdaptiveBulkIngester(Builder builder) {
+		this.client = builder.client;
+		this.minBulkSize = builder.minBulkSize.bytes();
+		this.maxBulkSize = builder.maxBulkSize.bytes();
+		this.bulkSizeStep = builder.bulkSizeStep.bytes();
+		this.maxConcurrency = builder.maxConcurrency;
+		this.targetLatencyMillis = builder.targetLatency.millis();
+		this.maxRetries = builder.maxRetries;
+		this.initialBackoff = builder.initialBackoff;
+		this.maxBackoff = builder.maxBackoff;
+		this.bulkSize = builder.initialBulkSize.bytes();
+		this.concurrency = builder.initialConcurrency;
+		this.inFlight = new InFlightLimit(concurrency);
+		this.retryScheduler = Executors.newSingleThreadScheduledExecutor(EsExecutors.daemonThreadFactory("bulk-retry"));
+	}
+
+	public static Builder builder(Client client) {
+		return new Builder(client);
+	}
+
+	/**
+	 * Ajoute une requête d'indexation ; envoie le bulk courant s'il a atteint la taille en cours (bloquant si tous
+	 * les bulks autorisés sont déjà en vol)
+	 */
+	@Override
+	public AdaptiveBulkIngester add(IndexRequest request) {
+		BulkRequest full = null;
+		synchronized (bufferLock) {
+			buffer.add(request);
+			if (buffer.estimatedSizeInBytes() >= getBulkSize().bytes()) {
+				full = buffer;
+				buffer = new BulkRequest();
+			}
+		}
+		if (full != null) {
+			send(full, 0);
+		}
+		return this;
+	}
+
+	/**
+	 * Envoie les documents en attente, sans attendre la réponse
+	 */
+	public void flush() {
+		BulkRequest pending = null;
+		synchronized (bufferLock) {
+			if (buffer.numberOfActions() > 0) {
+				pending = buffer;
+				buffer = new BulkRequest();
+			}
+		}
+		if (pending != null) {
+			send(pending, 0);
+		}
+	}
+
+	private void send(final BulkRequest request, final int attempt) {
+		try {
+			inFlight.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			dropped.addAndGet(request.numberOfActions());
+			return;
+		}
+		final long sentEpoch = currentEpoch();
+		client.bulk(request, new ActionListener<BulkResponse>() {
+			@Override
+			public void onResponse(BulkResponse response) {
+				//Le bulk ne quitte la limite qu'une fois ses renvois programmés : awaitClose ne peut pas les manquer
+				try {
+					handleResponse(request, response, attempt, sentEpoch);
+				} finally {
+					inFlight.release();
+				}
+			}
+
+			@Override
+			public void onFailure(Throwable e) {
+				try {
+					if (ExceptionsHelper.unwrapCause(e) instanceof EsRejectedExecutionException) {
+						//Tout le bulk est refusé par le noeud coordinateur
+						rejected.addAndGet(request.numberOfActions());
+						onRejected(sentEpoch);
+						retry(request.requests(), attempt);
+					} else {
+						failed.addAndGet(request.numberOfActions());
+						lastFailure = "bulk of " + request.numberOfActions() + " documents : " + e.getMessage();
+					}
+				} finally {
+					inFlight.release();
+				}
+			}
+		});
+	}
+
+	private void handleResponse(BulkRequest request, BulkResponse response, int attempt, long sentEpoch) {
+		bulks.incrementAndGet();
+		tookInMillis.addAndGet(response.getTookInMillis());
+
+		List<ActionRequest> toRetry = new ArrayList<ActionRequest>();
+		for (BulkItemResponse item : response.getItems()) {
+			if (!item.isFailed()) {
+				indexed.incrementAndGet();
+			} else if (isRejection(item.getFailure())) {
+				toRetry.add(request.requests().get(item.getItemId()));
+			} else {
+				failed.incrementAndGet();
+				lastFailure = "document [" + item.getIndex() + "/" + item.getType() + "/" + item.getId() + "] : "
+						+ item.getFailureMessage();
+			}
+		}
+
+		if (!toRetry.isEmpty()) {
+			rejected.addAndGet(toRetry.size());
+			onRejected(sentEpoch);
+			retry(toRetry, attempt);
+		} else if (response.getTookInMillis() > targetLatencyMillis) {
+			onSlow(sentEpoch);
+		} else {
+			onHealthy();
+		}
+	}
+
+	private static boolean isRejection(BulkItemResponse.Failure failure) {
+		return failure.getStatus() == RestStatus.TOO_MANY_REQUESTS
+				|| (failure.getMessage() != null && failure.getMessage().contains(EsRejectedExecutionException.class.getSimpleName()));
+	}
+
+	/**
+	 * Renvoie les requêtes rejetées après une attente exponentielle, tirée entre la moitié et la totalité du palier
+	 */
+	private void retry(List<ActionRequest> requests, final int attempt) {
+		if (attempt >= maxRetries) {
+			dropped.addAndGet(requests.size());
+			return;
+		}
+		long ceiling = Math.min(maxBackoff.millis(), initialBackoff.millis() << Math.min(attempt, 30));
+		long delay = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+
+		final BulkRequest retry = new BulkRequest();
+		retry.add(requests);
+		pendingRetries.incrementAndGet();
+		retryScheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					send(retry, attempt + 1);
+				} finally {
+					pendingRetries.decrementAndGet();
+				}
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	private synchronized long currentEpoch() {
+		return epoch;
+	}
+
+	private synchronized void onRejected(long sentEpoch) {
+		if (sentEpoch == epoch) {
+			concurrency = Math.max(1, concurrency / 2);
+			inFlight.setLimit(concurrency);
+			decrease();
+		}
+	}
+
+	private synchronized void onSlow(long sentEpoch) {
+		if (sentEpoch == epoch) {
+			bulkSize = Math.max(minBulkSize, bulkSize / 2);
+			decrease();
+		}
+	}
+
+	private void decrease() {
+		epoch++;
+		healthyResponses = 0;
+		decreases.incrementAndGet();
+	}
+
+	private synchronized void onHealthy() {
+		bulkSize = Math.min(maxBulkSize, bulkSize + bulkSizeStep);
+		if (++healthyResponses >= concurrency && concurrency < maxConcurrency) {
+			concurrency++;
+			healthyResponses = 0;
+			inFlight.setLimit(concurrency);
+		}
+	}
+
+	public synchronized ByteSizeValue getBulkSize() {
+		return new ByteSizeValue(bulkSize);
+	}
+
+	public synchronized int getConcurrency() {
+		return concurrency;
+	}
+
+	public long getIndexed() {
+		return indexed.get();
+	}
+
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	public long getFailed() {
+		return failed.get();
+	}
+
+	/**
+	 * Message du dernier échec non renvoyé (bulk entier ou document), null si aucun
+	 */
+	public String getLastFailure() {
+		return lastFailure;
+	}
+
+	/**
+	 * Envoie les documents restants et attend la fin des bulks en vol et des renvois
+	 * @return false si le délai est écoulé avant
+	 */
+	public boolean awaitClose(long timeout, TimeUnit unit) throws InterruptedException {
+		flush();
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (inFlight.current() > 0 || pendingRetries.get() > 0) {
+			if (System.nanoTime() > deadline) {
+				return false;
+			}
+			Thread.sleep(10);
+		}
+		retryScheduler.shutdown();
+		return true;
+	}
+
+	@Override
+	public void close() {
+		try {
+			awaitClose(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			retryScheduler.shutdownNow();
+		}
+	}
+
+	@Override
+	public String toString() {
+		long bulkCount = bulks.get();
+		return indexed.get() + " documents indexed in " + bulkCount + " bulks (mean took "
+				+ (bulkCount == 0 ? 0 : tookInMillis.get() / bulkCount) + "ms), " + rejected.get() + " rejected and retried, "
+				+ dropped.get() + " dropped after " + maxRetries + " retries, " + failed.get() + " failed. "
+				+ decreases.get() + " decreases, now " + getBulkSize() + " x " + getConcurrency() + " bulks in flight";
+	}
+
+	/**
+	 * Nombre de bulks en vol, dont la limite peut changer à tout moment (un Semaphore ne peut pas rendre des
+	 * permis retirés proprement)
+	 */
+	private static class InFlightLimit {
+
+		private int limit;
+		private int current;
+
+		InFlightLimit(int limit) {
+			this.limit = limit;
+		}
+
+		synchronized void acquire() throws InterruptedException {
+			while (current >= limit) {
+				wait();
+			}
+			current++;
+		}
+
+		synchronized void release() {
+			current--;
+			notifyAll();
+		}
+
+		synchronized void setLimit(int limit) {
+			this.limit = limit;
+			notifyAll();
+		}
+
+		synchronized int current() {
+			return current;
+		}
+	}
+
+	public static class Builder {
+
+		private final Client client;
+		private ByteSizeValue initialBulkSize = new ByteSizeValue(1, ByteSizeUnit.MB);
+		private ByteSizeValue minBulkSize = new ByteSizeValue(256, ByteSizeUnit.KB);
+		private ByteSizeValue maxBulkSize = new ByteSizeValue(32, ByteSizeUnit.MB);
+		private ByteSizeValue bulkSizeStep = new ByteSizeValue(512, ByteSizeUnit.KB);
+		private int initialConcurrency = 1;
+		private int maxConcurrency = 16;
+		private TimeValue targetLatency = TimeValue.timeValueSeconds(1);
+		private int maxRetries = 8;
+		private TimeValue initialBackoff = TimeValue.timeValueMillis(50);
+		private TimeValue maxBackoff = TimeValue.timeValueSeconds(10);
+
+		private Builder(Client client) {
+			this.client = client;
+		}
+
+		/**
+		 * Taille des bulks au démarrage, puis bornes et pas d'augmentation
+		 */
+		public Builder bulkSize(ByteSizeValue initial, ByteSizeValue min, ByteSizeValue max) {
+			this.initialBulkSize = initial;
+			this.minBulkSize = min;
+			this.maxBulkSize = max;
+			return this;
+		}
+
+		public Builder bulkSizeStep(ByteSizeValue bulkSizeStep) {
+			this.bulkSizeStep = bulkSizeStep;
+			return this;
+		}
+
+		/**
+		 * Nombre de bulks en vol au démarrage, et maximum
+		 */
+		public Builder concurrency(int initial, int max) {
+			this.initialConcurrency = initial;
+			this.maxConcurrency = max;
+			return this;
+		}
+
+		/**
+		 * Temps de traitement d'un bulk (took) au-delà duquel la taille des bulks est réduite
+		 */
+		public Builder targetLatency(TimeValue targetLatency) {
+			this.targetLatency = targetLatency;
+			return this;
+		}
+
+		/**
+		 * Nombre maximum de renvois d'un document rejeté, et bornes de l'attente entre deux renvois
+		 */
+		public Builder retries(int maxRetries, TimeValue initialBackoff, TimeValue maxBackoff) {
+			this.maxRetries = maxRetries;
+			this.initialBackoff = initialBackoff;
+			this.maxBackoff = maxBackoff;
+			return this;
+		}
+
+		public AdaptiveBulkIngester build() {
+			return new AdaptiveBulkIngester(this);
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package fr.mgargadennec.es.examples.ingest;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.node.NodeBuilder;
+
+import fr.mgargadennec.es.examples.generator.DocumentGenerator;
+import fr.mgargadennec.es.examples.generator.DocumentShape;
+import fr.mgargadennec.es.examples.generator.IndexingSink;
+import fr.mgargadennec.es.examples.index.IndexBootstrap;
+import fr.mgargadennec.es.examples.index.IndexResources;
+import fr.mgargadennec.es.examples.util.CommandLineOptions;
+
+/**
+ * Chargement auto-ajusté
+ * Charge un corpus généré avec un AdaptiveBulkIngester sur un noeud local dont la file du pool "bulk" est volontairement
+ * courte : les rejets arrivent vite, et on voit chaque seconde la taille des bulks et la concurrence converger.
+ * A la fin, le nombre de documents de l'index est comparé au nombre de documents générés : aucun rejet n'est perdu.
+ *
+ * Options (--option=valeur) :
+ *  --docs            : nombre de documents générés (200000)
+ *  --bulk-queue      : taille de la file du pool bulk du noeud local (4)
+ *  --target-latency  : temps de traitement visé pour un bulk (1s)
+ *  --max-concurrency : nombre maximum de bulks en vol (16)
+ *
+ * @author mgargadennec
+ *
+ */
+public class AdaptiveIngestMain {
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Settings options = CommandLineOptions.parse(args);
+		int docs = options.getAsInt("docs", 200000);
+		String indexName = "mon_index";
+
+		Node node = NodeBuilder.nodeBuilder()
+				.clusterName("adaptive-ingest")
+				.local(true)
+				.settings(ImmutableSettings.settingsBuilder()
+						.put("threadpool.bulk.queue_size", options.getAsInt("bulk-queue", 4)))
+				.node();
+		Client client = node.client();
+		client.admin().cluster().prepareHealth().setWaitForYellowStatus().get();
+		client.admin().indices().prepareDelete("_all").get();
+
+		IndexBootstrap bootstrap = IndexBootstrap.builder(client, indexName)
+				.settings(IndexResources.SETTINGS)
+				.mapping("mon_type", IndexResources.MAPPING)
+				.build();
+		bootstrap.createForLoad();
+
+		final AdaptiveBulkIngester ingester = AdaptiveBulkIngester.builder(client)
+				.targetLatency(options.getAsTime("target-latency", TimeValue.timeValueSeconds(1)))
+				.concurrency(1, options.getAsInt("max-concurrency", 16))
+				.build();
+
+		//Trajectoire du contrôleur, chaque seconde
+		ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor(EsExecutors.daemonThreadFactory("progress"));
+		progress.scheduleAtFixedRate(new Runnable() {
+			private long previous;
+
+			@Override
+			public void run() {
+				long indexed = ingester.getIndexed();
+				System.out.println(String.format("%8d docs/s  bulk %-8s x %2d in flight  (%d rejected so far)",
+						indexed - previous, ingester.getBulkSize(), ingester.getConcurrency(), ingester.getRejected()));
+				previous = indexed;
+			}
+		}, 1, 1, TimeUnit.SECONDS);
+
+		long start = System.nanoTime();
+		new DocumentGenerator(DocumentShape.FULL).generate(docs, new IndexingSink(ingester, indexName, "mon_type"));
+		ingester.awaitClose(5, TimeUnit.MINUTES);
+		long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1000000);
+		progress.shutdownNow();
+
+		bootstrap.finishLoad();
+		System.out.println(ingester);
+		if (ingester.getLastFailure() != null) {
+			System.out.println(ingester.getFailed() + " documents failed, last failure : " + ingester.getLastFailure());
+		}
+		System.out.println((docs * 1000L / elapsedMillis) + " docs/s overall. Documents in index : "
+				+ client.prepareCount(indexName).get().getCount() + " / " + docs);
+
+		node.close();
+
+		System.exit(0);
+	}
+}
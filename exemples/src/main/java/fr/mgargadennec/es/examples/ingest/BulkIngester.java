@@ -0,0 +1,196 @@
+package fr.mgargadennec.es.examples.ingest;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+
+/**
+ * Pipeline d'ingestion en streaming
+ * Remplace le BulkRequestBuilder géant (contenant tous les documents) par un BulkProcessor, qui envoie des bulks
+ * au fil de l'eau :
+ *  - dès que le nombre d'actions est atteint
+ *  - dès que la taille en octets est atteinte
+ *  - à intervalle régulier (pour ne pas garder de documents en attente trop longtemps)
+ *
+ * Le nombre de bulks "en vol" est limité : quand la limite est atteinte, l'appel à add() bloque le producteur
+ * jusqu'à la fin d'un bulk (backpressure). La mémoire consommée reste donc stable quelle que soit la taille du corpus.
+ *
+ * @author mgargadennec
+ *
+ */
+public class BulkIngester implements Ingester, Closeable {
+
+	private final BulkProcessor bulkProcessor;
+	private final IngestStats stats;
+
+	private BulkIngester(Builder builder) {
+		this.stats = builder.stats;
+		this.bulkProcessor = BulkProcessor.builder(builder.client, new ChainedListener(stats, builder.listener))
+				.setName(builder.name)
+				.setBulkActions(builder.bulkActions)
+				.setBulkSize(builder.bulkSize)
+				.setFlushInterval(builder.flushInterval)
+				.setConcurrentRequests(builder.concurrentRequests)
+				.build();
+	}
+
+	public static Builder builder(Client client) {
+		return new Builder(client);
+	}
+
+	/**
+	 * Ajoute une requête d'indexation (bloquant si trop de bulks sont déjà en cours)
+	 */
+	@Override
+	public BulkIngester add(IndexRequest request) {
+		bulkProcessor.add(request);
+		return this;
+	}
+
+	/**
+	 * Ajoute des actions déjà sérialisées au format NDJSON de l'API bulk (lignes d'action et sources), sans les
+	 * désérialiser : les sources sont des tranches de data
+	 * @param data des lignes complètes, qui ne doivent plus être modifiées
+	 */
+	public BulkIngester add(BytesReference data, String defaultIndex, String defaultType) throws Exception {
+		bulkProcessor.add(data, false, defaultIndex, defaultType);
+		return this;
+	}
+
+	/**
+	 * Force l'envoi des documents en attente
+	 */
+	public void flush() {
+		bulkProcessor.flush();
+	}
+
+	public IngestStats getStats() {
+		return stats;
+	}
+
+	/**
+	 * Envoie les documents restants et attend la fin des bulks en cours
+	 */
+	public boolean awaitClose(long timeout, TimeUnit unit) throws InterruptedException {
+		return bulkProcessor.awaitClose(timeout, unit);
+	}
+
+	@Override
+	public void close() {
+		bulkProcessor.close();
+	}
+
+	public static class Builder {
+
+		private final Client client;
+		private String name = "ingest";
+		private int bulkActions = 1000;
+		private ByteSizeValue bulkSize = new ByteSizeValue(5, ByteSizeUnit.MB);
+		private TimeValue flushInterval = TimeValue.timeValueSeconds(5);
+		private int concurrentRequests = 2;
+		private IngestStats stats = new IngestStats(false);
+		private BulkProcessor.Listener listener;
+
+		private Builder(Client client) {
+			this.client = client;
+		}
+
+		public Builder name(String name) {
+			this.name = name;
+			return this;
+		}
+
+		/**
+		 * Nombre d'actions déclenchant un flush (-1 pour désactiver)
+		 */
+		public Builder bulkActions(int bulkActions) {
+			this.bulkActions = bulkActions;
+			return this;
+		}
+
+		/**
+		 * Taille déclenchant un flush (-1 pour désactiver)
+		 */
+		public Builder bulkSize(ByteSizeValue bulkSize) {
+			this.bulkSize = bulkSize;
+			return this;
+		}
+
+		/**
+		 * Intervalle de flush périodique (null pour désactiver)
+		 */
+		public Builder flushInterval(TimeValue flushInterval) {
+			this.flushInterval = flushInterval;
+			return this;
+		}
+
+		/**
+		 * Nombre maximum de bulks en vol (0 = envoi synchrone dans le thread producteur)
+		 */
+		public Builder concurrentRequests(int concurrentRequests) {
+			this.concurrentRequests = concurrentRequests;
+			return this;
+		}
+
+		public Builder stats(IngestStats stats) {
+			this.stats = stats;
+			return this;
+		}
+
+		/**
+		 * Listener supplémentaire, appelé après la collecte des statistiques
+		 */
+		public Builder listener(BulkProcessor.Listener listener) {
+			this.listener = listener;
+			return this;
+		}
+
+		public BulkIngester build() {
+			return new BulkIngester(this);
+		}
+	}
+
+	private static class ChainedListener implements BulkProcessor.Listener {
+
+		private final BulkProcessor.Listener first;
+		private final BulkProcessor.Listener second;
+
+		ChainedListener(BulkProcessor.Listener first, BulkProcessor.Listener second) {
+			this.first = first;
+			this.second = second;
+		}
+
+		@Override
+		public void beforeBulk(long executionId, BulkRequest request) {
+			first.beforeBulk(executionId, request);
+			if (second != null) {
+				second.beforeBulk(executionId, request);
+			}
+		}
+
+		@Override
+		public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+			first.afterBulk(executionId, request, response);
+			if (second != null) {
+				second.afterBulk(executionId, request, response);
+			}
+		}
+
+		@Override
+		public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+			first.afterBulk(executionId, request, failure);
+			if (second != null) {
+				second.afterBulk(executionId, request, failure);
+			}
+		}
+	}
+}
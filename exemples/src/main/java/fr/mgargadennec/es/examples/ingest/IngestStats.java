@@ -0,0 +1,104 @@
+package fr.mgargadennec.es.examples.ingest;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+
+/**
+ * Statistiques d'ingestion
+ * Listener du BulkProcessor qui comptabilise, pour chaque flush, le nombre de documents, la taille envoyée,
+ * le temps de traitement côté cluster et le nombre d'échecs.
+ *
+ * Les compteurs sont cumulés pour pouvoir afficher un bilan à la fin du chargement.
+ *
+ * @author mgargadennec
+ *
+ */
+public class IngestStats implements BulkProcessor.Listener {
+
+	private final AtomicLong bulks = new AtomicLong();
+	private final AtomicLong docs = new AtomicLong();
+	private final AtomicLong bytes = new AtomicLong();
+	private final AtomicLong tookInMillis = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+
+	private final boolean verbose;
+	private final long startNanos = System.nanoTime();
+
+	public IngestStats(boolean verbose) {
+		this.verbose = verbose;
+	}
+
+	@Override
+	public void beforeBulk(long executionId, BulkRequest request) {
+	}
+
+	@Override
+	public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+		int itemFailures = 0;
+		if (response.hasFailures()) {
+			for (int i = 0; i < response.getItems().length; i++) {
+				if (response.getItems()[i].isFailed()) {
+					itemFailures++;
+				}
+			}
+		}
+		record(request, response.getTookInMillis(), itemFailures);
+
+		if (verbose) {
+			System.out.println("Bulk #" + executionId + " : " + request.numberOfActions() + " documents ("
+					+ request.estimatedSizeInBytes() + " bytes) indexed in " + response.getTookInMillis()
+					+ "ms. Failures : " + itemFailures);
+		}
+	}
+
+	@Override
+	public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+		//Le bulk complet est en échec : tous les documents sont comptés comme perdus
+		record(request, 0, request.numberOfActions());
+		System.out.println("Bulk #" + executionId + " failed : " + failure.getMessage());
+	}
+
+	private void record(BulkRequest request, long took, int itemFailures) {
+		bulks.incrementAndGet();
+		docs.addAndGet(request.numberOfActions());
+		bytes.addAndGet(request.estimatedSizeInBytes());
+		tookInMillis.addAndGet(took);
+		failures.addAndGet(itemFailures);
+	}
+
+	public long getBulks() {
+		return bulks.get();
+	}
+
+	public long getDocs() {
+		return docs.get();
+	}
+
+	public long getBytes() {
+		return bytes.get();
+	}
+
+	public long getTookInMillis() {
+		return tookInMillis.get();
+	}
+
+	public long getFailures() {
+		return failures.get();
+	}
+
+	public boolean hasFailures() {
+		return failures.get() > 0;
+	}
+
+	@Override
+	public String toString() {
+		long elapsedMillis = Math.max(1, (System.nanoTime() - startNanos) / 1000000);
+		return getDocs() + " documents indexed in " + getBulks() + " bulks (" + getBytes() + " bytes, "
+				+ getTookInMillis() + "ms cumulated took, " + elapsedMillis + "ms elapsed, "
+				+ (getDocs() * 1000 / elapsedMillis) + " docs/s). Any failures ? " + hasFailures()
+				+ " (" + getFailures() + ")";
+	}
+}
@@ -0,0 +1,16 @@
+package fr.mgargadennec.es.examples.ingest;
+
+import org.elasticsearch.action.index.IndexRequest;
+
+/**
+ * Destination des requêtes d'indexation : BulkIngester (taille et concurrence fixes) ou AdaptiveBulkIngester
+ * (taille et concurrence ajustées selon la réponse du cluster)
+ * add() peut bloquer l'appelant tant que trop de bulks sont en cours (backpressure).
+ *
+ * @author mgargadennec
+ *
+ */
+public interface Ingester {
+
+	Ingester add(IndexRequest request);
+}
@@ -0,0 +1,245 @@
+package fr.mgargadennec.es.examples.load;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Recorder;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+
+import fr.mgargadennec.es.examples.client.SearchBatcher;
+import fr.mgargadennec.es.examples.search.QueryShape;
+
+/**
+ * Injecteur de charge
+ * Rejoue des termes de recherche avec les requêtes des exemples (QueryShape), depuis plusieurs threads :
+ *  - en boucle fermée : chaque thread envoie sa requête suivante dès la réponse reçue
+ *  - en boucle ouverte : les requêtes sont planifiées à débit fixe, quel que soit le temps de réponse
+ *
+ * En boucle ouverte, la latence est mesurée depuis l'heure à laquelle la requête aurait dû partir : le retard pris
+ * quand le cluster ralentit est compté (correction de la "coordinated omission"). En boucle fermée, la correction
+ * est faite par HdrHistogram à partir de l'intervalle attendu entre deux requêtes d'un thread, s'il est connu.
+ *
+ * @author mgargadennec
+ *
+ */
+public class LoadDriver {
+
+	public enum Mode {
+		CLOSED, OPEN
+	}
+
+	private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+	private final Client client;
+	private final String indexName;
+	private final List<QueryShape> shapes;
+	private final TermSource terms;
+	private final Mode mode;
+	private final int concurrency;
+	private final double rate;
+	private final TimeValue duration;
+	private final SearchBatcher batcher;
+
+	private final Map<QueryShape, Recorder> recorders = new EnumMap<QueryShape, Recorder>(QueryShape.class);
+	private final Map<QueryShape, AtomicLong> errors = new EnumMap<QueryShape, AtomicLong>(QueryShape.class);
+
+	private LoadDriver(Builder builder) {
+		this.client = builder.client;
+		this.indexName = builder.indexName;
+		this.shapes = builder.shapes;
+		this.terms = builder.terms;
+		this.mode = builder.mode;
+		this.concurrency = builder.concurrency;
+		this.rate = builder.rate;
+		this.duration = builder.duration;
+		this.batcher = builder.batcher;
+		if (mode == Mode.OPEN && rate <= 0) {
+			throw new IllegalArgumentException("An open-loop run needs a target rate");
+		}
+		for (QueryShape shape : shapes) {
+			recorders.put(shape, new Recorder(HIGHEST_TRACKABLE_MICROS, 3));
+			errors.put(shape, new AtomicLong());
+		}
+	}
+
+	public static Builder builder(Client client, String indexName, TermSource terms) {
+		return new Builder(client, indexName, terms);
+	}
+
+	/**
+	 * Lance le tir et attend sa fin
+	 */
+	public LoadReport run() throws InterruptedException {
+		final long start = System.nanoTime();
+		final long end = start + duration.nanos();
+		final AtomicLong sequence = new AtomicLong();
+		final CountDownLatch done = new CountDownLatch(concurrency);
+
+		for (int i = 0; i < concurrency; i++) {
+			final Random random = new Random(i);
+			Thread worker = EsExecutors.daemonThreadFactory("load-driver").newThread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						if (mode == Mode.OPEN) {
+							runOpen(start, end, sequence, random);
+						} else {
+							runClosed(end, sequence, random);
+						}
+					} finally {
+						done.countDown();
+					}
+				}
+			});
+			worker.start();
+		}
+		done.await();
+
+		LoadReport report = new LoadReport(System.nanoTime() - start);
+		for (QueryShape shape : shapes) {
+			report.add(shape, recorders.get(shape).getIntervalHistogram(), errors.get(shape).get());
+		}
+		return report;
+	}
+
+	private void runClosed(long end, AtomicLong sequence, Random random) {
+		//Intervalle attendu entre deux requêtes d'un même thread, si un débit cible est donné
+		long expectedIntervalMicros = rate > 0 ? (long) (concurrency * 1000000d / rate) : 0;
+		while (System.nanoTime() < end) {
+			long n = sequence.getAndIncrement();
+			QueryShape shape = shapes.get((int) (n % shapes.size()));
+			long sent = System.nanoTime();
+			boolean success = send(shape, random);
+			long latencyMicros = (System.nanoTime() - sent) / 1000;
+			record(shape, latencyMicros, expectedIntervalMicros, success);
+		}
+	}
+
+	private void runOpen(long start, long end, AtomicLong sequence, Random random) {
+		double intervalNanos = 1000000000d / rate;
+		while (true) {
+			long n = sequence.getAndIncrement();
+			long intended = start + (long) (n * intervalNanos);
+			if (intended >= end) {
+				return;
+			}
+			long now;
+			while ((now = System.nanoTime()) < intended) {
+				LockSupport.parkNanos(intended - now);
+			}
+			QueryShape shape = shapes.get((int) (n % shapes.size()));
+			boolean success = send(shape, random);
+			//Mesurée depuis l'heure prévue, et non depuis l'heure d'envoi
+			long latencyMicros = (System.nanoTime() - intended) / 1000;
+			record(shape, latencyMicros, 0, success);
+		}
+	}
+
+	private boolean send(QueryShape shape, Random random) {
+		try {
+			SearchRequestBuilder search = shape.prepare(client, indexName, terms.next(), 1950 + random.nextInt(2015 - 1950));
+			if (batcher != null) {
+				batcher.submit(search).get();
+			} else {
+				search.get();
+			}
+			return true;
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	private void record(QueryShape shape, long latencyMicros, long expectedIntervalMicros, boolean success) {
+		if (!success) {
+			errors.get(shape).incrementAndGet();
+			return;
+		}
+		long value = Math.min(latencyMicros, HIGHEST_TRACKABLE_MICROS);
+		if (expectedIntervalMicros > 0) {
+			recorders.get(shape).recordValueWithExpectedInterval(value, expectedIntervalMicros);
+		} else {
+			recorders.get(shape).recordValue(value);
+		}
+	}
+
+	public static class Builder {
+
+		private final Client client;
+		private final String indexName;
+		private final TermSource terms;
+		private List<QueryShape> shapes = new ArrayList<QueryShape>();
+		private Mode mode = Mode.CLOSED;
+		private int concurrency = 4;
+		private double rate;
+		private TimeValue duration = TimeValue.timeValueSeconds(60);
+		private SearchBatcher batcher;
+
+		private Builder(Client client, String indexName, TermSource terms) {
+			this.client = client;
+			this.indexName = indexName;
+			this.terms = terms;
+		}
+
+		/**
+		 * Types de requêtes, utilisés à tour de rôle (tous par défaut)
+		 */
+		public Builder shapes(List<QueryShape> shapes) {
+			this.shapes = shapes;
+			return this;
+		}
+
+		public Builder mode(Mode mode) {
+			this.mode = mode;
+			return this;
+		}
+
+		/**
+		 * Nombre de threads d'envoi
+		 */
+		public Builder concurrency(int concurrency) {
+			this.concurrency = concurrency;
+			return this;
+		}
+
+		/**
+		 * Débit cible en requêtes par seconde (obligatoire en boucle ouverte)
+		 */
+		public Builder rate(double rate) {
+			this.rate = rate;
+			return this;
+		}
+
+		public Builder duration(TimeValue duration) {
+			this.duration = duration;
+			return this;
+		}
+
+		/**
+		 * Regroupement des recherches en MultiSearchRequest (aucun par défaut)
+		 */
+		public Builder batcher(SearchBatcher batcher) {
+			this.batcher = batcher;
+			return this;
+		}
+
+		public LoadDriver build() {
+			if (shapes.isEmpty()) {
+				shapes = new ArrayList<QueryShape>();
+				for (QueryShape shape : QueryShape.values()) {
+					shapes.add(shape);
+				}
+			}
+			return new LoadDriver(this);
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package fr.mgargadennec.es.examples.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.node.NodeBuilder;
+
+import fr.mgargadennec.es.examples.client.SearchBatcher;
+import fr.mgargadennec.es.examples.corpus.CorpusReplayer;
+import fr.mgargadennec.es.examples.generator.DocumentGenerator;
+import fr.mgargadennec.es.examples.generator.DocumentShape;
+import fr.mgargadennec.es.examples.generator.IndexingSink;
+import fr.mgargadennec.es.examples.index.IndexBootstrap;
+import fr.mgargadennec.es.examples.index.IndexResources;
+import fr.mgargadennec.es.examples.ingest.BulkIngester;
+import fr.mgargadennec.es.examples.search.QueryShape;
+import fr.mgargadennec.es.examples.util.CommandLineOptions;
+
+/**
+ * Tir de charge
+ * Remplace la saisie au clavier des exemples 3 à 7 par un injecteur multi-threadé.
+ *
+ * Options (--option=valeur) :
+ *  --cluster     : cluster à rejoindre en tant que noeud client (sinon : noeud local avec un corpus généré)
+ *  --index       : index interrogé (mon_index)
+ *  --corpus      : taille du corpus généré pour le noeud local (6000)
+ *  --corpus-file : corpus NDJSON rejoué pour le noeud local, au lieu d'un corpus généré (voir CorpusMain)
+ *  --mode        : closed (boucle fermée) ou open (débit fixe)
+ *  --concurrency : nombre de threads d'envoi (4)
+ *  --rate        : débit cible en requêtes/s (obligatoire en mode open)
+ *  --duration    : durée du tir (60s)
+ *  --terms       : fichier de termes, un par ligne (sinon : termes tirés du vocabulaire DataFactory)
+ *  --shapes      : types de requêtes, séparés par des virgules (tous par défaut)
+ *  --batch       : fenêtre de regroupement des recherches en msearch (désactivé par défaut, ex: 5ms)
+ *  --batch-size  : taille maximale d'un lot de recherches (64)
+ *
+ * @author mgargadennec
+ *
+ */
+public class LoadDriverMain {
+
+	public static void main(String[] args) throws InterruptedException, IOException {
+		Settings options = CommandLineOptions.parse(args);
+		String indexName = options.get("index", "mon_index");
+
+		//Noeud client d'un cluster existant, ou noeud local
+		Node node;
+		String cluster = options.get("cluster");
+		if (cluster != null) {
+			node = NodeBuilder.nodeBuilder().clusterName(cluster).client(true).node();
+		} else {
+			node = NodeBuilder.nodeBuilder().clusterName("load-driver").local(true).node();
+		}
+		Client client = node.client();
+		client.admin().cluster().prepareHealth().setWaitForYellowStatus().get();
+
+		if (cluster == null) {
+			String corpusFile = options.get("corpus-file");
+			initIndex(client, indexName, options.getAsInt("corpus", 6000), corpusFile != null ? new File(corpusFile) : null);
+		}
+
+		String termsFile = options.get("terms");
+		TermSource terms = termsFile != null ? TermSource.fromFile(new File(termsFile)) : TermSource.fromVocabulary(10000, 42L);
+
+		List<QueryShape> shapes = new ArrayList<QueryShape>();
+		for (String shape : options.getAsArray("shapes")) {
+			shapes.add(QueryShape.valueOf(shape.trim().toUpperCase()));
+		}
+
+		SearchBatcher batcher = null;
+		if (options.get("batch") != null) {
+			batcher = SearchBatcher.builder(client)
+					.window(options.getAsTime("batch", null))
+					.maxBatchSize(options.getAsInt("batch-size", 64))
+					.build();
+		}
+
+		LoadDriver driver = LoadDriver.builder(client, indexName, terms)
+				.mode(LoadDriver.Mode.valueOf(options.get("mode", "closed").toUpperCase()))
+				.concurrency(options.getAsInt("concurrency", 4))
+				.rate(options.getAsDouble("rate", 0d))
+				.duration(options.getAsTime("duration", TimeValue.timeValueSeconds(60)))
+				.shapes(shapes)
+				.batcher(batcher)
+				.build();
+
+		LoadReport report = driver.run();
+		report.print(System.out);
+		if (batcher != null) {
+			batcher.close();
+			System.out.println(batcher.getStats());
+		}
+
+		node.close();
+
+		System.exit(0);
+	}
+
+	private static void initIndex(Client client, String indexName, int corpus, File corpusFile) throws IOException, InterruptedException {
+		client.admin().indices().prepareDelete("_all").execute().actionGet();
+
+		IndexBootstrap bootstrap = IndexBootstrap.builder(client, indexName)
+				.settings(IndexResources.SETTINGS)
+				.mapping("mon_type", IndexResources.MAPPING)
+				.build();
+		bootstrap.createForLoad();
+
+		BulkIngester ingester = BulkIngester.builder(client).build();
+		if (corpusFile != null) {
+			new CorpusReplayer(corpusFile, new ByteSizeValue(5, ByteSizeUnit.MB)).replay(ingester, indexName, "mon_type");
+		} else {
+			new DocumentGenerator(DocumentShape.FULL_WITH_CATEGORY).generate(corpus, new IndexingSink(ingester, indexName, "mon_type"));
+		}
+		ingester.awaitClose(1, TimeUnit.MINUTES);
+		System.out.println(ingester.getStats());
+
+		bootstrap.finishLoad();
+	}
+}
@@ -0,0 +1,88 @@
+package fr.mgargadennec.es.examples.load;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.HdrHistogram.Histogram;
+
+import fr.mgargadennec.es.examples.search.QueryShape;
+
+/**
+ * Résultat d'un tir de charge : histogramme des latences (en microsecondes) et erreurs, par type de requête
+ *
+ * @author mgargadennec
+ *
+ */
+public class LoadReport {
+
+	private final Map<QueryShape, Histogram> histograms = new EnumMap<QueryShape, Histogram>(QueryShape.class);
+	private final Map<QueryShape, Long> errors = new EnumMap<QueryShape, Long>(QueryShape.class);
+	private final long elapsedNanos;
+
+	LoadReport(long elapsedNanos) {
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	void add(QueryShape shape, Histogram histogram, long errorCount) {
+		histograms.put(shape, histogram);
+		errors.put(shape, errorCount);
+	}
+
+	public Histogram getHistogram(QueryShape shape) {
+		return histograms.get(shape);
+	}
+
+	public long getErrors(QueryShape shape) {
+		return errors.get(shape);
+	}
+
+	public double getThroughput(QueryShape shape) {
+		return histograms.get(shape).getTotalCount() * 1000000000d / elapsedNanos;
+	}
+
+	/**
+	 * Latences de tous les types de requêtes, cumulées
+	 */
+	public Histogram total() {
+		Histogram total = null;
+		for (Histogram histogram : histograms.values()) {
+			if (total == null) {
+				total = histogram.copy();
+			} else {
+				total.add(histogram);
+			}
+		}
+		return total;
+	}
+
+	public long getTotalErrors() {
+		long total = 0;
+		for (long count : errors.values()) {
+			total += count;
+		}
+		return total;
+	}
+
+	public double getTotalThroughput() {
+		Histogram total = total();
+		return total == null ? 0 : total.getTotalCount() * 1000000000d / elapsedNanos;
+	}
+
+	public void print(PrintStream out) {
+		out.println(String.format("%-26s %10s %10s %10s %10s %10s %10s %8s",
+				"shape", "count", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "errors"));
+		for (Map.Entry<QueryShape, Histogram> entry : histograms.entrySet()) {
+			Histogram histogram = entry.getValue();
+			out.println(String.format("%-26s %10d %10.1f %10.2f %10.2f %10.2f %10.2f %8d",
+					entry.getKey(),
+					histogram.getTotalCount(),
+					getThroughput(entry.getKey()),
+					histogram.getValueAtPercentile(50) / 1000d,
+					histogram.getValueAtPercentile(99) / 1000d,
+					histogram.getValueAtPercentile(99.9) / 1000d,
+					histogram.getMaxValue() / 1000d,
+					errors.get(entry.getKey())));
+		}
+	}
+}
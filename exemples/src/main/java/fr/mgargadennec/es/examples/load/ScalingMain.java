@@ -0,0 +1,111 @@
+package fr.mgargadennec.es.examples.load;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthStatus;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+
+import fr.mgargadennec.es.examples.generator.DocumentGenerator;
+import fr.mgargadennec.es.examples.generator.DocumentShape;
+import fr.mgargadennec.es.examples.generator.IndexingSink;
+import fr.mgargadennec.es.examples.index.IndexBootstrap;
+import fr.mgargadennec.es.examples.index.IndexResources;
+import fr.mgargadennec.es.examples.ingest.BulkIngester;
+import fr.mgargadennec.es.examples.ingest.IngestStats;
+import fr.mgargadennec.es.examples.node.LocalCluster;
+import fr.mgargadennec.es.examples.util.CommandLineOptions;
+
+/**
+ * Montée en charge selon la topologie
+ * Pour chaque combinaison de noeuds, shards et répliques : démarre un LocalCluster, crée l'index des exemples,
+ * charge un corpus généré (répliques actives pendant le chargement, pour mesurer leur coût) puis lance un tir de
+ * charge en boucle fermée. Affiche un ScalingReport.
+ *
+ * Options (--option=valeur, listes séparées par des virgules) :
+ *  --nodes       : nombres de noeuds (1,2,3)
+ *  --shards      : nombres de shards (1,5)
+ *  --replicas    : nombres de répliques (0,1) ; les combinaisons avec autant de répliques que de noeuds sont
+ *                  ignorées (répliques non allouables)
+ *  --docs        : taille du corpus (20000)
+ *  --concurrency : nombre de threads du tir de charge (4)
+ *  --duration    : durée du tir de charge (10s)
+ *
+ * @author mgargadennec
+ *
+ */
+public class ScalingMain {
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Settings options = CommandLineOptions.parse(args);
+		int[] nodeCounts = parseCounts(options.getAsArray("nodes", new String[] { "1", "2", "3" }));
+		int[] shardCounts = parseCounts(options.getAsArray("shards", new String[] { "1", "5" }));
+		int[] replicaCounts = parseCounts(options.getAsArray("replicas", new String[] { "0", "1" }));
+		int docs = options.getAsInt("docs", 20000);
+		int concurrency = options.getAsInt("concurrency", 4);
+		TimeValue duration = options.getAsTime("duration", TimeValue.timeValueSeconds(10));
+
+		String indexName = "mon_index";
+		TermSource terms = TermSource.fromVocabulary(10000, 42L);
+		ScalingReport report = new ScalingReport();
+
+		for (int nodes : nodeCounts) {
+			LocalCluster cluster = LocalCluster.builder("scaling").nodes(nodes).build();
+			try {
+				Client client = cluster.client();
+				for (int shards : shardCounts) {
+					for (int replicas : replicaCounts) {
+						if (replicas >= nodes) {
+							continue;
+						}
+						client.admin().indices().prepareDelete("_all").get();
+
+						IndexBootstrap bootstrap = IndexBootstrap.builder(client, indexName)
+								.settings(IndexResources.SETTINGS)
+								.mapping("mon_type", IndexResources.MAPPING)
+								.loadSetting("index.number_of_shards", shards)
+								.loadSetting("index.number_of_replicas", replicas)
+								.replicas(replicas)
+								.targetStatus(ClusterHealthStatus.GREEN)
+								.build();
+						bootstrap.createForLoad();
+						client.admin().cluster().prepareHealth(indexName).setWaitForGreenStatus().get();
+
+						IngestStats ingestStats = new IngestStats(false);
+						BulkIngester ingester = BulkIngester.builder(client).stats(ingestStats).build();
+						long start = System.nanoTime();
+						new DocumentGenerator(DocumentShape.FULL_WITH_CATEGORY).generate(docs, new IndexingSink(ingester, indexName, "mon_type"));
+						ingester.awaitClose(5, TimeUnit.MINUTES);
+						long ingestNanos = System.nanoTime() - start;
+						bootstrap.finishLoad();
+
+						LoadReport load = LoadDriver.builder(client, indexName, terms)
+								.concurrency(concurrency)
+								.duration(duration)
+								.build()
+								.run();
+
+						System.out.println("nodes=" + nodes + " shards=" + shards + " replicas=" + replicas + " : " + ingestStats);
+						report.add(nodes, shards, replicas, ingestStats, ingestNanos, load);
+					}
+				}
+			} finally {
+				cluster.close();
+			}
+		}
+
+		report.print(System.out);
+
+		System.exit(0);
+	}
+
+	private static int[] parseCounts(String[] values) {
+		int[] counts = new int[values.length];
+		for (int i = 0; i < values.length; i++) {
+			counts[i] = Integer.parseInt(values[i].trim());
+		}
+		return counts;
+	}
+}
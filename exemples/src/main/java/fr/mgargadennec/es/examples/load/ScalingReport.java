@@ -0,0 +1,65 @@
+package fr.mgargadennec.es.examples.load;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.HdrHistogram.Histogram;
+
+import fr.mgargadennec.es.examples.ingest.IngestStats;
+
+/**
+ * Débit et latences d'indexation et de recherche, selon le nombre de noeuds, de shards et de répliques
+ * Une ligne par topologie testée : débit d'indexation (documents/s, temps moyen d'un bulk côté cluster) puis débit
+ * et percentiles de latence (en millisecondes, mesurés en microsecondes) des recherches, tous types de requêtes
+ * confondus.
+ *
+ * @author mgargadennec
+ *
+ */
+public class ScalingReport {
+
+	private final List<Row> rows = new ArrayList<Row>();
+
+	public void add(int nodes, int shards, int replicas, IngestStats ingest, long ingestNanos, LoadReport load) {
+		rows.add(new Row(nodes, shards, replicas, ingest, ingestNanos, load));
+	}
+
+	public void print(PrintStream out) {
+		out.println(String.format("%6s %6s %8s %10s %10s %10s %10s %10s %10s %8s",
+				"nodes", "shards", "replicas", "docs/s", "bulk ms", "req/s", "p50 ms", "p99 ms", "max ms", "errors"));
+		for (Row row : rows) {
+			Histogram latencies = row.load.total();
+			out.println(String.format("%6d %6d %8d %10.1f %10.1f %10.1f %10.2f %10.2f %10.2f %8d",
+					row.nodes,
+					row.shards,
+					row.replicas,
+					row.ingest.getDocs() * 1000000000d / Math.max(1, row.ingestNanos),
+					row.ingest.getTookInMillis() / (double) Math.max(1, row.ingest.getBulks()),
+					row.load.getTotalThroughput(),
+					latencies == null ? 0 : latencies.getValueAtPercentile(50) / 1000d,
+					latencies == null ? 0 : latencies.getValueAtPercentile(99) / 1000d,
+					latencies == null ? 0 : latencies.getMaxValue() / 1000d,
+					row.load.getTotalErrors() + row.ingest.getFailures()));
+		}
+	}
+
+	private static class Row {
+
+		private final int nodes;
+		private final int shards;
+		private final int replicas;
+		private final IngestStats ingest;
+		private final long ingestNanos;
+		private final LoadReport load;
+
+		Row(int nodes, int shards, int replicas, IngestStats ingest, long ingestNanos, LoadReport load) {
+			this.nodes = nodes;
+			this.shards = shards;
+			this.replicas = replicas;
+			this.ingest = ingest;
+			this.ingestNanos = ingestNanos;
+			this.load = load;
+		}
+	}
+}
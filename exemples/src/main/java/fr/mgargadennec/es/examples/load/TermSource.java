@@ -0,0 +1,63 @@
+package fr.mgargadennec.es.examples.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import fr.mgargadennec.es.examples.generator.Vocabulary;
+
+/**
+ * Termes de recherche rejoués par l'injecteur
+ * Les termes sont rendus dans l'ordre, en boucle ; next() est thread-safe et ne prend pas de verrou.
+ *
+ * @author mgargadennec
+ *
+ */
+public class TermSource {
+
+	private final String[] terms;
+	private final AtomicLong cursor = new AtomicLong();
+
+	public TermSource(String[] terms) {
+		if (terms.length == 0) {
+			throw new IllegalArgumentException("At least one search term is required");
+		}
+		this.terms = terms;
+	}
+
+	/**
+	 * Un terme par ligne (les lignes vides sont ignorées)
+	 */
+	public static TermSource fromFile(File file) throws IOException {
+		List<String> terms = new ArrayList<String>();
+		for (String line : Files.readLines(file, Charsets.UTF_8)) {
+			if (!line.trim().isEmpty()) {
+				terms.add(line.trim());
+			}
+		}
+		return new TermSource(terms.toArray(new String[terms.size()]));
+	}
+
+	/**
+	 * count termes tirés du vocabulaire du générateur de documents
+	 */
+	public static TermSource fromVocabulary(int count, long seed) {
+		Random random = new Random(seed);
+		String[] words = Vocabulary.DEFAULT.getWords();
+		String[] terms = new String[count];
+		for (int i = 0; i < count; i++) {
+			terms[i] = words[random.nextInt(words.length)];
+		}
+		return new TermSource(terms);
+	}
+
+	public String next() {
+		return terms[(int) (cursor.getAndIncrement() % terms.length)];
+	}
+}
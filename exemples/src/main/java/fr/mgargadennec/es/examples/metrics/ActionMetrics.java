@@ -0,0 +1,136 @@
+package fr.mgargadennec.es.examples.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Métriques d'une action (et éventuellement d'un index) : appels, échecs, rejets, octets envoyés et reçus, latences
+ *
+ * L'enregistrement n'alloue rien : compteurs LongAdder et Recorder HdrHistogram (latences en microsecondes). Les
+ * histogrammes lus par JMX sont mis à jour à chaque intervalle de mesure (snapshot()), hors du chemin critique.
+ *
+ * @author mgargadennec
+ *
+ */
+public class ActionMetrics implements ActionMetricsMBean {
+
+	private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+	private final String action;
+	private final String index;
+
+	private final LongAdder calls = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder rejections = new LongAdder();
+	private final LongAdder requestBytes = new LongAdder();
+	private final LongAdder responseBytes = new LongAdder();
+	private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_MICROS, 3);
+
+	//Protégés par this
+	private final Histogram cumulative = new Histogram(HIGHEST_TRACKABLE_MICROS, 3);
+	private Histogram interval;
+
+	ActionMetrics(String action, String index) {
+		this.action = action;
+		this.index = index;
+	}
+
+	public void recordSuccess(long latencyNanos, long requestSize, long responseSize) {
+		calls.increment();
+		requestBytes.add(requestSize);
+		responseBytes.add(responseSize);
+		recordLatency(latencyNanos);
+	}
+
+	public void recordFailure(long latencyNanos, long requestSize, boolean rejected) {
+		calls.increment();
+		failures.increment();
+		if (rejected) {
+			rejections.increment();
+		}
+		requestBytes.add(requestSize);
+		recordLatency(latencyNanos);
+	}
+
+	/**
+	 * Rejets partiels (items d'un bulk refusés par le cluster)
+	 */
+	public void recordRejections(long count) {
+		rejections.add(count);
+	}
+
+	private void recordLatency(long latencyNanos) {
+		recorder.recordValue(Math.min(Math.max(0, latencyNanos / 1000), HIGHEST_TRACKABLE_MICROS));
+	}
+
+	/**
+	 * Clôt l'intervalle de mesure en cours
+	 */
+	synchronized void snapshot() {
+		interval = recorder.getIntervalHistogram(interval);
+		cumulative.add(interval);
+	}
+
+	@Override
+	public String getAction() {
+		return action;
+	}
+
+	@Override
+	public String getIndex() {
+		return index;
+	}
+
+	@Override
+	public long getCalls() {
+		return calls.sum();
+	}
+
+	@Override
+	public long getFailures() {
+		return failures.sum();
+	}
+
+	@Override
+	public long getRejections() {
+		return rejections.sum();
+	}
+
+	@Override
+	public long getRequestBytes() {
+		return requestBytes.sum();
+	}
+
+	@Override
+	public long getResponseBytes() {
+		return responseBytes.sum();
+	}
+
+	@Override
+	public synchronized double getMeanMillis() {
+		return cumulative.getMean() / 1000d;
+	}
+
+	@Override
+	public synchronized double getP50Millis() {
+		return cumulative.getValueAtPercentile(50) / 1000d;
+	}
+
+	@Override
+	public synchronized double getP99Millis() {
+		return cumulative.getValueAtPercentile(99) / 1000d;
+	}
+
+	@Override
+	public synchronized double getMaxMillis() {
+		return cumulative.getMaxValue() / 1000d;
+	}
+
+	@Override
+	public synchronized double getRecentP99Millis() {
+		return interval == null ? 0 : interval.getValueAtPercentile(99) / 1000d;
+	}
+}
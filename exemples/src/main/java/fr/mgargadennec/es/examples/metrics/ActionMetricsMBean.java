@@ -0,0 +1,37 @@
+package fr.mgargadennec.es.examples.metrics;
+
+/**
+ * Interface JMX des métriques d'une action (latences en millisecondes, tailles en octets)
+ *
+ * @author mgargadennec
+ *
+ */
+public interface ActionMetricsMBean {
+
+	String getAction();
+
+	String getIndex();
+
+	long getCalls();
+
+	long getFailures();
+
+	long getRejections();
+
+	long getRequestBytes();
+
+	long getResponseBytes();
+
+	double getMeanMillis();
+
+	double getP50Millis();
+
+	double getP99Millis();
+
+	double getMaxMillis();
+
+	/**
+	 * p99 sur le dernier intervalle de mesure seulement
+	 */
+	double getRecentP99Millis();
+}
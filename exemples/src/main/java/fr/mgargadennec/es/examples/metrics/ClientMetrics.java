@@ -0,0 +1,167 @@
+package fr.mgargadennec.es.examples.metrics;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.threadpool.ThreadPool;
+
+/**
+ * Registre des métriques d'un client, par action et par (action, index)
+ * Chaque ActionMetrics est exposé en MBean JMX (domaine fr.mgargadennec.es, type ClientMetrics) dès sa création.
+ * A chaque intervalle, les histogrammes sont mis à jour et, si une sortie est donnée, un tableau est affiché.
+ *
+ * @author mgargadennec
+ *
+ */
+public class ClientMetrics implements Closeable {
+
+	public static final String DOMAIN = "fr.mgargadennec.es";
+
+	/**
+	 * Index des métriques globales d'une action (toutes cibles confondues) : nom invalide pour un index, il ne peut pas
+	 * être confondu avec une cible réelle (y compris _all)
+	 */
+	public static final String ALL_INDICES = "<all>";
+
+	private final String name;
+	private final ConcurrentMap<String, ConcurrentMap<String, ActionMetrics>> metrics = new ConcurrentHashMap<String, ConcurrentMap<String, ActionMetrics>>();
+	private final List<ObjectName> registered = Collections.synchronizedList(new ArrayList<ObjectName>());
+	private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+	private final PrintStream out;
+	private final ScheduledFuture<?> reporter;
+
+	/**
+	 * @param name nom du client, repris dans les noms JMX
+	 * @param out sortie du tableau périodique (null : pas d'affichage)
+	 */
+	public ClientMetrics(String name, ThreadPool threadPool, TimeValue interval, PrintStream out) {
+		this.name = name;
+		this.out = out;
+		this.reporter = threadPool.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				report();
+			}
+		}, interval);
+	}
+
+	/**
+	 * Métriques globales d'une action
+	 */
+	public ActionMetrics forAction(String action) {
+		return forIndex(action, ALL_INDICES);
+	}
+
+	/**
+	 * Métriques d'une action sur un index (sans allocation une fois créées)
+	 */
+	public ActionMetrics forIndex(String action, String index) {
+		ConcurrentMap<String, ActionMetrics> byIndex = metrics.get(action);
+		if (byIndex == null) {
+			ConcurrentMap<String, ActionMetrics> created = new ConcurrentHashMap<String, ActionMetrics>();
+			byIndex = metrics.putIfAbsent(action, created);
+			if (byIndex == null) {
+				byIndex = created;
+			}
+		}
+		ActionMetrics actionMetrics = byIndex.get(index);
+		if (actionMetrics == null) {
+			ActionMetrics created = new ActionMetrics(action, index);
+			actionMetrics = byIndex.putIfAbsent(index, created);
+			if (actionMetrics == null) {
+				actionMetrics = created;
+				register(created);
+			}
+		}
+		return actionMetrics;
+	}
+
+	public List<ActionMetrics> all() {
+		List<ActionMetrics> all = new ArrayList<ActionMetrics>();
+		for (ConcurrentMap<String, ActionMetrics> byIndex : metrics.values()) {
+			all.addAll(byIndex.values());
+		}
+		Collections.sort(all, new Comparator<ActionMetrics>() {
+			@Override
+			public int compare(ActionMetrics m1, ActionMetrics m2) {
+				int cmp = m1.getAction().compareTo(m2.getAction());
+				return cmp != 0 ? cmp : m1.getIndex().compareTo(m2.getIndex());
+			}
+		});
+		return all;
+	}
+
+	/**
+	 * Met à jour les histogrammes puis affiche le tableau
+	 */
+	public void dump(PrintStream out) {
+		snapshot();
+		print(out);
+	}
+
+	@Override
+	public void close() {
+		reporter.cancel(false);
+		synchronized (registered) {
+			for (ObjectName objectName : registered) {
+				try {
+					server.unregisterMBean(objectName);
+				} catch (JMException e) {
+					//Déjà désenregistré
+				}
+			}
+			registered.clear();
+		}
+	}
+
+	private void report() {
+		snapshot();
+		if (out != null) {
+			print(out);
+		}
+	}
+
+	private void snapshot() {
+		for (ActionMetrics actionMetrics : all()) {
+			actionMetrics.snapshot();
+		}
+	}
+
+	private void print(PrintStream out) {
+		out.println(String.format("%-40s %-16s %8s %8s %8s %9s %9s %9s %10s %10s",
+				"action", "index", "calls", "failures", "rejected", "p50 ms", "p99 ms", "max ms", "sent", "received"));
+		for (ActionMetrics m : all()) {
+			out.println(String.format("%-40s %-16s %8d %8d %8d %9.2f %9.2f %9.2f %10s %10s",
+					m.getAction(), m.getIndex(), m.getCalls(), m.getFailures(), m.getRejections(),
+					m.getP50Millis(), m.getP99Millis(), m.getMaxMillis(),
+					new ByteSizeValue(m.getRequestBytes()), new ByteSizeValue(m.getResponseBytes())));
+		}
+	}
+
+	private void register(ActionMetrics actionMetrics) {
+		try {
+			ObjectName objectName = new ObjectName(DOMAIN + ":type=ClientMetrics"
+					+ ",client=" + ObjectName.quote(name)
+					+ ",action=" + ObjectName.quote(actionMetrics.getAction())
+					+ ",index=" + ObjectName.quote(actionMetrics.getIndex()));
+			server.registerMBean(actionMetrics, objectName);
+			registered.add(objectName);
+		} catch (JMException e) {
+			//Un autre client porte déjà ce nom : les métriques restent disponibles via all() et dump()
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package fr.mgargadennec.es.examples.metrics;
+
+/**
+ * Métriques relevées par le StatsSampler
+ * Les compteurs cumulatifs (cumulative = true) sont stockés en delta depuis l'échantillon précédent, les jauges en
+ * valeur absolue.
+ *
+ * @author mgargadennec
+ *
+ */
+public enum SampledMetric {
+
+	DOCS_INDEXED("docs_indexed", true),
+	INDEX_TIME_MS("index_time_ms", true),
+	INDEX_THROTTLE_MS("index_throttle_ms", true),
+	SEGMENTS("segments", false),
+	SEGMENTS_MEMORY_BYTES("segments_memory_bytes", false),
+	MERGES("merges", true),
+	MERGE_TIME_MS("merge_time_ms", true),
+	CURRENT_MERGES("current_merges", false),
+	REFRESHES("refreshes", true),
+	REFRESH_TIME_MS("refresh_time_ms", true),
+	FILTER_CACHE_BYTES("filter_cache_bytes", false),
+	FIELDDATA_BYTES("fielddata_bytes", false),
+	HEAP_USED_BYTES("heap_used_bytes", false),
+	GC_COUNT("gc_count", true),
+	GC_TIME_MS("gc_time_ms", true),
+	BULK_REJECTED("bulk_rejected", true),
+	INDEX_REJECTED("index_rejected", true),
+	SEARCH_REJECTED("search_rejected", true);
+
+	private final String column;
+	private final boolean cumulative;
+
+	private SampledMetric(String column, boolean cumulative) {
+		this.column = column;
+		this.cumulative = cumulative;
+	}
+
+	/**
+	 * Nom de la colonne CSV
+	 */
+	public String getColumn() {
+		return column;
+	}
+
+	public boolean isCumulative() {
+		return cumulative;
+	}
+}
@@ -0,0 +1,245 @@
+package fr.mgargadennec.es.examples.metrics;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.admin.cluster.node.stats.NodeStats;
+import org.elasticsearch.action.admin.indices.stats.CommonStats;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.monitor.jvm.JvmStats;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.threadpool.ThreadPoolStats;
+
+/**
+ * Echantillonneur des statistiques du cluster
+ * Interroge NodesStats (heap, GC, rejets des pools de threads) et IndicesStats (indexation, segments, merges,
+ * refresh, caches) à intervalle fixe, et conserve les valeurs dans un TimeSeriesBuffer : compteurs en delta depuis
+ * l'échantillon précédent, jauges en valeur absolue.
+ *
+ * Permet de rapprocher, pendant un gros chargement, le débit d'indexation des merges, refresh et pauses GC, sans
+ * outil de supervision externe : export CSV, ou résumé affiché à la demande.
+ *
+ * @author mgargadennec
+ *
+ */
+public class StatsSampler implements Closeable {
+
+	private static final SampledMetric[] METRICS = SampledMetric.values();
+
+	private final Client client;
+	private final String[] indices;
+	private final TimeValue interval;
+	private final TimeSeriesBuffer buffer;
+	private final ScheduledExecutorService scheduler;
+
+	//Utilisés uniquement par le thread d'échantillonnage
+	private final long[] raw = new long[METRICS.length];
+	private final long[] previous = new long[METRICS.length];
+	private final long[] row = new long[METRICS.length];
+	private boolean hasPrevious;
+
+	private StatsSampler(Builder builder) {
+		this.client = builder.client;
+		this.indices = builder.indices;
+		this.interval = builder.interval;
+		this.buffer = new TimeSeriesBuffer(builder.capacity, METRICS.length);
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(EsExecutors.daemonThreadFactory("stats-sampler"));
+	}
+
+	public static Builder builder(Client client) {
+		return new Builder(client);
+	}
+
+	/**
+	 * Démarre l'échantillonnage (un premier relevé sert de référence aux deltas)
+	 */
+	public StatsSampler start() {
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					sample();
+				} catch (RuntimeException e) {
+					//Un relevé manqué ne doit pas arrêter l'échantillonnage
+				}
+			}
+		}, 0, interval.millis(), TimeUnit.MILLISECONDS);
+		return this;
+	}
+
+	public TimeSeriesBuffer getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * Relève un échantillon immédiatement
+	 */
+	public synchronized void sample() {
+		CommonStats stats = client.admin().indices().prepareStats(indices)
+				.clear()
+				.setIndexing(true)
+				.setSegments(true)
+				.setMerge(true)
+				.setRefresh(true)
+				.setFilterCache(true)
+				.setFieldData(true)
+				.get()
+				.getTotal();
+
+		set(SampledMetric.DOCS_INDEXED, stats.getIndexing().getTotal().getIndexCount());
+		set(SampledMetric.INDEX_TIME_MS, stats.getIndexing().getTotal().getIndexTimeInMillis());
+		set(SampledMetric.INDEX_THROTTLE_MS, stats.getIndexing().getTotal().getThrottleTimeInMillis());
+		set(SampledMetric.SEGMENTS, stats.getSegments().getCount());
+		set(SampledMetric.SEGMENTS_MEMORY_BYTES, stats.getSegments().getMemoryInBytes());
+		set(SampledMetric.MERGES, stats.getMerge().getTotal());
+		set(SampledMetric.MERGE_TIME_MS, stats.getMerge().getTotalTimeInMillis());
+		set(SampledMetric.CURRENT_MERGES, stats.getMerge().getCurrent());
+		set(SampledMetric.REFRESHES, stats.getRefresh().getTotal());
+		set(SampledMetric.REFRESH_TIME_MS, stats.getRefresh().getTotalTimeInMillis());
+		set(SampledMetric.FILTER_CACHE_BYTES, stats.getFilterCache().getMemorySizeInBytes());
+		set(SampledMetric.FIELDDATA_BYTES, stats.getFieldData().getMemorySizeInBytes());
+
+		long heapUsed = 0, gcCount = 0, gcTime = 0, bulkRejected = 0, indexRejected = 0, searchRejected = 0;
+		for (NodeStats node : client.admin().cluster().prepareNodesStats().clear().setJvm(true).setThreadPool(true).get().getNodes()) {
+			heapUsed += node.getJvm().getMem().getHeapUsed().bytes();
+			for (JvmStats.GarbageCollector collector : node.getJvm().getGc()) {
+				gcCount += collector.getCollectionCount();
+				gcTime += collector.getCollectionTime().millis();
+			}
+			for (ThreadPoolStats.Stats pool : node.getThreadPool()) {
+				if (ThreadPool.Names.BULK.equals(pool.getName())) {
+					bulkRejected += pool.getRejected();
+				} else if (ThreadPool.Names.INDEX.equals(pool.getName())) {
+					indexRejected += pool.getRejected();
+				} else if (ThreadPool.Names.SEARCH.equals(pool.getName())) {
+					searchRejected += pool.getRejected();
+				}
+			}
+		}
+		set(SampledMetric.HEAP_USED_BYTES, heapUsed);
+		set(SampledMetric.GC_COUNT, gcCount);
+		set(SampledMetric.GC_TIME_MS, gcTime);
+		set(SampledMetric.BULK_REJECTED, bulkRejected);
+		set(SampledMetric.INDEX_REJECTED, indexRejected);
+		set(SampledMetric.SEARCH_REJECTED, searchRejected);
+
+		for (int i = 0; i < METRICS.length; i++) {
+			row[i] = METRICS[i].isCumulative() ? (hasPrevious ? raw[i] - previous[i] : 0) : raw[i];
+			previous[i] = raw[i];
+		}
+		hasPrevious = true;
+		buffer.append(System.currentTimeMillis(), row);
+	}
+
+	/**
+	 * Export CSV : horodatage, durée depuis l'échantillon précédent, puis une colonne par métrique
+	 */
+	public void writeCsv(PrintStream out) {
+		StringBuilder header = new StringBuilder("timestamp,elapsed_ms");
+		for (SampledMetric metric : METRICS) {
+			header.append(',').append(metric.getColumn());
+		}
+		out.println(header);
+		int size = buffer.size();
+		for (int i = 0; i < size; i++) {
+			StringBuilder line = new StringBuilder();
+			line.append(buffer.timestamp(i)).append(',').append(i == 0 ? 0 : buffer.timestamp(i) - buffer.timestamp(i - 1));
+			for (int m = 0; m < METRICS.length; m++) {
+				line.append(',').append(buffer.value(i, m));
+			}
+			out.println(line);
+		}
+	}
+
+	/**
+	 * Résumé sur les échantillons conservés : total et maximum par intervalle pour les compteurs, dernière valeur et
+	 * maximum pour les jauges
+	 */
+	public void printSummary(PrintStream out) {
+		int size = buffer.size();
+		if (size == 0) {
+			out.println("No sample yet");
+			return;
+		}
+		long span = buffer.timestamp(size - 1) - buffer.timestamp(0);
+		out.println(size + " samples over " + TimeValue.timeValueMillis(span));
+		out.println(String.format("%-22s %16s %16s", "metric", "total / last", "max"));
+		for (int m = 0; m < METRICS.length; m++) {
+			long total = 0;
+			long max = Long.MIN_VALUE;
+			for (int i = 0; i < size; i++) {
+				total += buffer.value(i, m);
+				max = Math.max(max, buffer.value(i, m));
+			}
+			long shown = METRICS[m].isCumulative() ? total : buffer.value(size - 1, m);
+			out.println(String.format("%-22s %16s %16s", METRICS[m].getColumn(), format(METRICS[m], shown), format(METRICS[m], max)));
+		}
+		if (span > 0) {
+			out.println(String.format("indexing rate : %.1f docs/s", total(SampledMetric.DOCS_INDEXED) * 1000d / span));
+		}
+	}
+
+	@Override
+	public void close() {
+		scheduler.shutdownNow();
+	}
+
+	private long total(SampledMetric metric) {
+		long total = 0;
+		for (int i = 0; i < buffer.size(); i++) {
+			total += buffer.value(i, metric.ordinal());
+		}
+		return total;
+	}
+
+	private static String format(SampledMetric metric, long value) {
+		return metric.getColumn().endsWith("_bytes") ? new ByteSizeValue(value).toString() : String.valueOf(value);
+	}
+
+	private void set(SampledMetric metric, long value) {
+		raw[metric.ordinal()] = value;
+	}
+
+	public static class Builder {
+
+		private final Client client;
+		private String[] indices = new String[0];
+		private TimeValue interval = TimeValue.timeValueSeconds(1);
+		private int capacity = 3600;
+
+		private Builder(Client client) {
+			this.client = client;
+		}
+
+		/**
+		 * Indices suivis (tous par défaut)
+		 */
+		public Builder indices(String... indices) {
+			this.indices = indices;
+			return this;
+		}
+
+		public Builder interval(TimeValue interval) {
+			this.interval = interval;
+			return this;
+		}
+
+		/**
+		 * Nombre d'échantillons conservés
+		 */
+		public Builder capacity(int capacity) {
+			this.capacity = capacity;
+			return this;
+		}
+
+		public StatsSampler build() {
+			return new StatsSampler(this);
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package fr.mgargadennec.es.examples.metrics;
+
+/**
+ * Tampon circulaire de séries temporelles, en tableaux de long
+ * Capacité fixe : une fois plein, chaque nouvel échantillon remplace le plus ancien. Aucune allocation après la
+ * construction.
+ *
+ * @author mgargadennec
+ *
+ */
+public class TimeSeriesBuffer {
+
+	private final int capacity;
+	private final int columns;
+	private final long[] timestamps;
+	private final long[] values;
+	private int next;
+	private int size;
+
+	public TimeSeriesBuffer(int capacity, int columns) {
+		this.capacity = capacity;
+		this.columns = columns;
+		this.timestamps = new long[capacity];
+		this.values = new long[capacity * columns];
+	}
+
+	/**
+	 * Ajoute un échantillon (row est recopié)
+	 */
+	public synchronized void append(long timestamp, long[] row) {
+		timestamps[next] = timestamp;
+		System.arraycopy(row, 0, values, next * columns, columns);
+		next = (next + 1) % capacity;
+		size = Math.min(size + 1, capacity);
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * Horodatage du i-ème échantillon, du plus ancien (0) au plus récent (size - 1)
+	 */
+	public synchronized long timestamp(int i) {
+		return timestamps[slot(i)];
+	}
+
+	public synchronized long value(int i, int column) {
+		return values[slot(i) * columns + column];
+	}
+
+	private int slot(int i) {
+		if (i < 0 || i >= size) {
+			throw new IndexOutOfBoundsException("Sample " + i + " out of " + size);
+		}
+		return (next - size + i + capacity) % capacity;
+	}
+}
@@ -0,0 +1,144 @@
+package fr.mgargadennec.es.examples.node;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.node.NodeBuilder;
+
+import fr.mgargadennec.es.examples.index.IndexBootstrap;
+
+/**
+ * Noeud embarqué à démarrage rapide
+ * Pour les tests d'intégration et les outils en ligne de commande, le démarrage du noeud et la recréation des index
+ * coûtent souvent plus cher que le travail lui-même. Le profil rapide retire tout ce qui ne sert pas à un noeud
+ * éphémère, seul dans sa JVM :
+ *  - transport local (pas de sockets) et pas de découverte multicast
+ *  - pas de HTTP
+ *  - gateway "none" : aucun cluster state à relire au démarrage
+ *  - store en mémoire (index.store.type = memory), un shard, pas de réplique : rien n'est écrit sur disque,
+ *    tout est perdu à la fermeture du noeud
+ *  - pools de threads dimensionnés pour un seul processeur
+ *
+ * Le profil "default" (fast(false)) démarre le même noeud que les exemples, pour comparaison.
+ * Chaque phase du démarrage est chronométrée dans un StartupTiming.
+ *
+ * @author mgargadennec
+ *
+ */
+public class FastNode implements Closeable {
+
+	private final Node node;
+	private final StartupTiming timing;
+
+	private FastNode(Builder builder) {
+		this.timing = new StartupTiming(builder.fast ? "fast" : "default");
+
+		long start = System.nanoTime();
+		NodeBuilder nodeBuilder = NodeBuilder.nodeBuilder().clusterName(builder.clusterName);
+		if (builder.fast) {
+			nodeBuilder.local(true).settings(ImmutableSettings.settingsBuilder()
+					.put("discovery.zen.ping.multicast.enabled", false)
+					.put("http.enabled", false)
+					.put("gateway.type", "none")
+					.put("index.store.type", "memory")
+					.put("index.number_of_shards", 1)
+					.put("index.number_of_replicas", 0)
+					.put("processors", builder.processors)
+					.put("cluster.routing.allocation.disk.threshold_enabled", false));
+		}
+		nodeBuilder.settings().put(builder.settings.build());
+		this.node = nodeBuilder.node();
+		timing.record(StartupTiming.NODE_CONSTRUCTION, start);
+
+		//Le noeud n'accepte les opérations sur les index qu'une fois le cluster state récupéré (gateway)
+		start = System.nanoTime();
+		node.client().admin().cluster().prepareHealth().setWaitForYellowStatus().get();
+		timing.record(StartupTiming.CLUSTER_STATE_RECOVERY, start);
+	}
+
+	public static Builder builder(String clusterName) {
+		return new Builder(clusterName);
+	}
+
+	public Node node() {
+		return node;
+	}
+
+	public Client client() {
+		return node.client();
+	}
+
+	public StartupTiming getTiming() {
+		return timing;
+	}
+
+	/**
+	 * Crée l'index (settings de chargement) et attend que ses shards primaires soient démarrés
+	 */
+	public FastNode createIndex(IndexBootstrap bootstrap) throws IOException {
+		long start = System.nanoTime();
+		bootstrap.createForLoad();
+		client().admin().cluster().prepareHealth(bootstrap.getIndexName()).setWaitForYellowStatus().get();
+		timing.record(StartupTiming.INDEX_CREATION, start);
+		return this;
+	}
+
+	/**
+	 * Attend qu'une première recherche sur l'index aboutisse (refresh puis recherche sans résultat)
+	 */
+	public FastNode awaitFirstQuery(String indexName) {
+		long start = System.nanoTime();
+		client().admin().indices().prepareRefresh(indexName).get();
+		client().prepareSearch(indexName).setSize(0).get();
+		timing.record(StartupTiming.FIRST_QUERY, start);
+		return this;
+	}
+
+	@Override
+	public void close() {
+		node.close();
+	}
+
+	public static class Builder {
+
+		private final String clusterName;
+		private boolean fast = true;
+		private int processors = 1;
+		private ImmutableSettings.Builder settings = ImmutableSettings.settingsBuilder();
+
+		private Builder(String clusterName) {
+			this.clusterName = clusterName;
+		}
+
+		/**
+		 * Profil rapide (true, par défaut) ou noeud par défaut des exemples (false)
+		 */
+		public Builder fast(boolean fast) {
+			this.fast = fast;
+			return this;
+		}
+
+		/**
+		 * Nombre de processeurs utilisé pour dimensionner les pools de threads (profil rapide uniquement)
+		 */
+		public Builder processors(int processors) {
+			this.processors = processors;
+			return this;
+		}
+
+		/**
+		 * Ajoute/remplace un setting du noeud, appliqué après ceux du profil
+		 */
+		public Builder setting(String key, Object value) {
+			this.settings.put(key, String.valueOf(value));
+			return this;
+		}
+
+		public FastNode build() {
+			return new FastNode(this);
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package fr.mgargadennec.es.examples.node;
+
+import java.io.IOException;
+
+import org.elasticsearch.common.settings.Settings;
+
+import fr.mgargadennec.es.examples.index.IndexBootstrap;
+import fr.mgargadennec.es.examples.index.IndexResources;
+import fr.mgargadennec.es.examples.index.MappingProfile;
+import fr.mgargadennec.es.examples.util.CommandLineOptions;
+
+/**
+ * Temps de démarrage d'un noeud embarqué
+ * Démarre un noeud, crée l'index des exemples (settings et mapping) et attend la première recherche, puis affiche
+ * la décomposition du temps de démarrage. Un seul profil par exécution, pour que le chargement des classes ne
+ * favorise pas le second.
+ *
+ * Options (--option=valeur) :
+ *  --profile : fast ou default (fast)
+ *  --processors : processeurs pris en compte par les pools de threads du profil rapide (1)
+ *  --index : nom de l'index créé (mon_index)
+ *
+ * @author mgargadennec
+ *
+ */
+public class FastNodeMain {
+
+	public static void main(String[] args) throws IOException {
+		Settings options = CommandLineOptions.parse(args);
+		String profile = options.get("profile", "fast");
+		String indexName = options.get("index", "mon_index");
+
+		FastNode node = FastNode.builder("fast-node")
+				.fast("fast".equals(profile))
+				.processors(options.getAsInt("processors", 1))
+				.build();
+
+		node.client().admin().indices().prepareDelete("_all").get();
+		node.createIndex(IndexBootstrap.builder(node.client(), indexName)
+				.settings(IndexResources.SETTINGS)
+				.mapping("mon_type", MappingProfile.HEAP_FIELDDATA)
+				.build());
+		node.awaitFirstQuery(indexName);
+
+		node.getTiming().print(System.out);
+
+		node.close();
+
+		System.exit(0);
+	}
+}
@@ -0,0 +1,100 @@
+package fr.mgargadennec.es.examples.node;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.node.NodeBuilder;
+
+/**
+ * Cluster de plusieurs noeuds dans une seule JVM
+ * Les noeuds sont démarrés en local(true) avec le même nom de cluster : la découverte locale les regroupe en un
+ * seul cluster, et shards et répliques sont répartis entre eux comme sur plusieurs machines. Permet d'observer
+ * l'effet du nombre de noeuds, de shards et de répliques avant de dimensionner le matériel.
+ *
+ * Tous les noeuds partagent le CPU, la mémoire et le disque de la JVM : les mesures indiquent une tendance
+ * (coût des répliques, du fan-out sur les shards), pas le débit d'un vrai cluster.
+ *
+ * @author mgargadennec
+ *
+ */
+public class LocalCluster implements Closeable {
+
+	private final List<Node> nodes = new ArrayList<Node>();
+
+	private LocalCluster(Builder builder) {
+		for (int i = 0; i < builder.nodes; i++) {
+			nodes.add(NodeBuilder.nodeBuilder()
+					.clusterName(builder.clusterName)
+					.local(true)
+					.settings(ImmutableSettings.settingsBuilder()
+							.put("node.name", builder.clusterName + "-" + i)
+							.put("http.enabled", false)
+							//Pas de cluster state relu depuis un tir précédent
+							.put("gateway.type", "none")
+							.put(builder.settings.build()))
+					.node());
+		}
+		client().admin().cluster().prepareHealth()
+				.setWaitForNodes(Integer.toString(builder.nodes))
+				.setWaitForYellowStatus()
+				.get();
+	}
+
+	public static Builder builder(String clusterName) {
+		return new Builder(clusterName);
+	}
+
+	public int size() {
+		return nodes.size();
+	}
+
+	/**
+	 * Client du premier noeud, qui coordonne les requêtes
+	 */
+	public Client client() {
+		return client(0);
+	}
+
+	public Client client(int node) {
+		return nodes.get(node).client();
+	}
+
+	@Override
+	public void close() {
+		for (int i = nodes.size() - 1; i >= 0; i--) {
+			nodes.get(i).close();
+		}
+	}
+
+	public static class Builder {
+
+		private final String clusterName;
+		private int nodes = 1;
+		private ImmutableSettings.Builder settings = ImmutableSettings.settingsBuilder();
+
+		private Builder(String clusterName) {
+			this.clusterName = clusterName;
+		}
+
+		public Builder nodes(int nodes) {
+			this.nodes = nodes;
+			return this;
+		}
+
+		/**
+		 * Ajoute/remplace un setting de tous les noeuds
+		 */
+		public Builder setting(String key, Object value) {
+			this.settings.put(key, String.valueOf(value));
+			return this;
+		}
+
+		public LocalCluster build() {
+			return new LocalCluster(this);
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package fr.mgargadennec.es.examples.node;
+
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.elasticsearch.common.unit.TimeValue;
+
+/**
+ * Décomposition du temps de démarrage d'un noeud embarqué
+ * Chaque phase (construction du noeud, récupération du cluster state, création d'index, première recherche)
+ * est chronométrée séparément, dans l'ordre où elle a été franchie.
+ *
+ * @author mgargadennec
+ *
+ */
+public class StartupTiming {
+
+	public static final String NODE_CONSTRUCTION = "node construction";
+	public static final String CLUSTER_STATE_RECOVERY = "cluster state recovery";
+	public static final String INDEX_CREATION = "index creation";
+	public static final String FIRST_QUERY = "first query ready";
+
+	private final String label;
+	private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+
+	public StartupTiming(String label) {
+		this.label = label;
+	}
+
+	/**
+	 * Enregistre (ou cumule, si la phase est franchie plusieurs fois) la durée d'une phase
+	 * @param startNanos valeur de System.nanoTime() au début de la phase
+	 */
+	public synchronized void record(String phase, long startNanos) {
+		long nanos = System.nanoTime() - startNanos;
+		Long previous = phases.get(phase);
+		phases.put(phase, previous == null ? nanos : previous + nanos);
+	}
+
+	public synchronized TimeValue get(String phase) {
+		Long nanos = phases.get(phase);
+		return nanos == null ? null : TimeValue.timeValueNanos(nanos);
+	}
+
+	public synchronized TimeValue total() {
+		long total = 0;
+		for (long nanos : phases.values()) {
+			total += nanos;
+		}
+		return TimeValue.timeValueNanos(total);
+	}
+
+	public String getLabel() {
+		return label;
+	}
+
+	public synchronized void print(PrintStream out) {
+		out.println("Startup timing (" + label + ")");
+		for (Map.Entry<String, Long> phase : phases.entrySet()) {
+			out.println(String.format("  %-24s %8.1f ms", phase.getKey(), phase.getValue() / 1000000d));
+		}
+		out.println(String.format("  %-24s %8.1f ms", "total", total().nanos() / 1000000d));
+	}
+}
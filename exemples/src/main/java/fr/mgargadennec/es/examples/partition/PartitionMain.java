@@ -0,0 +1,106 @@
+package fr.mgargadennec.es.examples.partition;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.node.NodeBuilder;
+
+import fr.mgargadennec.es.examples.generator.DocumentGenerator;
+import fr.mgargadennec.es.examples.generator.DocumentShape;
+import fr.mgargadennec.es.examples.id.FlakeIdGenerator;
+import fr.mgargadennec.es.examples.index.IndexResources;
+import fr.mgargadennec.es.examples.ingest.AdaptiveBulkIngester;
+import fr.mgargadennec.es.examples.search.CachedFilter;
+import fr.mgargadennec.es.examples.search.FilterRewriter;
+import fr.mgargadennec.es.examples.util.CommandLineOptions;
+
+/**
+ * Partitionnement temporel
+ * Charge le corpus dans des partitions mensuelles ou hebdomadaires (les dates createdAt couvrent les 3 années
+ * précédant la date de référence du générateur), puis compare, pour des recherches sur les N jours précédant cette
+ * date, l'interrogation de toutes les partitions via l'alias et celle des seules partitions qui recoupent la période :
+ * shards interrogés, documents trouvés, temps moyen.
+ *
+ * Options (--option=valeur) :
+ *  --docs         : nombre de documents générés (100000)
+ *  --partitioning : monthly ou weekly (monthly)
+ *  --days         : périodes recherchées, en jours (7,30,90,365)
+ *  --runs         : nombre de recherches par période et par mode (50)
+ *
+ * @author mgargadennec
+ *
+ */
+public class PartitionMain {
+
+	private static final String TYPE = "mon_type";
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Settings options = CommandLineOptions.parse(args);
+		int docs = options.getAsInt("docs", 100000);
+		Partitioning partitioning = Partitioning.valueOf(options.get("partitioning", "monthly").toUpperCase());
+		String[] days = options.getAsArray("days", new String[] { "7", "30", "90", "365" });
+		int runs = options.getAsInt("runs", 50);
+
+		Node node = NodeBuilder.nodeBuilder().clusterName("partitions").local(true).node();
+		Client client = node.client();
+		client.admin().cluster().prepareHealth().setWaitForYellowStatus().get();
+		client.admin().indices().prepareDelete("_all").get();
+
+		//Beaucoup de petites partitions : un seul shard chacune, sans réplique sur ce noeud unique
+		TimePartitionedIndex index = TimePartitionedIndex.builder(client, "mon_index")
+				.partitioning(partitioning)
+				.settings(IndexResources.SETTINGS)
+				.mapping(TYPE, IndexResources.MAPPING)
+				.setting("index.number_of_shards", 1)
+				.replicas(0)
+				.build();
+		index.installForLoad();
+
+		//Les dates sont réparties sur toutes les partitions : chaque bulk touche tous les shards et sature la file
+		//du pool "bulk". L'ingesteur adaptatif réduit son débit et renvoie les documents rejetés.
+		AdaptiveBulkIngester ingester = AdaptiveBulkIngester.builder(client).build();
+		new DocumentGenerator(DocumentShape.FULL, new FlakeIdGenerator()).generate(docs, new PartitionedSink(ingester, index, TYPE));
+		ingester.awaitClose(5, TimeUnit.MINUTES);
+		System.out.println(ingester);
+		index.finishLoad();
+
+		List<String> partitions = index.partitions();
+		System.out.println(partitions.size() + " partitions, from " + partitions.get(0) + " to " + partitions.get(partitions.size() - 1));
+
+		FilterRewriter rewriter = new FilterRewriter();
+		System.out.println(String.format("%-6s %-8s %8s %10s %10s", "days", "search", "shards", "hits", "avg took"));
+		for (String period : days) {
+			CachedFilter filter = CachedFilter.createdAtWithin(TimeValue.timeValueHours(24 * Long.parseLong(period)),
+					DocumentGenerator.DEFAULT_REFERENCE_TIME);
+			QueryBuilder query = rewriter.apply(QueryBuilders.matchAllQuery(), filter);
+			print(period, "alias", client.prepareSearch(index.getReadAlias()), query, runs);
+			print(period, "routed", index.prepareSearch(filter), query, runs);
+		}
+
+		node.close();
+
+		System.exit(0);
+	}
+
+	private static void print(String period, String label, SearchRequestBuilder search, QueryBuilder query, int runs) {
+		search.setQuery(query).setSize(0);
+		SearchResponse response = null;
+		long elapsed = 0;
+		for (int i = 0; i < runs; i++) {
+			long start = System.nanoTime();
+			response = search.get();
+			elapsed += System.nanoTime() - start;
+		}
+		System.out.println(String.format("%-6s %-8s %8d %10d %8.2fms", period, label, response.getTotalShards(),
+				response.getHits().getTotalHits(), elapsed / 1000000d / runs));
+	}
+}
@@ -0,0 +1,68 @@
+package fr.mgargadennec.es.examples.partition;
+
+import java.io.IOException;
+
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.joda.time.format.DateTimeFormatter;
+import org.elasticsearch.common.joda.time.format.ISODateTimeFormat;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentParser.Token;
+
+import com.google.common.base.Throwables;
+
+import fr.mgargadennec.es.examples.generator.DocumentSink;
+import fr.mgargadennec.es.examples.ingest.Ingester;
+
+/**
+ * Envoie les documents générés dans la partition de leur date de création
+ * La date est lue dans le document sérialisé par un parser en streaming, sans le désérialiser en Map : seuls les
+ * champs de premier niveau sont parcourus, les objets et tableaux sont sautés. Un document sans date est écrit dans
+ * la partition courante.
+ *
+ * Comme IndexingSink, l'id du document est passé comme _id.
+ *
+ * @author mgargadennec
+ *
+ */
+public class PartitionedSink implements DocumentSink {
+
+	private static final DateTimeFormatter DATE_PARSER = ISODateTimeFormat.dateOptionalTimeParser().withZoneUTC();
+
+	private final Ingester ingester;
+	private final TimePartitionedIndex index;
+	private final String type;
+
+	public PartitionedSink(Ingester ingester, TimePartitionedIndex index, String type) {
+		this.ingester = ingester;
+		this.index = index;
+		this.type = type;
+	}
+
+	@Override
+	public void accept(String id, BytesReference source) {
+		String partition = index.indexFor(timestampOf(source));
+		ingester.add(new IndexRequest(partition, type, id).source(source.toBytes()));
+	}
+
+	/**
+	 * Valeur du champ date du document (millisecondes ou date ISO), l'heure courante s'il est absent
+	 */
+	private long timestampOf(BytesReference source) {
+		try (XContentParser parser = XContentHelper.createParser(source)) {
+			parser.nextToken();
+			while (parser.nextToken() == Token.FIELD_NAME) {
+				String field = parser.currentName();
+				Token value = parser.nextToken();
+				if (index.getTimestampField().equals(field)) {
+					return value == Token.VALUE_NUMBER ? parser.longValue() : DATE_PARSER.parseMillis(parser.text());
+				}
+				parser.skipChildren();
+			}
+			return System.currentTimeMillis();
+		} catch (IOException e) {
+			throw Throwables.propagate(e);
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package fr.mgargadennec.es.examples.partition;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.elasticsearch.common.joda.time.DateTime;
+import org.elasticsearch.common.joda.time.DateTimeZone;
+import org.elasticsearch.common.joda.time.format.DateTimeFormat;
+import org.elasticsearch.common.joda.time.format.DateTimeFormatter;
+
+/**
+ * Découpage temporel des partitions (en UTC)
+ * Le nom d'une partition est le nom de base suivi de la période : mon_index-2015.06 (mois) ou mon_index-2015.w23
+ * (semaine ISO, l'année est celle de la semaine).
+ *
+ * @author mgargadennec
+ *
+ */
+public enum Partitioning {
+
+	MONTHLY("yyyy.MM") {
+		@Override
+		DateTime start(DateTime time) {
+			return time.withDayOfMonth(1).withTimeAtStartOfDay();
+		}
+
+		@Override
+		DateTime next(DateTime start) {
+			return start.plusMonths(1);
+		}
+	},
+
+	WEEKLY("xxxx.'w'ww") {
+		@Override
+		DateTime start(DateTime time) {
+			//Lundi (ISO 8601)
+			return time.withDayOfWeek(1).withTimeAtStartOfDay();
+		}
+
+		@Override
+		DateTime next(DateTime start) {
+			return start.plusWeeks(1);
+		}
+	};
+
+	private final DateTimeFormatter suffix;
+
+	private Partitioning(String pattern) {
+		this.suffix = DateTimeFormat.forPattern(pattern).withZoneUTC();
+	}
+
+	/**
+	 * Début de la période contenant time
+	 */
+	abstract DateTime start(DateTime time);
+
+	/**
+	 * Début de la période suivante
+	 */
+	abstract DateTime next(DateTime start);
+
+	/**
+	 * Partition contenant la date millis
+	 */
+	public String indexName(String baseName, long millis) {
+		return baseName + "-" + suffix.print(millis);
+	}
+
+	/**
+	 * Partitions qui recoupent l'intervalle [from, to[, de la plus ancienne à la plus récente
+	 */
+	public List<String> indexNames(String baseName, long from, long to) {
+		List<String> names = new ArrayList<String>();
+		for (DateTime start = start(new DateTime(from, DateTimeZone.UTC)); start.getMillis() < to; start = next(start)) {
+			names.add(indexName(baseName, start.getMillis()));
+		}
+		return names;
+	}
+}
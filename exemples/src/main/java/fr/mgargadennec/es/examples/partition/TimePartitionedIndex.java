@@ -0,0 +1,299 @@
+package fr.mgargadennec.es.examples.partition;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthResponse;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthStatus;
+import org.elasticsearch.action.admin.indices.alias.Alias;
+import org.elasticsearch.action.admin.indices.template.put.PutIndexTemplateRequestBuilder;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+
+import fr.mgargadennec.es.examples.index.IndexResources;
+import fr.mgargadennec.es.examples.index.LoadSettings;
+import fr.mgargadennec.es.examples.index.MappingProfile;
+import fr.mgargadennec.es.examples.search.CachedFilter;
+
+/**
+ * Index partitionné par date de création
+ * Chaque document est écrit dans la partition de sa période (mon_index-2015.06 pour un découpage mensuel). Les
+ * partitions ne sont pas créées explicitement : un template (mon_index-*) leur applique settings, mapping et l'alias
+ * de lecture (mon_index) à leur création automatique, lors de la première écriture.
+ *
+ * Une recherche sans filtre sur createdAt passe par l'alias et interroge toutes les partitions. Avec des CachedFilter
+ * sur createdAt, seules les partitions qui recoupent l'intervalle sont interrogées : les données anciennes ne coûtent
+ * plus rien aux recherches récentes. Les partitions absentes (périodes sans document) sont ignorées.
+ *
+ * Comme IndexBootstrap, les partitions sont créées avec des settings de chargement. A la fin du chargement, ils
+ * reprennent la valeur qu'ils auraient eue sans eux (LoadSettings), sur les partitions existantes et dans le template
+ * pour les suivantes. Si la santé voulue n'est pas atteinte dans le délai, finishLoad() échoue.
+ *
+ * @author mgargadennec
+ *
+ */
+public class TimePartitionedIndex {
+
+	private final Client client;
+	private final String baseName;
+	private final Partitioning partitioning;
+	private final String timestampField;
+	private final String type;
+	private final String mappingResource;
+	private final String settingsResource;
+	private final Settings settings;
+	private final Settings loadSettings;
+	private final Settings productionSettings;
+	private final ClusterHealthStatus targetStatus;
+	private final TimeValue timeout;
+	private volatile Settings restoreSettings;
+
+	private TimePartitionedIndex(Builder builder) {
+		this.client = builder.client;
+		this.baseName = builder.baseName;
+		this.partitioning = builder.partitioning;
+		this.timestampField = builder.timestampField;
+		this.type = builder.type;
+		this.mappingResource = builder.mappingResource;
+		this.settingsResource = builder.settingsResource;
+		this.settings = builder.settings.build();
+		this.loadSettings = builder.loadSettings.build();
+		this.productionSettings = builder.productionSettings.build();
+		this.targetStatus = builder.targetStatus;
+		this.timeout = builder.timeout;
+	}
+
+	public static Builder builder(Client client, String baseName) {
+		return new Builder(client, baseName);
+	}
+
+	/**
+	 * Alias de lecture, posé sur toutes les partitions : le nom de base
+	 */
+	public String getReadAlias() {
+		return baseName;
+	}
+
+	public String getTimestampField() {
+		return timestampField;
+	}
+
+	public Partitioning getPartitioning() {
+		return partitioning;
+	}
+
+	/**
+	 * Partition d'un document créé à la date millis
+	 */
+	public String indexFor(long millis) {
+		return partitioning.indexName(baseName, millis);
+	}
+
+	/**
+	 * Installe le template des partitions, avec les settings de chargement
+	 */
+	public void installForLoad() throws IOException {
+		//Valeurs à restaurer, relevées avant d'appliquer les settings de chargement
+		restoreSettings = LoadSettings.restore(client, loadSettings, partitionSettings().build(), productionSettings);
+		putTemplate(loadSettings);
+	}
+
+	/**
+	 * Restaure les settings de production (partitions existantes et template), rend les documents visibles et attend
+	 * la santé voulue
+	 * @throws IllegalStateException si installForLoad() n'a pas été appelé, ou si la santé voulue n'est pas atteinte
+	 *             dans le délai
+	 */
+	public ClusterHealthResponse finishLoad() throws IOException {
+		if (restoreSettings == null) {
+			throw new IllegalStateException("Template [" + baseName + "] was not installed by installForLoad()");
+		}
+		putTemplate(restoreSettings);
+		String pattern = baseName + "-*";
+		if (!restoreSettings.getAsMap().isEmpty()) {
+			client.admin().indices().prepareUpdateSettings(pattern)
+					.setIndicesOptions(IndicesOptions.lenientExpandOpen())
+					.setSettings(restoreSettings)
+					.execute().actionGet();
+		}
+		client.admin().indices().prepareRefresh(pattern).setIndicesOptions(IndicesOptions.lenientExpandOpen()).execute().actionGet();
+		ClusterHealthResponse health = client.admin().cluster().prepareHealth(pattern)
+				.setWaitForStatus(targetStatus)
+				.setTimeout(timeout)
+				.execute().actionGet();
+		if (health.isTimedOut()) {
+			throw new IllegalStateException("Partitions [" + pattern + "] are " + health.getStatus() + ", not " + targetStatus
+					+ " after " + timeout);
+		}
+		return health;
+	}
+
+	/**
+	 * Partitions existantes, de la plus ancienne à la plus récente
+	 */
+	public List<String> partitions() {
+		List<String> partitions = new ArrayList<String>();
+		for (Object index : client.admin().indices().prepareGetAliases(baseName)
+				.setIndicesOptions(IndicesOptions.lenientExpandOpen())
+				.get().getAliases().keys().toArray()) {
+			partitions.add((String) index);
+		}
+		Collections.sort(partitions);
+		return partitions;
+	}
+
+	/**
+	 * Recherche limitée aux partitions qui recoupent les filtres sur createdAt (toutes les partitions si aucun
+	 * filtre ne porte sur createdAt). Les filtres eux-mêmes restent à appliquer à la requête (FilterRewriter.apply).
+	 */
+	public SearchRequestBuilder prepareSearch(CachedFilter... filters) {
+		long from = Long.MIN_VALUE;
+		long to = Long.MAX_VALUE;
+		for (CachedFilter filter : filters) {
+			from = Math.max(from, filter.getCreatedAtFrom());
+			to = Math.min(to, filter.getCreatedAtTo());
+		}
+		if (from == Long.MIN_VALUE || to == Long.MAX_VALUE) {
+			return client.prepareSearch(getReadAlias());
+		}
+
+		List<String> indices = partitioning.indexNames(baseName, from, to);
+		if (indices.isEmpty()) {
+			//Intervalle vide : une seule partition suffit, les filtres n'y trouveront rien
+			indices.add(indexFor(from));
+		}
+		return client.prepareSearch(indices.toArray(new String[indices.size()]))
+				.setIndicesOptions(IndicesOptions.lenientExpandOpen());
+	}
+
+	/**
+	 * Settings des partitions hors chargement : settings.json et settings explicites
+	 */
+	private ImmutableSettings.Builder partitionSettings() throws IOException {
+		ImmutableSettings.Builder partitionSettings = ImmutableSettings.settingsBuilder();
+		if (settingsResource != null) {
+			partitionSettings.loadFromSource(IndexResources.load(settingsResource));
+		}
+		return partitionSettings.put(settings);
+	}
+
+	private void putTemplate(Settings phaseSettings) throws IOException {
+		ImmutableSettings.Builder templateSettings = partitionSettings().put(phaseSettings);
+
+		PutIndexTemplateRequestBuilder template = client.admin().indices().preparePutTemplate(baseName)
+				.setTemplate(baseName + "-*")
+				.setSettings(templateSettings)
+				.addAlias(new Alias(getReadAlias()));
+		if (mappingResource != null) {
+			template.addMapping(type, IndexResources.load(mappingResource));
+		}
+		template.execute().actionGet();
+	}
+
+	public static class Builder {
+
+		private final Client client;
+		private final String baseName;
+		private Partitioning partitioning = Partitioning.MONTHLY;
+		private String timestampField = CachedFilter.CREATED_AT;
+		private String type;
+		private String mappingResource;
+		private String settingsResource;
+		private ImmutableSettings.Builder settings = ImmutableSettings.settingsBuilder();
+		private ImmutableSettings.Builder loadSettings = LoadSettings.defaults();
+		private ImmutableSettings.Builder productionSettings = ImmutableSettings.settingsBuilder();
+		private ClusterHealthStatus targetStatus = ClusterHealthStatus.YELLOW;
+		private TimeValue timeout = TimeValue.timeValueSeconds(30);
+
+		private Builder(Client client, String baseName) {
+			this.client = client;
+			this.baseName = baseName;
+		}
+
+		public Builder partitioning(Partitioning partitioning) {
+			this.partitioning = partitioning;
+			return this;
+		}
+
+		/**
+		 * Champ date qui détermine la partition d'un document (createdAt par défaut)
+		 */
+		public Builder timestampField(String timestampField) {
+			this.timestampField = timestampField;
+			return this;
+		}
+
+		/**
+		 * Mapping du type, chargé depuis le classpath
+		 */
+		public Builder mapping(String type, String mappingResource) {
+			this.type = type;
+			this.mappingResource = mappingResource;
+			return this;
+		}
+
+		/**
+		 * Mapping du profil choisi
+		 */
+		public Builder mapping(String type, MappingProfile profile) {
+			return mapping(type, profile.getResource());
+		}
+
+		/**
+		 * Settings des partitions (analyzers, ...), chargés depuis le classpath
+		 */
+		public Builder settings(String settingsResource) {
+			this.settingsResource = settingsResource;
+			return this;
+		}
+
+		/**
+		 * Ajoute/remplace un setting de toutes les partitions (index.number_of_shards, ...)
+		 */
+		public Builder setting(String key, Object value) {
+			this.settings.put(key, String.valueOf(value));
+			return this;
+		}
+
+		/**
+		 * Ajoute/remplace un setting appliqué uniquement pendant le chargement
+		 */
+		public Builder loadSetting(String key, Object value) {
+			this.loadSettings.put(key, String.valueOf(value));
+			return this;
+		}
+
+		/**
+		 * Ajoute/remplace un setting appliqué à la fin du chargement (par défaut, chaque setting de chargement
+		 * reprend la valeur qu'il aurait eue sans lui)
+		 */
+		public Builder productionSetting(String key, Object value) {
+			this.productionSettings.put(key, String.valueOf(value));
+			return this;
+		}
+
+		public Builder replicas(int replicas) {
+			return productionSetting("index.number_of_replicas", replicas);
+		}
+
+		public Builder targetStatus(ClusterHealthStatus targetStatus) {
+			this.targetStatus = targetStatus;
+			return this;
+		}
+
+		public Builder timeout(TimeValue timeout) {
+			this.timeout = timeout;
+			return this;
+		}
+
+		public TimePartitionedIndex build() {
+			return new TimePartitionedIndex(this);
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package fr.mgargadennec.es.examples.reindex;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.node.NodeBuilder;
+
+import fr.mgargadennec.es.examples.generator.DocumentGenerator;
+import fr.mgargadennec.es.examples.generator.DocumentShape;
+import fr.mgargadennec.es.examples.generator.IndexingSink;
+import fr.mgargadennec.es.examples.id.FlakeIdGenerator;
+import fr.mgargadennec.es.examples.index.IndexBootstrap;
+import fr.mgargadennec.es.examples.index.IndexResources;
+import fr.mgargadennec.es.examples.index.MappingProfile;
+import fr.mgargadennec.es.examples.ingest.BulkIngester;
+import fr.mgargadennec.es.examples.util.CommandLineOptions;
+
+/**
+ * Changement de mapping sans interruption
+ * Pour chaque nombre de shards source : charge le corpus de l'exemple 7 derrière l'alias mon_index (mapping.json),
+ * puis le réindexe avec mapping-docvalues.json pendant qu'un thread interroge l'alias en continu. Affiche le débit de
+ * la réindexation et, côté recherches, le nombre d'échecs et de réponses incomplètes (attendus : 0).
+ *
+ * Options (--option=valeur) :
+ *  --docs        : nombre de documents générés (100000)
+ *  --shards      : nombres de shards de l'index source (1,2,5)
+ *  --parallelism : nombre maximum de shards lus en parallèle (nombre de coeurs)
+ *
+ * @author mgargadennec
+ *
+ */
+public class ReindexMain {
+
+	private static final String ALIAS = "mon_index";
+	private static final String TYPE = "mon_type";
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Settings options = CommandLineOptions.parse(args);
+		int docs = options.getAsInt("docs", 100000);
+		String[] shardCounts = options.getAsArray("shards", new String[] { "1", "2", "5" });
+		int parallelism = options.getAsInt("parallelism", Runtime.getRuntime().availableProcessors());
+
+		Node node = NodeBuilder.nodeBuilder().clusterName("reindex").local(true).node();
+		Client client = node.client();
+		client.admin().cluster().prepareHealth().setWaitForYellowStatus().get();
+
+		for (String shards : shardCounts) {
+			client.admin().indices().prepareDelete("_all").get();
+
+			//Version 1 : mapping.json, chargée à travers l'alias
+			IndexBootstrap bootstrap = Reindexer.builder(client, ALIAS)
+					.settings(IndexResources.SETTINGS)
+					.mapping(TYPE, MappingProfile.HEAP_FIELDDATA)
+					.shards(Integer.parseInt(shards.trim()))
+					.build()
+					.initialize();
+			BulkIngester ingester = BulkIngester.builder(client).build();
+			new DocumentGenerator(DocumentShape.FULL_WITH_CATEGORY, new FlakeIdGenerator()).generate(docs, new IndexingSink(ingester, ALIAS, TYPE));
+			ingester.awaitClose(5, TimeUnit.MINUTES);
+			bootstrap.finishLoad();
+
+			//Recherches continues sur l'alias pendant la réindexation
+			SearchProbe probe = new SearchProbe(client, docs);
+			Thread thread = EsExecutors.daemonThreadFactory("probe").newThread(probe);
+			thread.start();
+
+			//Version 2 : mapping-docvalues.json, même nombre de shards
+			ReindexResult result = Reindexer.builder(client, ALIAS)
+					.settings(IndexResources.SETTINGS)
+					.mapping(TYPE, MappingProfile.DOC_VALUES)
+					.shards(Integer.parseInt(shards.trim()))
+					.parallelism(parallelism)
+					.build()
+					.reindex();
+
+			probe.stop();
+			thread.join();
+			System.out.println(result);
+			System.out.println("  " + result.getExportStats());
+			System.out.println("  " + result.getIngestStats());
+			System.out.println("  " + probe);
+		}
+
+		node.close();
+
+		System.exit(0);
+	}
+
+	/**
+	 * Compte les recherches en échec ou qui ne voient pas tous les documents
+	 */
+	private static class SearchProbe implements Runnable {
+
+		private final Client client;
+		private final long expected;
+		private final AtomicBoolean running = new AtomicBoolean(true);
+		private final AtomicLong searches = new AtomicLong();
+		private final AtomicLong failures = new AtomicLong();
+		private final AtomicLong incomplete = new AtomicLong();
+
+		SearchProbe(Client client, long expected) {
+			this.client = client;
+			this.expected = expected;
+		}
+
+		@Override
+		public void run() {
+			while (running.get()) {
+				searches.incrementAndGet();
+				try {
+					SearchResponse response = client.prepareSearch(ALIAS).setSize(0).get();
+					if (response.getFailedShards() > 0 || response.getHits().getTotalHits() != expected) {
+						incomplete.incrementAndGet();
+					}
+				} catch (Exception e) {
+					failures.incrementAndGet();
+				}
+			}
+		}
+
+		void stop() {
+			running.set(false);
+		}
+
+		@Override
+		public String toString() {
+			return searches.get() + " searches on alias during reindex, " + failures.get() + " failed, " + incomplete.get()
+					+ " incomplete";
+		}
+	}
+}
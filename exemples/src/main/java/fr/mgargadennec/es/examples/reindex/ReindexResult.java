@@ -0,0 +1,67 @@
+package fr.mgargadennec.es.examples.reindex;
+
+import fr.mgargadennec.es.examples.export.ExportStats;
+import fr.mgargadennec.es.examples.ingest.IngestStats;
+
+/**
+ * Bilan d'une réindexation réussie (alias basculé)
+ *
+ * @author mgargadennec
+ *
+ */
+public class ReindexResult {
+
+	private final String source;
+	private final String target;
+	private final int shards;
+	private final long docs;
+	private final ExportStats exportStats;
+	private final IngestStats ingestStats;
+	private final long elapsedMillis;
+
+	ReindexResult(String source, String target, int shards, long docs, ExportStats exportStats, IngestStats ingestStats,
+			long elapsedMillis) {
+		this.source = source;
+		this.target = target;
+		this.shards = shards;
+		this.docs = docs;
+		this.exportStats = exportStats;
+		this.ingestStats = ingestStats;
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+	public String getTarget() {
+		return target;
+	}
+
+	public int getShards() {
+		return shards;
+	}
+
+	public long getDocs() {
+		return docs;
+	}
+
+	public ExportStats getExportStats() {
+		return exportStats;
+	}
+
+	public IngestStats getIngestStats() {
+		return ingestStats;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	@Override
+	public String toString() {
+		long elapsed = Math.max(1, elapsedMillis);
+		return source + " -> " + target + " : " + docs + " documents read from " + shards + " shards in " + elapsed
+				+ "ms (" + (docs * 1000 / elapsed) + " docs/s, refresh and health wait included)";
+	}
+}
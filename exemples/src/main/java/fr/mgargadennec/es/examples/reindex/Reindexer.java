@@ -0,0 +1,309 @@
+package fr.mgargadennec.es.examples.reindex;
+
+import java.io.IOException;
+import java.util.SortedSet;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.SearchHit;
+
+import fr.mgargadennec.es.examples.export.ExportStats;
+import fr.mgargadennec.es.examples.export.HitSink;
+import fr.mgargadennec.es.examples.export.ScrollExporter;
+import fr.mgargadennec.es.examples.index.IndexBootstrap;
+import fr.mgargadennec.es.examples.index.MappingProfile;
+import fr.mgargadennec.es.examples.ingest.BulkIngester;
+
+/**
+ * Réindexation sans interruption de service
+ * Les lectures et écritures passent par un alias (mon_index) posé sur un index versionné (mon_index_v1, mon_index_v2...).
+ * Pour changer de mapping ou de settings :
+ *  - un nouvel index versionné est créé avec le nouveau mapping, optimisé pour le chargement (IndexBootstrap)
+ *  - l'index courant est lu par un scroll SCAN par shard, en parallèle (ScrollExporter)
+ *  - chaque document est recopié tel quel (même _id, même _source) dans un BulkIngester, avec autant de bulks en vol
+ *    que de shards lus : le débit suit le nombre de shards de l'index source
+ *  - les settings de production sont restaurés, et le nombre de documents des deux index est comparé
+ *  - l'alias est basculé en une seule requête (removeAlias + addAlias) : les recherches voient l'ancien index, puis
+ *    le nouveau, jamais aucun des deux
+ *
+ * Si les nombres de documents diffèrent (écritures pendant la réindexation, échecs de bulk), l'alias n'est pas
+ * basculé : le nouvel index est conservé pour analyse. Les écritures doivent donc être suspendues pendant la
+ * réindexation. L'ancien index est conservé après la bascule (retour arrière par une nouvelle bascule), sauf
+ * deleteSource(true).
+ *
+ * @author mgargadennec
+ *
+ */
+public class Reindexer {
+
+	private static final String VERSION_SEPARATOR = "_v";
+
+	/**
+	 * Attente des bulks en vol quand la lecture de l'index source échoue
+	 */
+	private static final TimeValue ABORT_TIMEOUT = TimeValue.timeValueSeconds(30);
+
+	private final Client client;
+	private final String alias;
+	private final String type;
+	private final String mappingResource;
+	private final String settingsResource;
+	private final int shards;
+	private final int size;
+	private final int parallelism;
+	private final boolean deleteSource;
+	private final TimeValue timeout;
+
+	private Reindexer(Builder builder) {
+		this.client = builder.client;
+		this.alias = builder.alias;
+		this.type = builder.type;
+		this.mappingResource = builder.mappingResource;
+		this.settingsResource = builder.settingsResource;
+		this.shards = builder.shards;
+		this.size = builder.size;
+		this.parallelism = builder.parallelism;
+		this.deleteSource = builder.deleteSource;
+		this.timeout = builder.timeout;
+	}
+
+	public static Builder builder(Client client, String alias) {
+		return new Builder(client, alias);
+	}
+
+	/**
+	 * Index actuellement désigné par l'alias (null si l'alias n'existe pas)
+	 */
+	public String current() {
+		if (client.admin().indices().prepareExists(alias).get().isExists()
+				&& !client.admin().indices().prepareAliasesExist(alias).get().isExists()) {
+			throw new IllegalStateException("[" + alias + "] is an index, not an alias : it must be reindexed once "
+					+ "into a versioned index with a downtime");
+		}
+		GetAliasesResponse aliases = client.admin().indices().prepareGetAliases(alias).get();
+		if (aliases.getAliases().isEmpty()) {
+			return null;
+		}
+		if (aliases.getAliases().size() > 1) {
+			throw new IllegalStateException("Alias [" + alias + "] points to " + aliases.getAliases().size() + " indices");
+		}
+		return aliases.getAliases().keys().iterator().next().value;
+	}
+
+	/**
+	 * Première version : crée l'index versionné, optimisé pour le chargement, et pose l'alias dessus
+	 * @return l'initialisation de l'index, dont finishLoad() est à appeler après le chargement
+	 */
+	public IndexBootstrap initialize() throws IOException {
+		if (current() != null) {
+			throw new IllegalStateException("Alias [" + alias + "] already exists");
+		}
+		IndexBootstrap bootstrap = bootstrap(nextVersion(null));
+		bootstrap.createForLoad();
+		client.admin().indices().prepareAliases().addAlias(bootstrap.getIndexName(), alias).get();
+		return bootstrap;
+	}
+
+	/**
+	 * Recopie l'index courant dans un nouvel index versionné, puis bascule l'alias
+	 */
+	public ReindexResult reindex() throws IOException, InterruptedException {
+		String source = current();
+		if (source == null) {
+			throw new IllegalStateException("Alias [" + alias + "] does not exist");
+		}
+		long startNanos = System.nanoTime();
+
+		IndexBootstrap bootstrap = bootstrap(nextVersion(source));
+		final String target = bootstrap.getIndexName();
+		bootstrap.createForLoad();
+
+		ScrollExporter exporter = ScrollExporter.builder(client, source)
+				.size(size)
+				.parallelism(parallelism)
+				.build();
+		SortedSet<Integer> sourceShards = exporter.shards();
+		final BulkIngester ingester = BulkIngester.builder(client)
+				.name("reindex")
+				.concurrentRequests(Math.min(parallelism, sourceShards.size()))
+				.build();
+		ExportStats exported = null;
+		try {
+			exported = exporter.export(new HitSink() {
+				@Override
+				public void accept(int shard, SearchHit hit) {
+					if (hit.isSourceEmpty()) {
+						throw new IllegalStateException("Document [" + hit.getIndex() + "/" + hit.getType() + "/" + hit.getId()
+								+ "] has no _source : it cannot be reindexed");
+					}
+					//Le _source de la réponse de scroll n'est pas réutilisé : il est passé au bulk sans copie
+					ingester.add(new IndexRequest(target, hit.getType(), hit.getId()).source(hit.sourceRef(), false));
+				}
+
+				@Override
+				public void close() {
+				}
+			});
+		} finally {
+			if (exported == null) {
+				//Lecture interrompue : les bulks en vol sont attendus un temps borné, le nouvel index est conservé pour
+				//analyse et l'alias n'est pas basculé
+				abort(ingester);
+			}
+		}
+		if (!ingester.awaitClose(timeout.millis(), TimeUnit.MILLISECONDS)) {
+			throw new IllegalStateException("Reindexing into [" + target + "] did not finish within " + timeout);
+		}
+		bootstrap.finishLoad();
+
+		long sourceCount = client.prepareCount(source).get().getCount();
+		long targetCount = client.prepareCount(target).get().getCount();
+		if (sourceCount != targetCount || exported.getDocs() != sourceCount || ingester.getStats().hasFailures()) {
+			throw new IllegalStateException("Alias [" + alias + "] left on [" + source + "] : " + sourceCount
+					+ " documents in source, " + exported.getDocs() + " exported, " + targetCount + " in [" + target
+					+ "], " + ingester.getStats().getFailures() + " bulk failures");
+		}
+
+		//Bascule atomique : une seule mise à jour de l'état du cluster
+		client.admin().indices().prepareAliases()
+				.removeAlias(source, alias)
+				.addAlias(target, alias)
+				.get();
+		if (deleteSource) {
+			client.admin().indices().prepareDelete(source).get();
+		}
+		return new ReindexResult(source, target, sourceShards.size(), targetCount, exported, ingester.getStats(),
+				(System.nanoTime() - startNanos) / 1000000);
+	}
+
+	private static void abort(BulkIngester ingester) {
+		try {
+			ingester.awaitClose(ABORT_TIMEOUT.millis(), TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private IndexBootstrap bootstrap(String indexName) {
+		IndexBootstrap.Builder bootstrap = IndexBootstrap.builder(client, indexName)
+				.settings(settingsResource)
+				.mapping(type, mappingResource)
+				.timeout(timeout);
+		if (shards > 0) {
+			//Appliqué à la création uniquement : le nombre de shards n'est pas modifiable ensuite
+			bootstrap.loadSetting("index.number_of_shards", shards);
+		}
+		return bootstrap.build();
+	}
+
+	/**
+	 * mon_index_v{N+1} pour mon_index_vN (mon_index_v1 pour la première version), en sautant les versions déjà
+	 * présentes (réindexation précédente interrompue)
+	 */
+	private String nextVersion(String current) {
+		int version = 0;
+		String prefix = alias + VERSION_SEPARATOR;
+		if (current != null && current.startsWith(prefix)) {
+			try {
+				version = Integer.parseInt(current.substring(prefix.length()));
+			} catch (NumberFormatException e) {
+				version = 0;
+			}
+		}
+		String next;
+		do {
+			next = prefix + (++version);
+		} while (client.admin().indices().prepareExists(next).get().isExists());
+		return next;
+	}
+
+	public static class Builder {
+
+		private final Client client;
+		private final String alias;
+		private String type;
+		private String mappingResource;
+		private String settingsResource;
+		private int shards;
+		private int size = 500;
+		private int parallelism = Runtime.getRuntime().availableProcessors();
+		private boolean deleteSource = false;
+		private TimeValue timeout = TimeValue.timeValueMinutes(30);
+
+		private Builder(Client client, String alias) {
+			this.client = client;
+			this.alias = alias;
+		}
+
+		/**
+		 * Mapping du nouvel index, chargé depuis le classpath
+		 */
+		public Builder mapping(String type, String mappingResource) {
+			this.type = type;
+			this.mappingResource = mappingResource;
+			return this;
+		}
+
+		/**
+		 * Mapping du profil choisi
+		 */
+		public Builder mapping(String type, MappingProfile profile) {
+			return mapping(type, profile.getResource());
+		}
+
+		/**
+		 * Settings du nouvel index (analyzers, ...), chargés depuis le classpath
+		 */
+		public Builder settings(String settingsResource) {
+			this.settingsResource = settingsResource;
+			return this;
+		}
+
+		/**
+		 * Nombre de shards du nouvel index (par défaut : celui de settings.json ou d'Elasticsearch)
+		 */
+		public Builder shards(int shards) {
+			this.shards = shards;
+			return this;
+		}
+
+		/**
+		 * Nombre de documents par scroll et par shard
+		 */
+		public Builder size(int size) {
+			this.size = size;
+			return this;
+		}
+
+		/**
+		 * Nombre maximum de shards lus en parallèle (et de bulks en vol)
+		 */
+		public Builder parallelism(int parallelism) {
+			this.parallelism = parallelism;
+			return this;
+		}
+
+		/**
+		 * Supprime l'ancien index après la bascule
+		 */
+		public Builder deleteSource(boolean deleteSource) {
+			this.deleteSource = deleteSource;
+			return this;
+		}
+
+		/**
+		 * Durée maximale de l'écriture des derniers bulks et de l'attente de santé du nouvel index
+		 */
+		public Builder timeout(TimeValue timeout) {
+			this.timeout = timeout;
+			return this;
+		}
+
+		public Reindexer build() {
+			return new Reindexer(this);
+		}
+	}
+}
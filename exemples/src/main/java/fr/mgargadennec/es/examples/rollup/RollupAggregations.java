@@ -0,0 +1,125 @@
+package fr.mgargadennec.es.examples.rollup;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.base.Strings;
+import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.metrics.sum.Sum;
+
+import fr.mgargadennec.es.examples.search.CachedFilter;
+
+/**
+ * Agrégation année / catégorie de l'exemple 7, servie par le rollup quand c'est possible
+ *  - sans saisie, ou avec un simple intervalle d'années : lecture de l'index de rollup (quelques milliers de buckets
+ *    au lieu de tous les documents)
+ *  - avec une recherche plein texte : agrégation sur les documents correspondants, comme dans l'exemple 7
+ *
+ * @author mgargadennec
+ *
+ */
+public class RollupAggregations {
+
+	private static final int YEARS = 25;
+	private static final int CATEGORIES = 5;
+
+	private final Client client;
+	private final String indexName;
+	private final String rollupIndex;
+
+	public RollupAggregations(Client client, String indexName, String rollupIndex) {
+		this.client = client;
+		this.indexName = indexName;
+		this.rollupIndex = rollupIndex;
+	}
+
+	public YearCategoryCounts byYearAndCategory(String queryString) {
+		return byYearAndCategory(queryString, null, null);
+	}
+
+	/**
+	 * @param queryString la saisie utilisateur (vide : tous les documents)
+	 * @param fromYear première année retenue (null : pas de borne)
+	 * @param toYear dernière année retenue (null : pas de borne)
+	 */
+	public YearCategoryCounts byYearAndCategory(String queryString, Integer fromYear, Integer toYear) {
+		if (Strings.isNullOrEmpty(queryString)) {
+			return fromRollup(fromYear, toYear);
+		}
+		return live(queryString, fromYear, toYear);
+	}
+
+	private YearCategoryCounts fromRollup(Integer fromYear, Integer toYear) {
+		QueryBuilder query = QueryBuilders.matchAllQuery();
+		if (fromYear != null || toYear != null) {
+			query = QueryBuilders.filteredQuery(query,
+					FilterBuilders.rangeFilter(YearCategoryRollup.YEAR).gte(fromYear).lte(toYear));
+		}
+		//Les documents du rollup sont des buckets : on somme leurs compteurs au lieu de compter les documents
+		SearchResponse response = client.prepareSearch(rollupIndex)
+				.setSize(0)
+				.setQuery(query)
+				.addAggregation(AggregationBuilders
+						.terms("byYear")
+						.field(YearCategoryRollup.YEAR)
+						.size(YEARS)
+						.order(Terms.Order.term(false))
+						.subAggregation(AggregationBuilders.sum("count").field(YearCategoryRollup.COUNT))
+						.subAggregation(AggregationBuilders
+								.terms("byCategory")
+								.field(YearCategoryRollup.CATEGORY)
+								.size(CATEGORIES)
+								.order(Terms.Order.aggregation("count", false))
+								.subAggregation(AggregationBuilders.sum("count").field(YearCategoryRollup.COUNT))))
+				.get();
+
+		YearCategoryCounts counts = new YearCategoryCounts(true, response.getTookInMillis());
+		Terms byYear = response.getAggregations().get("byYear");
+		for (Terms.Bucket year : byYear.getBuckets()) {
+			int key = year.getKeyAsNumber().intValue();
+			counts.addYear(key, (long) ((Sum) year.getAggregations().get("count")).getValue());
+			Terms byCategory = year.getAggregations().get("byCategory");
+			for (Terms.Bucket category : byCategory.getBuckets()) {
+				counts.addCategory(key, category.getKey(), (long) ((Sum) category.getAggregations().get("count")).getValue());
+			}
+		}
+		return counts;
+	}
+
+	private YearCategoryCounts live(String queryString, Integer fromYear, Integer toYear) {
+		QueryBuilder query = QueryBuilders.simpleQueryStringQuery(queryString);
+		if (fromYear != null || toYear != null) {
+			query = QueryBuilders.filteredQuery(query, CachedFilter.yearBetween(
+					fromYear != null ? fromYear : Integer.MIN_VALUE,
+					toYear != null ? toYear : Integer.MAX_VALUE).getFilter());
+		}
+		SearchResponse response = client.prepareSearch(indexName)
+				.setSize(0)
+				.setQuery(query)
+				.addAggregation(AggregationBuilders
+						.terms("byYear")
+						.field("year")
+						.size(YEARS)
+						.order(Terms.Order.term(false))
+						.subAggregation(AggregationBuilders
+								.terms("byCategory")
+								.field("category")
+								.size(CATEGORIES)))
+				.get();
+
+		YearCategoryCounts counts = new YearCategoryCounts(false, response.getTookInMillis());
+		Terms byYear = response.getAggregations().get("byYear");
+		for (Terms.Bucket year : byYear.getBuckets()) {
+			int key = year.getKeyAsNumber().intValue();
+			counts.addYear(key, year.getDocCount());
+			Terms byCategory = year.getAggregations().get("byCategory");
+			for (Terms.Bucket category : byCategory.getBuckets()) {
+				counts.addCategory(key, category.getKey(), category.getDocCount());
+			}
+		}
+		return counts;
+	}
+}
@@ -0,0 +1,63 @@
+package fr.mgargadennec.es.examples.rollup;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Résultat de l'agrégation année / catégorie de l'exemple 7 : nombre de documents par année (années décroissantes),
+ * et pour chacune les catégories les plus représentées
+ *
+ * @author mgargadennec
+ *
+ */
+public class YearCategoryCounts {
+
+	private final Map<Integer, Long> years = new LinkedHashMap<Integer, Long>();
+	private final Map<Integer, Map<String, Long>> categories = new LinkedHashMap<Integer, Map<String, Long>>();
+	private final boolean fromRollup;
+	private final long tookInMillis;
+
+	YearCategoryCounts(boolean fromRollup, long tookInMillis) {
+		this.fromRollup = fromRollup;
+		this.tookInMillis = tookInMillis;
+	}
+
+	void addYear(int year, long count) {
+		years.put(year, count);
+		categories.put(year, new LinkedHashMap<String, Long>());
+	}
+
+	void addCategory(int year, String category, long count) {
+		categories.get(year).put(category, count);
+	}
+
+	public Map<Integer, Long> getYears() {
+		return years;
+	}
+
+	public Map<String, Long> getCategories(int year) {
+		return categories.get(year);
+	}
+
+	/**
+	 * Vrai si le résultat a été lu dans l'index de rollup, faux s'il a été calculé sur les documents
+	 */
+	public boolean isFromRollup() {
+		return fromRollup;
+	}
+
+	public long getTookInMillis() {
+		return tookInMillis;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(fromRollup ? "From rollup" : "Live aggregation").append(" in ").append(tookInMillis).append("ms\n");
+		for (Map.Entry<Integer, Long> year : years.entrySet()) {
+			sb.append(year.getKey()).append(" : ").append(year.getValue()).append(" documents ")
+					.append(categories.get(year.getKey())).append('\n');
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,420 @@
+package fr.mgargadennec.es.examples.rollup;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequestBuilder;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.rest.RestStatus;
+
+/**
+ * Rollup (année, catégorie) -> nombre de documents, maintenu à l'ingestion
+ * Branché comme listener du BulkIngester : après chaque bulk, les documents effectivement créés sont comptés par
+ * bucket, et les compteurs sont reportés périodiquement dans un petit index dédié (un document par bucket).
+ *
+ * Le report est un read-modify-write versionné (multiGet puis bulk avec version ou create) : plusieurs processus
+ * d'ingestion peuvent alimenter le même rollup, les conflits de version sont rejoués (maxAttempts passes au plus).
+ * Aucun script n'est nécessaire (les scripts dynamiques sont désactivés par défaut).
+ *
+ * Un compteur n'est jamais reporté deux fois : les échecs sûrs sont retentés au flush suivant, les échecs d'issue
+ * inconnue (transport) sont comptés dans getUncertain(). Les échecs sont exposés par les getters et toString().
+ *
+ * Le report périodique est bloquant (multiGet, bulk, refresh) : il s'exécute sur un thread dédié, pas sur le
+ * scheduler partagé d'Elasticsearch.
+ *
+ * Seules les créations sont comptées : les mises à jour d'un document existant et les suppressions ne sont pas
+ * répercutées.
+ *
+ * @author mgargadennec
+ *
+ */
+public class YearCategoryRollup implements BulkProcessor.Listener, Closeable {
+
+	public static final String TYPE = "bucket";
+	public static final String YEAR = "year";
+	public static final String CATEGORY = "category";
+	public static final String COUNT = "count";
+
+	private static final long NOT_FOUND = -1;
+
+	private final Client client;
+	private final String sourceIndex;
+	private final String rollupIndex;
+	private final ConcurrentMap<Bucket, AtomicLong> deltas = new ConcurrentHashMap<Bucket, AtomicLong>();
+	private final int maxAttempts;
+	private final AtomicLong failedFlushes = new AtomicLong();
+	private final AtomicLong uncertain = new AtomicLong();
+	private volatile Throwable lastFailure;
+	private final ScheduledExecutorService flusher;
+
+	private YearCategoryRollup(Builder builder) throws IOException {
+		this.client = builder.client;
+		this.sourceIndex = builder.sourceIndex;
+		this.rollupIndex = builder.rollupIndex != null ? builder.rollupIndex : rollupIndexOf(sourceIndex);
+		this.maxAttempts = builder.maxAttempts;
+		createIndexIfMissing();
+		this.flusher = Executors.newSingleThreadScheduledExecutor(EsExecutors.daemonThreadFactory("rollup-flush"));
+		flusher.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				flush();
+			}
+		}, builder.flushInterval.millis(), builder.flushInterval.millis(), TimeUnit.MILLISECONDS);
+	}
+
+	public static Builder builder(Client client, String sourceIndex) {
+		return new Builder(client, sourceIndex);
+	}
+
+	/**
+	 * Nom par défaut de l'index de rollup d'un index
+	 */
+	public static String rollupIndexOf(String sourceIndex) {
+		return sourceIndex + "_rollup";
+	}
+
+	public String getRollupIndex() {
+		return rollupIndex;
+	}
+
+	/**
+	 * Comptabilise des documents indexés hors du BulkIngester
+	 */
+	public void record(int year, String category, long count) {
+		Bucket bucket = new Bucket(year, category);
+		AtomicLong delta = deltas.get(bucket);
+		if (delta == null) {
+			AtomicLong created = new AtomicLong();
+			delta = deltas.putIfAbsent(bucket, created);
+			if (delta == null) {
+				delta = created;
+			}
+		}
+		delta.addAndGet(count);
+	}
+
+	@Override
+	public void beforeBulk(long executionId, BulkRequest request) {
+	}
+
+	@Override
+	public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+		BulkItemResponse[] items = response.getItems();
+		for (int i = 0; i < items.length; i++) {
+			if (items[i].isFailed() || !(items[i].getResponse() instanceof IndexResponse)
+					|| !((IndexResponse) items[i].getResponse()).isCreated()) {
+				continue;
+			}
+			ActionRequest<?> action = request.requests().get(i);
+			if (action instanceof IndexRequest && sourceIndex.equals(((IndexRequest) action).index())) {
+				record((IndexRequest) action);
+			}
+		}
+	}
+
+	@Override
+	public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+		//Aucun document créé : rien à compter
+	}
+
+	/**
+	 * Reporte les compteurs en attente dans l'index de rollup, et le rafraîchit
+	 */
+	public synchronized void flush() {
+		Map<Bucket, Long> pending = new HashMap<Bucket, Long>();
+		for (Map.Entry<Bucket, AtomicLong> entry : deltas.entrySet()) {
+			long delta = entry.getValue().getAndSet(0);
+			if (delta != 0) {
+				pending.put(entry.getKey(), delta);
+			}
+		}
+		if (pending.isEmpty()) {
+			return;
+		}
+
+		try {
+			for (int attempt = 1; !pending.isEmpty(); attempt++) {
+				if (attempt > maxAttempts) {
+					throw new IllegalStateException(pending.size() + " rollup buckets still in conflict after "
+							+ maxAttempts + " attempts");
+				}
+				apply(pending);
+			}
+			client.admin().indices().prepareRefresh(rollupIndex).get();
+		} catch (RuntimeException e) {
+			//apply() ne laisse dans pending que des buckets dont on sait qu'ils n'ont pas été reportés : ils seront
+			//retentés au prochain flush
+			for (Map.Entry<Bucket, Long> entry : pending.entrySet()) {
+				record(entry.getKey().year, entry.getKey().category, entry.getValue());
+			}
+			failedFlushes.incrementAndGet();
+			lastFailure = e;
+		}
+	}
+
+	/**
+	 * Nombre de flush en échec (les compteurs concernés sont retentés, sauf ceux comptés dans getUncertain())
+	 */
+	public long getFailedFlushes() {
+		return failedFlushes.get();
+	}
+
+	/**
+	 * Documents dont le report est incertain (bulk en échec côté transport, peut-être appliqué par le serveur) :
+	 * ils ne sont pas retentés, pour ne jamais compter deux fois, et peuvent donc manquer au rollup
+	 */
+	public long getUncertain() {
+		return uncertain.get();
+	}
+
+	/**
+	 * Dernière erreur de flush (null si aucune)
+	 */
+	public Throwable getLastFailure() {
+		return lastFailure;
+	}
+
+	@Override
+	public String toString() {
+		return "Rollup " + rollupIndex + " : " + failedFlushes.get() + " failed flushes, " + uncertain.get()
+				+ " documents with an uncertain count" + (lastFailure == null ? "" : " (last failure : "
+				+ lastFailure.getMessage() + ")");
+	}
+
+	@Override
+	public void close() {
+		//Pas d'interruption : un flush en cours se termine, le dernier flush attend sa fin (synchronized)
+		flusher.shutdown();
+		flush();
+	}
+
+	/**
+	 * Une passe de read-modify-write ; les buckets reportés sont retirés de pending, ceux en conflit y restent.
+	 * En cas d'échec, pending ne contient plus que des buckets dont on sait qu'ils n'ont pas été reportés.
+	 */
+	private void apply(Map<Bucket, Long> pending) {
+		Bucket[] buckets = pending.keySet().toArray(new Bucket[pending.size()]);
+		MultiGetResponse existing = get(buckets);
+
+		//Version lue pour chaque bucket, NOT_FOUND s'il n'existait pas encore
+		long[] versions = new long[buckets.length];
+		BulkRequestBuilder bulk = client.prepareBulk();
+		for (int i = 0; i < buckets.length; i++) {
+			MultiGetItemResponse item = existing.getResponses()[i];
+			long count = pending.get(buckets[i]);
+			IndexRequestBuilder index = client.prepareIndex(rollupIndex, TYPE, buckets[i].id());
+			if (!item.isFailed() && item.getResponse().isExists()) {
+				count += ((Number) item.getResponse().getSource().get(COUNT)).longValue();
+				versions[i] = item.getResponse().getVersion();
+				index.setVersion(versions[i]);
+			} else {
+				versions[i] = NOT_FOUND;
+				index.setCreate(true);
+			}
+			bulk.add(index.setSource(YEAR, buckets[i].year, CATEGORY, buckets[i].category, COUNT, count));
+		}
+
+		BulkItemResponse[] results;
+		try {
+			results = bulk.get().getItems();
+		} catch (RuntimeException e) {
+			//Issue inconnue : le serveur a pu appliquer tout ou partie du bulk
+			keepUnchanged(pending, buckets, versions);
+			throw e;
+		}
+
+		StringBuilder failures = null;
+		for (int i = 0; i < results.length; i++) {
+			if (!results[i].isFailed()) {
+				pending.remove(buckets[i]);
+			} else if (results[i].getFailure().getStatus() != RestStatus.CONFLICT) {
+				failures = failures == null ? new StringBuilder() : failures.append(", ");
+				failures.append(buckets[i].id()).append(" : ").append(results[i].getFailureMessage());
+			}
+		}
+		if (failures != null) {
+			throw new IllegalStateException("Unable to update rollup buckets " + failures);
+		}
+	}
+
+	/**
+	 * Après un bulk d'issue inconnue : seuls les buckets toujours à la version lue avant le bulk restent dans pending.
+	 * Les autres ont pu être reportés (par ce bulk ou par un autre processus) : ils sont retirés et comptés comme
+	 * incertains. Si la relecture échoue elle aussi, tous les buckets sont incertains.
+	 */
+	private void keepUnchanged(Map<Bucket, Long> pending, Bucket[] buckets, long[] versions) {
+		MultiGetResponse current = null;
+		try {
+			current = get(buckets);
+		} catch (RuntimeException e) {
+			//Rien ne permet de savoir ce qui a été appliqué
+		}
+		for (int i = 0; i < buckets.length; i++) {
+			MultiGetItemResponse item = current == null ? null : current.getResponses()[i];
+			boolean unchanged = item != null && !item.isFailed() && (item.getResponse().isExists()
+					? item.getResponse().getVersion() == versions[i]
+					: versions[i] == NOT_FOUND);
+			if (!unchanged) {
+				uncertain.addAndGet(pending.remove(buckets[i]));
+			}
+		}
+	}
+
+	private MultiGetResponse get(Bucket[] buckets) {
+		MultiGetRequestBuilder multiGet = client.prepareMultiGet().setRealtime(true);
+		for (Bucket bucket : buckets) {
+			multiGet.add(rollupIndex, TYPE, bucket.id());
+		}
+		return multiGet.get();
+	}
+
+	private void record(IndexRequest request) {
+		Integer year = null;
+		String category = null;
+		//Lecture en streaming des seuls champs de premier niveau year et category
+		try (XContentParser parser = XContentHelper.createParser(request.source())) {
+			if (parser.nextToken() != XContentParser.Token.START_OBJECT) {
+				return;
+			}
+			XContentParser.Token token;
+			String field = null;
+			while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT && token != null) {
+				if (token == XContentParser.Token.FIELD_NAME) {
+					field = parser.currentName();
+				} else if (token == XContentParser.Token.START_OBJECT || token == XContentParser.Token.START_ARRAY) {
+					parser.skipChildren();
+				} else if (YEAR.equals(field) && token == XContentParser.Token.VALUE_NUMBER) {
+					year = parser.intValue();
+				} else if (CATEGORY.equals(field) && token == XContentParser.Token.VALUE_STRING) {
+					category = parser.text();
+				}
+			}
+		} catch (IOException e) {
+			return;
+		}
+		if (year != null && category != null) {
+			record(year, category, 1);
+		}
+	}
+
+	private void createIndexIfMissing() throws IOException {
+		if (client.admin().indices().prepareExists(rollupIndex).get().isExists()) {
+			return;
+		}
+		XContentBuilder mapping = XContentFactory.jsonBuilder()
+				.startObject()
+					.startObject(TYPE)
+						.startObject("properties")
+							.startObject(YEAR).field("type", "integer").endObject()
+							.startObject(CATEGORY).field("type", "string").field("index", "not_analyzed").endObject()
+							.startObject(COUNT).field("type", "long").endObject()
+						.endObject()
+					.endObject()
+				.endObject();
+		//Un seul shard : l'index est petit, et les tris par sous-agrégation y sont exacts
+		client.admin().indices().prepareCreate(rollupIndex)
+				.setSettings("number_of_shards", 1)
+				.addMapping(TYPE, mapping)
+				.get();
+		client.admin().cluster().prepareHealth(rollupIndex).setWaitForYellowStatus().get();
+	}
+
+	private static class Bucket {
+
+		private final int year;
+		private final String category;
+
+		Bucket(int year, String category) {
+			this.year = year;
+			this.category = category;
+		}
+
+		String id() {
+			return year + "|" + category;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Bucket)) {
+				return false;
+			}
+			Bucket other = (Bucket) o;
+			return year == other.year && category.equals(other.category);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * year + category.hashCode();
+		}
+	}
+
+	public static class Builder {
+
+		private final Client client;
+		private final String sourceIndex;
+		private String rollupIndex;
+		private TimeValue flushInterval = TimeValue.timeValueSeconds(1);
+		private int maxAttempts = 10;
+
+		private Builder(Client client, String sourceIndex) {
+			this.client = client;
+			this.sourceIndex = sourceIndex;
+		}
+
+		/**
+		 * Nom de l'index de rollup (par défaut : sourceIndex_rollup)
+		 */
+		public Builder rollupIndex(String rollupIndex) {
+			this.rollupIndex = rollupIndex;
+			return this;
+		}
+
+		/**
+		 * Intervalle de report des compteurs dans l'index de rollup
+		 */
+		public Builder flushInterval(TimeValue flushInterval) {
+			this.flushInterval = flushInterval;
+			return this;
+		}
+
+		/**
+		 * Nombre maximum de passes read-modify-write par flush (conflits de version avec d'autres processus)
+		 */
+		public Builder maxAttempts(int maxAttempts) {
+			this.maxAttempts = maxAttempts;
+			return this;
+		}
+
+		/**
+		 * Crée l'index de rollup s'il n'existe pas et démarre le report périodique
+		 */
+		public YearCategoryRollup build() throws IOException {
+			return new YearCategoryRollup(this);
+		}
+	}
+}
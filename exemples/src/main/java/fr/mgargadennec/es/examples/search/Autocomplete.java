@@ -0,0 +1,257 @@
+package fr.mgargadennec.es.examples.search;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.action.suggest.SuggestResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.Fuzziness;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.suggest.SuggestBuilder.SuggestionBuilder;
+import org.elasticsearch.search.suggest.completion.CompletionSuggestion;
+import org.elasticsearch.search.suggest.completion.CompletionSuggestionBuilder;
+import org.elasticsearch.search.suggest.completion.CompletionSuggestionFuzzyBuilder;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import fr.mgargadennec.es.examples.client.AsyncClient;
+
+/**
+ * Autocomplétion sur le titre (search-as-you-type)
+ * Interroge le completion suggester (sous-champ titre.suggest de mapping-suggest.json) : la réponse vient d'un FST
+ * en mémoire, en quelques millisecondes, au lieu d'une recherche complète à chaque frappe. Les fautes de frappe sont
+ * tolérées (fuzzy, 1 caractère d'écart par défaut, sauf sur le premier caractère).
+ *
+ * Une instance par zone de saisie : chaque frappe (type) remplace la précédente.
+ *  - debounce : la requête n'est envoyée que si aucune autre frappe n'arrive pendant le délai
+ *  - annulation : le résultat d'une frappe dépassée est annulé (CancellationException), même si sa requête est
+ *    déjà partie ; une réponse tardive ne peut donc jamais écraser celle d'une saisie plus récente
+ *
+ * @author mgargadennec
+ *
+ */
+public class Autocomplete implements Closeable {
+
+	private static final String SUGGESTION = "titre-suggest";
+
+	private final Client client;
+	private final AsyncClient async;
+	private final String indexName;
+	private final String field;
+	private final int size;
+	private final Fuzziness fuzziness;
+	private final int fuzzyPrefixLength;
+	private final TimeValue debounce;
+	private final int minLength;
+
+	private final AtomicLong keystrokes = new AtomicLong();
+	private final AtomicLong sent = new AtomicLong();
+	private final AtomicLong superseded = new AtomicLong();
+	private final AtomicLong tookMicros = new AtomicLong();
+
+	//Dernière frappe : protégés par le verrou de l'instance
+	private CompletableFuture<List<String>> pending;
+	private ScheduledFuture<?> timer;
+
+	private Autocomplete(Builder builder) {
+		this.client = builder.client;
+		this.async = AsyncClient.builder(builder.client).timeout(builder.timeout).build();
+		this.indexName = builder.indexName;
+		this.field = builder.field;
+		this.size = builder.size;
+		this.fuzziness = builder.fuzziness;
+		this.fuzzyPrefixLength = builder.fuzzyPrefixLength;
+		this.debounce = builder.debounce;
+		this.minLength = builder.minLength;
+	}
+
+	public static Builder builder(Client client, String indexName) {
+		return new Builder(client, indexName);
+	}
+
+	/**
+	 * Nouvelle saisie : annule la précédente et programme la suggestion après le délai de debounce
+	 * @return les suggestions, ou une annulation si une autre saisie arrive avant la réponse
+	 */
+	public synchronized CompletableFuture<List<String>> type(String text) {
+		keystrokes.incrementAndGet();
+		cancelPending();
+
+		CompletableFuture<List<String>> future = new CompletableFuture<>();
+		pending = future;
+		if (text == null || text.trim().length() < minLength) {
+			future.complete(Collections.<String> emptyList());
+			return future;
+		}
+		timer = client.threadPool().schedule(debounce, ThreadPool.Names.SAME, () -> {
+			if (!future.isDone()) {
+				suggest(text).whenComplete((suggestions, failure) -> {
+					if (failure != null) {
+						future.completeExceptionally(failure);
+					} else {
+						future.complete(suggestions);
+					}
+				});
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Suggestions immédiates, sans debounce
+	 */
+	public CompletableFuture<List<String>> suggest(String text) {
+		sent.incrementAndGet();
+		long start = System.nanoTime();
+		return async.execute(client.prepareSuggest(indexName).addSuggestion(buildSuggestion(text)))
+				.thenApply(response -> {
+					tookMicros.addAndGet((System.nanoTime() - start) / 1000);
+					return toSuggestions(response);
+				});
+	}
+
+	private SuggestionBuilder<?> buildSuggestion(String text) {
+		if (fuzziness == null) {
+			return new CompletionSuggestionBuilder(SUGGESTION).field(field).text(text).size(size);
+		}
+		return new CompletionSuggestionFuzzyBuilder(SUGGESTION)
+				.setFuzziness(fuzziness)
+				.setFuzzyPrefixLength(fuzzyPrefixLength)
+				//Distance comptée en caractères et non en octets UTF-8 : "premiere" est à 1 d'écart de "première"
+				.setUnicodeAware(true)
+				.field(field)
+				.text(text)
+				.size(size);
+	}
+
+	private List<String> toSuggestions(SuggestResponse response) {
+		//Plusieurs documents peuvent porter le même titre : une seule suggestion par texte
+		Set<String> suggestions = new LinkedHashSet<String>();
+		CompletionSuggestion suggestion = response.getSuggest().getSuggestion(SUGGESTION);
+		if (suggestion != null) {
+			for (CompletionSuggestion.Entry entry : suggestion.getEntries()) {
+				for (CompletionSuggestion.Entry.Option option : entry.getOptions()) {
+					suggestions.add(option.getText().string());
+				}
+			}
+		}
+		return new ArrayList<String>(suggestions);
+	}
+
+	private void cancelPending() {
+		if (timer != null) {
+			timer.cancel(false);
+		}
+		if (pending != null && pending.cancel(false)) {
+			superseded.incrementAndGet();
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		cancelPending();
+	}
+
+	public long getKeystrokes() {
+		return keystrokes.get();
+	}
+
+	public long getSent() {
+		return sent.get();
+	}
+
+	public long getSuperseded() {
+		return superseded.get();
+	}
+
+	@Override
+	public String toString() {
+		long requests = sent.get();
+		return keystrokes.get() + " keystrokes, " + requests + " suggest requests sent, " + superseded.get()
+				+ " superseded, mean latency " + (requests == 0 ? 0 : tookMicros.get() / requests / 1000d) + "ms";
+	}
+
+	public static class Builder {
+
+		private final Client client;
+		private final String indexName;
+		private String field = "titre.suggest";
+		private int size = 5;
+		private Fuzziness fuzziness = Fuzziness.ONE;
+		private int fuzzyPrefixLength = 1;
+		private TimeValue debounce = TimeValue.timeValueMillis(100);
+		private int minLength = 2;
+		private TimeValue timeout = TimeValue.timeValueSeconds(1);
+
+		private Builder(Client client, String indexName) {
+			this.client = client;
+			this.indexName = indexName;
+		}
+
+		/**
+		 * Champ de type completion interrogé
+		 */
+		public Builder field(String field) {
+			this.field = field;
+			return this;
+		}
+
+		/**
+		 * Nombre maximum de suggestions
+		 */
+		public Builder size(int size) {
+			this.size = size;
+			return this;
+		}
+
+		/**
+		 * Tolérance aux fautes de frappe (null : pas de fuzzy)
+		 */
+		public Builder fuzziness(Fuzziness fuzziness) {
+			this.fuzziness = fuzziness;
+			return this;
+		}
+
+		/**
+		 * Nombre de premiers caractères qui doivent être exacts
+		 */
+		public Builder fuzzyPrefixLength(int fuzzyPrefixLength) {
+			this.fuzzyPrefixLength = fuzzyPrefixLength;
+			return this;
+		}
+
+		/**
+		 * Délai sans frappe avant l'envoi de la requête
+		 */
+		public Builder debounce(TimeValue debounce) {
+			this.debounce = debounce;
+			return this;
+		}
+
+		/**
+		 * Longueur minimale de la saisie (en dessous : aucune suggestion, aucune requête)
+		 */
+		public Builder minLength(int minLength) {
+			this.minLength = minLength;
+			return this;
+		}
+
+		/**
+		 * Au-delà, la suggestion est abandonnée : elle n'est plus utile à l'utilisateur
+		 */
+		public Builder timeout(TimeValue timeout) {
+			this.timeout = timeout;
+			return this;
+		}
+
+		public Autocomplete build() {
+			return new Autocomplete(this);
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package fr.mgargadennec.es.examples.search;
+
+import org.elasticsearch.common.joda.time.DateTime;
+import org.elasticsearch.common.joda.time.DateTimeZone;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.FilterBuilder;
+import org.elasticsearch.index.query.FilterBuilders;
+
+/**
+ * Filtre explicitement mis en cache, avec une clé de cache stable
+ * Deux contraintes identiques produisent la même clé : le bitset calculé pour un segment est réutilisé par toutes
+ * les recherches suivantes, au lieu d'être recalculé à partir de la sérialisation du filtre.
+ *
+ * Les bornes de createdAt sont arrondies au jour (UTC) et résolues côté client : "les 30 derniers jours" donne la
+ * même clé toute la journée, puis une nouvelle clé le lendemain (jamais un bitset périmé).
+ *
+ * @author mgargadennec
+ *
+ */
+public class CachedFilter {
+
+	public static final String YEAR = "year";
+	public static final String CREATED_AT = "createdAt";
+
+	private final String cacheKey;
+	private final FilterBuilder filter;
+	private final long createdAtFrom;
+	private final long createdAtTo;
+
+	private CachedFilter(String cacheKey, FilterBuilder filter) {
+		this(cacheKey, filter, Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+
+	private CachedFilter(String cacheKey, FilterBuilder filter, long createdAtFrom, long createdAtTo) {
+		this.cacheKey = cacheKey;
+		this.filter = filter;
+		this.createdAtFrom = createdAtFrom;
+		this.createdAtTo = createdAtTo;
+	}
+
+	/**
+	 * year = valeur exacte
+	 */
+	public static CachedFilter year(int year) {
+		String key = YEAR + ":" + year;
+		return new CachedFilter(key, FilterBuilders.termFilter(YEAR, year).cache(true).cacheKey(key));
+	}
+
+	/**
+	 * from <= year <= to
+	 */
+	public static CachedFilter yearBetween(int from, int to) {
+		String key = YEAR + ":[" + from + " TO " + to + "]";
+		return new CachedFilter(key, FilterBuilders.rangeFilter(YEAR).gte(from).lte(to).cache(true).cacheKey(key));
+	}
+
+	/**
+	 * createdAt entre le début du jour de from et la fin du jour de to
+	 */
+	public static CachedFilter createdAtBetween(DateTime from, DateTime to) {
+		long fromMillis = from.withZone(DateTimeZone.UTC).withTimeAtStartOfDay().getMillis();
+		long toMillis = to.withZone(DateTimeZone.UTC).withTimeAtStartOfDay().plusDays(1).getMillis();
+		return createdAtRange(fromMillis, toMillis);
+	}
+
+	/**
+	 * fromMillis <= createdAt < toMillis, sans arrondi : la clé n'est stable que si les bornes le sont
+	 */
+	public static CachedFilter createdAtRange(long fromMillis, long toMillis) {
+		String key = CREATED_AT + ":[" + fromMillis + " TO " + toMillis + "[";
+		return new CachedFilter(key, FilterBuilders.rangeFilter(CREATED_AT).gte(fromMillis).lt(toMillis).cache(true).cacheKey(key),
+				fromMillis, toMillis);
+	}
+
+	/**
+	 * createdAt sur la période écoulée (arrondie au jour)
+	 */
+	public static CachedFilter createdAtWithin(TimeValue period) {
+		return createdAtWithin(period, DateTime.now(DateTimeZone.UTC).getMillis());
+	}
+
+	/**
+	 * createdAt sur la période précédant la date de référence (arrondie au jour), pour un corpus généré
+	 */
+	public static CachedFilter createdAtWithin(TimeValue period, long referenceTime) {
+		DateTime reference = new DateTime(referenceTime, DateTimeZone.UTC);
+		return createdAtBetween(reference.minus(period.millis()), reference);
+	}
+
+	public String getCacheKey() {
+		return cacheKey;
+	}
+
+	public FilterBuilder getFilter() {
+		return filter;
+	}
+
+	/**
+	 * Début (inclus) de l'intervalle de createdAt, Long.MIN_VALUE si le filtre ne porte pas sur createdAt
+	 */
+	public long getCreatedAtFrom() {
+		return createdAtFrom;
+	}
+
+	/**
+	 * Fin (exclue) de l'intervalle de createdAt, Long.MAX_VALUE si le filtre ne porte pas sur createdAt
+	 */
+	public long getCreatedAtTo() {
+		return createdAtTo;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof CachedFilter && ((CachedFilter) o).cacheKey.equals(cacheKey);
+	}
+
+	@Override
+	public int hashCode() {
+		return cacheKey.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return cacheKey;
+	}
+}
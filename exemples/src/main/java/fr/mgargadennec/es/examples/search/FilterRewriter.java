@@ -0,0 +1,305 @@
+package fr.mgargadennec.es.examples.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.common.collect.Maps;
+import org.elasticsearch.common.joda.time.format.DateTimeFormatter;
+import org.elasticsearch.common.joda.time.format.ISODateTimeFormat;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.index.query.BoolFilterBuilder;
+import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+
+import com.google.common.base.Throwables;
+
+/**
+ * Réécriture des recherches filtrées
+ * rewrite(query) sort de la requête les contraintes exactes (term) ou par intervalle (range) sur year et createdAt,
+ * et les applique en amont sous forme de filtres en cache (CachedFilter), dans une filteredQuery : elles ne
+ * participent plus au score et leurs bitsets sont réutilisés d'une recherche à l'autre.
+ *
+ * Les contraintes sont cherchées là où les retirer ne change pas les documents trouvés : la requête elle-même, les
+ * clauses must d'une bool query ou d'un bool filter, la query et le filter d'une filtered query (récursivement). Les
+ * clauses should et must_not, les bornes relatives ("now-1d") ou avec format/time_zone sont laissées telles quelles.
+ * La partie restante de la requête est renvoyée telle quelle (wrapperQuery de sa sérialisation).
+ *
+ * apply(query, filters) applique des filtres déjà construits. Dans les deux cas, les filtres utilisés sont comptés,
+ * pour que le WarmerManager puisse préchauffer les plus fréquents sur les nouveaux segments.
+ *
+ * @author mgargadennec
+ *
+ */
+public class FilterRewriter {
+
+	private static final DateTimeFormatter DATE_PARSER = ISODateTimeFormat.dateOptionalTimeParser().withZoneUTC();
+
+	private final ConcurrentMap<CachedFilter, AtomicLong> usages = new ConcurrentHashMap<CachedFilter, AtomicLong>();
+
+	/**
+	 * Extrait les contraintes sur year et createdAt de la requête et les applique en filtres en cache
+	 * @return la requête d'origine si elle ne contient aucune contrainte extractible
+	 */
+	public QueryBuilder rewrite(QueryBuilder query) {
+		Map<String, Object> source = XContentHelper.convertToMap(query.buildAsBytes(), true).v2();
+		List<CachedFilter> filters = new ArrayList<CachedFilter>();
+		Map<String, Object> remaining = extract(source, false, filters);
+		if (filters.isEmpty()) {
+			return query;
+		}
+		QueryBuilder rest = remaining == null ? QueryBuilders.matchAllQuery() : QueryBuilders.wrapperQuery(toJson(remaining));
+		return apply(rest, filters.toArray(new CachedFilter[filters.size()]));
+	}
+
+	/**
+	 * Applique les filtres à la requête
+	 */
+	public QueryBuilder apply(QueryBuilder query, CachedFilter... filters) {
+		if (filters.length == 0) {
+			return query;
+		}
+		for (CachedFilter filter : filters) {
+			track(filter);
+		}
+		if (filters.length == 1) {
+			return QueryBuilders.filteredQuery(query, filters[0].getFilter());
+		}
+		//Chaque sous-filtre est en cache : le bool se contente de combiner leurs bitsets
+		BoolFilterBuilder bool = FilterBuilders.boolFilter();
+		for (CachedFilter filter : filters) {
+			bool.must(filter.getFilter());
+		}
+		return QueryBuilders.filteredQuery(query, bool);
+	}
+
+	public long getUsage(CachedFilter filter) {
+		AtomicLong usage = usages.get(filter);
+		return usage == null ? 0 : usage.get();
+	}
+
+	/**
+	 * Retire les contraintes d'une requête ou d'un filtre sérialisé (modifié sur place)
+	 * @return ce qui reste, null si l'élément n'était qu'une contrainte (équivalent à match_all)
+	 */
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> extract(Map<String, Object> element, boolean filter, List<CachedFilter> filters) {
+		if (element.size() != 1) {
+			return element;
+		}
+		String name = element.keySet().iterator().next();
+		if (!(element.get(name) instanceof Map)) {
+			return element;
+		}
+		Map<String, Object> body = (Map<String, Object>) element.get(name);
+
+		CachedFilter constraint = null;
+		if ("term".equals(name)) {
+			constraint = term(body, filter);
+		} else if ("range".equals(name)) {
+			constraint = range(body, filter);
+		} else if ("bool".equals(name)) {
+			return bool(element, body, filter, filters);
+		} else if ("filtered".equals(name) && !filter) {
+			return filtered(element, body, filters);
+		}
+		if (constraint == null) {
+			return element;
+		}
+		filters.add(constraint);
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> bool(Map<String, Object> element, Map<String, Object> body, boolean filter,
+			List<CachedFilter> filters) {
+		Object must = body.get("must");
+		if (must == null) {
+			return element;
+		}
+		List<Object> clauses = must instanceof List ? (List<Object>) must : Collections.singletonList(must);
+		List<Object> kept = new ArrayList<Object>();
+		for (Object clause : clauses) {
+			if (!(clause instanceof Map)) {
+				kept.add(clause);
+				continue;
+			}
+			Map<String, Object> remaining = extract((Map<String, Object>) clause, filter, filters);
+			if (remaining != null) {
+				kept.add(remaining);
+			}
+		}
+		if (!kept.isEmpty()) {
+			body.put("must", kept);
+			return element;
+		}
+		body.remove("must");
+		if (body.containsKey("should")) {
+			//Sans must, au moins un should deviendrait obligatoire : un match_all garde la sémantique d'origine
+			body.put("must", matchAll());
+			return element;
+		}
+		return body.containsKey("must_not") ? element : null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> filtered(Map<String, Object> element, Map<String, Object> body, List<CachedFilter> filters) {
+		if (body.get("query") instanceof Map) {
+			Map<String, Object> query = extract((Map<String, Object>) body.get("query"), false, filters);
+			if (query == null) {
+				body.remove("query");
+			} else {
+				body.put("query", query);
+			}
+		}
+		if (body.get("filter") instanceof Map) {
+			Map<String, Object> remaining = extract((Map<String, Object>) body.get("filter"), true, filters);
+			if (remaining == null) {
+				body.remove("filter");
+			} else {
+				body.put("filter", remaining);
+			}
+		}
+		if (body.containsKey("filter")) {
+			return element;
+		}
+		//Plus de filtre : la filtered query se réduit à sa query (match_all si elle n'en a plus)
+		return body.get("query") instanceof Map ? (Map<String, Object>) body.get("query") : null;
+	}
+
+	/**
+	 * {"year" : 2015}, {"year" : {"value" : 2015}} ; _cache et _cache_key sont ignorés pour un filtre
+	 */
+	@SuppressWarnings("unchecked")
+	private CachedFilter term(Map<String, Object> body, boolean filter) {
+		Map.Entry<String, Object> field = singleField(body, filter);
+		if (field == null || !CachedFilter.YEAR.equals(field.getKey())) {
+			return null;
+		}
+		Object value = field.getValue();
+		if (value instanceof Map) {
+			Map<String, Object> params = (Map<String, Object>) value;
+			boolean valueOnly = params.size() == (params.containsKey("boost") ? 2 : 1);
+			value = valueOnly ? params.get("value") : null;
+		}
+		return value instanceof Number ? CachedFilter.year(((Number) value).intValue()) : null;
+	}
+
+	/**
+	 * Bornes from/to/include_lower/include_upper (ou gt, gte, lt, lte), toutes deux présentes
+	 */
+	@SuppressWarnings("unchecked")
+	private CachedFilter range(Map<String, Object> body, boolean filter) {
+		Map.Entry<String, Object> field = singleField(body, filter);
+		if (field == null || !(field.getValue() instanceof Map)) {
+			return null;
+		}
+		boolean year = CachedFilter.YEAR.equals(field.getKey());
+		if (!year && !CachedFilter.CREATED_AT.equals(field.getKey())) {
+			return null;
+		}
+		Object from = null;
+		Object to = null;
+		boolean includeLower = true;
+		boolean includeUpper = true;
+		for (Map.Entry<String, Object> param : ((Map<String, Object>) field.getValue()).entrySet()) {
+			String key = param.getKey();
+			if ("from".equals(key) || "gte".equals(key) || "gt".equals(key)) {
+				from = param.getValue();
+				includeLower = includeLower && !"gt".equals(key);
+			} else if ("to".equals(key) || "lte".equals(key) || "lt".equals(key)) {
+				to = param.getValue();
+				includeUpper = includeUpper && !"lt".equals(key);
+			} else if ("include_lower".equals(key)) {
+				includeLower = includeLower && Boolean.TRUE.equals(param.getValue());
+			} else if ("include_upper".equals(key)) {
+				includeUpper = includeUpper && Boolean.TRUE.equals(param.getValue());
+			} else if (!"boost".equals(key)) {
+				//format, time_zone, ... : interprétation laissée à Elasticsearch
+				return null;
+			}
+		}
+		Long lower = year ? asYear(from) : asMillis(from);
+		Long upper = year ? asYear(to) : asMillis(to);
+		if (lower == null || upper == null) {
+			return null;
+		}
+		long fromInclusive = includeLower ? lower : lower + 1;
+		long toExclusive = includeUpper ? upper + 1 : upper;
+		if (year) {
+			return CachedFilter.yearBetween((int) fromInclusive, (int) (toExclusive - 1));
+		}
+		return CachedFilter.createdAtRange(fromInclusive, toExclusive);
+	}
+
+	/**
+	 * Le seul champ contraint ; pour un filtre, _cache et _cache_key sont ignorés (le CachedFilter les remplace)
+	 */
+	private Map.Entry<String, Object> singleField(Map<String, Object> body, boolean filter) {
+		Map.Entry<String, Object> field = null;
+		for (Map.Entry<String, Object> entry : body.entrySet()) {
+			if (filter && ("_cache".equals(entry.getKey()) || "_cache_key".equals(entry.getKey()))) {
+				continue;
+			}
+			if (field != null) {
+				return null;
+			}
+			field = entry;
+		}
+		return field;
+	}
+
+	private static Long asYear(Object value) {
+		return value instanceof Integer || value instanceof Long ? ((Number) value).longValue() : null;
+	}
+
+	/**
+	 * Millisecondes ou date ISO ; null pour les expressions relatives (now-1d, ||/d...)
+	 */
+	private static Long asMillis(Object value) {
+		if (value instanceof Integer || value instanceof Long) {
+			return ((Number) value).longValue();
+		}
+		if (value instanceof String) {
+			try {
+				return DATE_PARSER.parseMillis((String) value);
+			} catch (IllegalArgumentException e) {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	private static Map<String, Object> matchAll() {
+		Map<String, Object> matchAll = Maps.newHashMap();
+		matchAll.put("match_all", Maps.newHashMap());
+		return matchAll;
+	}
+
+	private static String toJson(Map<String, Object> source) {
+		try {
+			return XContentFactory.jsonBuilder().map(source).string();
+		} catch (IOException e) {
+			throw Throwables.propagate(e);
+		}
+	}
+
+	private void track(CachedFilter filter) {
+		AtomicLong usage = usages.get(filter);
+		if (usage == null) {
+			AtomicLong created = new AtomicLong();
+			usage = usages.putIfAbsent(filter, created);
+			if (usage == null) {
+				usage = created;
+			}
+		}
+		usage.incrementAndGet();
+	}
+}
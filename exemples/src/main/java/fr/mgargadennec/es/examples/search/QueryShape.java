@@ -0,0 +1,100 @@
+package fr.mgargadennec.es.examples.search;
+
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.base.Strings;
+import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+
+/**
+ * Les familles de requêtes présentées dans les exemples 3 à 7
+ * Permet aux outils de mesure (benchmarks, injecteur de charge) de rejouer exactement les mêmes requêtes.
+ *
+ * @author mgargadennec
+ *
+ */
+public enum QueryShape {
+
+	/**
+	 * Exemple 3 : queryStringQuery
+	 */
+	QUERY_STRING {
+		@Override
+		public SearchRequestBuilder prepare(Client client, String indexName, String queryString, int year) {
+			return client.prepareSearch(indexName).setQuery(QueryBuilders.queryStringQuery(queryString));
+		}
+	},
+
+	/**
+	 * Exemple 4 : functionScoreQuery sur titre^10 et sousTitre
+	 */
+	FUNCTION_SCORE {
+		@Override
+		public SearchRequestBuilder prepare(Client client, String indexName, String queryString, int year) {
+			return client.prepareSearch(indexName).setQuery(
+					QueryBuilders.functionScoreQuery(QueryBuilders.queryStringQuery(queryString)
+							.field("titre", 10)
+							.field("sousTitre")));
+		}
+	},
+
+	/**
+	 * Exemple 5 : boolQuery should/mustNot de simpleQueryStringQuery
+	 */
+	BOOL_SIMPLE_QUERY_STRING {
+		@Override
+		public SearchRequestBuilder prepare(Client client, String indexName, String queryString, int year) {
+			return client.prepareSearch(indexName).setQuery(
+					QueryBuilders.boolQuery()
+							.should(QueryBuilders.simpleQueryStringQuery(queryString))
+							.mustNot(QueryBuilders.simpleQueryStringQuery("cold")));
+		}
+	},
+
+	/**
+	 * Exemple 6 : filteredQuery + termFilter sur l'année
+	 */
+	FILTERED_YEAR {
+		@Override
+		public SearchRequestBuilder prepare(Client client, String indexName, String queryString, int year) {
+			return client.prepareSearch(indexName).setQuery(
+					QueryBuilders.filteredQuery(
+							QueryBuilders.simpleQueryStringQuery(queryString),
+							FilterBuilders.termFilter("year", year)));
+		}
+	},
+
+	/**
+	 * Exemple 7 : agrégation terms par année, sous-agrégation terms par catégorie (matchAll si saisie vide)
+	 */
+	AGGREGATIONS {
+		@Override
+		public SearchRequestBuilder prepare(Client client, String indexName, String queryString, int year) {
+			return client.prepareSearch(indexName)
+					.setQuery(Strings.isNullOrEmpty(queryString) ?
+							QueryBuilders.matchAllQuery()
+							:
+							QueryBuilders.simpleQueryStringQuery(queryString))
+					.addAggregation(
+							AggregationBuilders
+									.terms("byYear")
+									.field("year")
+									.size(25)
+									.order(Terms.Order.term(false))
+									.subAggregation(
+											AggregationBuilders
+													.terms("byCategory")
+													.field("category")
+													.size(5)));
+		}
+	};
+
+	/**
+	 * Prépare la requête
+	 * @param queryString la saisie utilisateur
+	 * @param year l'année filtrée (utilisée uniquement par FILTERED_YEAR)
+	 */
+	public abstract SearchRequestBuilder prepare(Client client, String indexName, String queryString, int year);
+}
@@ -0,0 +1,58 @@
+package fr.mgargadennec.es.examples.search;
+
+import org.elasticsearch.action.search.SearchRequestBuilder;
+
+/**
+ * Contenu des hits renvoyés par une recherche
+ * Par défaut, chaque hit transporte son _source complet, même si seul le titre est affiché : le source filtering
+ * (setFetchSource) ne renvoie que les champs utiles, et setNoFields supprime le _source quand seuls les identifiants
+ * ou les agrégations comptent. Moins d'octets lus sur disque, sérialisés, transférés et désérialisés.
+ *
+ * @author mgargadennec
+ *
+ */
+public enum ResponseProfile {
+
+	/**
+	 * _source complet (comportement par défaut d'Elasticsearch)
+	 */
+	FULL {
+		@Override
+		public SearchRequestBuilder apply(SearchRequestBuilder search) {
+			return search;
+		}
+	},
+
+	/**
+	 * titre uniquement : liste de résultats (exemples 3 à 5)
+	 */
+	TITLES {
+		@Override
+		public SearchRequestBuilder apply(SearchRequestBuilder search) {
+			return search.setFetchSource(new String[] { "titre" }, null);
+		}
+	},
+
+	/**
+	 * titre, année, date et catégorie, sans le sous-titre ni l'id : résultats filtrés (exemple 6)
+	 */
+	SUMMARY {
+		@Override
+		public SearchRequestBuilder apply(SearchRequestBuilder search) {
+			return search.setFetchSource(new String[] { "titre", "year", "createdAt", "category" }, null);
+		}
+	},
+
+	/**
+	 * Ni _source ni champs stockés : _index, _type, _id et _score uniquement (exemple 7, où seules les agrégations
+	 * sont lues)
+	 */
+	IDS {
+		@Override
+		public SearchRequestBuilder apply(SearchRequestBuilder search) {
+			return search.setNoFields().setFetchSource(false);
+		}
+	};
+
+	public abstract SearchRequestBuilder apply(SearchRequestBuilder search);
+}
@@ -0,0 +1,114 @@
+package fr.mgargadennec.es.examples.search;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.text.Text;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHitField;
+import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.highlight.HighlightField;
+
+/**
+ * Affichage d'une réponse de recherche en streaming
+ * searchResponse.toString() construit tout le JSON de la réponse dans un buffer, puis dans une String : pour une grosse
+ * page de résultats, plusieurs copies de la réponse complète sont allouées avant d'afficher le premier caractère.
+ *
+ * Ici, un XContentBuilder écrit directement dans l'OutputStream, hit par hit (flush après chaque hit) : la mémoire
+ * utilisée ne dépend plus que de la taille d'un hit, et le premier résultat s'affiche dès qu'il est sérialisé.
+ * Le _source est recopié tel quel (rawField), sans être désérialisé en Map.
+ *
+ * Le flux n'est jamais fermé (System.out reste utilisable). Les rendus sont sérialisés : deux réponses asynchrones
+ * ne s'entremêlent pas dans le flux.
+ *
+ * @author mgargadennec
+ *
+ */
+public class ResponseRenderer {
+
+	private final OutputStream out;
+	private final boolean pretty;
+
+	public ResponseRenderer(OutputStream out, boolean pretty) {
+		this.out = out;
+		this.pretty = pretty;
+	}
+
+	public synchronized void render(SearchResponse response) throws IOException {
+		XContentBuilder builder = XContentFactory.jsonBuilder(out);
+		if (pretty) {
+			builder.prettyPrint();
+		}
+		builder.startObject();
+		builder.field("took", response.getTookInMillis());
+		builder.field("timed_out", response.isTimedOut());
+
+		SearchHits hits = response.getHits();
+		builder.startObject("hits");
+		builder.field("total", hits.getTotalHits());
+		if (!Float.isNaN(hits.getMaxScore())) {
+			builder.field("max_score", hits.getMaxScore());
+		}
+		builder.startArray("hits");
+		for (SearchHit hit : hits) {
+			renderHit(builder, hit);
+			builder.flush();
+		}
+		builder.endArray();
+		builder.endObject();
+
+		Aggregations aggregations = response.getAggregations();
+		if (aggregations instanceof ToXContent) {
+			((ToXContent) aggregations).toXContent(builder, ToXContent.EMPTY_PARAMS);
+		}
+		if (response.getSuggest() != null) {
+			response.getSuggest().toXContent(builder, ToXContent.EMPTY_PARAMS);
+		}
+		builder.endObject();
+		builder.flush();
+		out.write('\n');
+		out.flush();
+	}
+
+	private void renderHit(XContentBuilder builder, SearchHit hit) throws IOException {
+		builder.startObject();
+		builder.field("_index", hit.getIndex());
+		builder.field("_type", hit.getType());
+		builder.field("_id", hit.getId());
+		if (!Float.isNaN(hit.getScore())) {
+			builder.field("_score", hit.getScore());
+		}
+		//sourceRef() échoue sur une source absente (profil IDS, _source désactivé)
+		if (!hit.isSourceEmpty()) {
+			builder.rawField("_source", hit.sourceRef());
+		}
+		if (hit.getFields() != null && !hit.getFields().isEmpty()) {
+			builder.startObject("fields");
+			for (SearchHitField field : hit.getFields().values()) {
+				builder.field(field.getName(), field.getValues());
+			}
+			builder.endObject();
+		}
+		Map<String, HighlightField> highlightFields = hit.getHighlightFields();
+		if (highlightFields != null && !highlightFields.isEmpty()) {
+			builder.startObject("highlight");
+			for (HighlightField field : highlightFields.values()) {
+				builder.startArray(field.getName());
+				if (field.getFragments() != null) {
+					for (Text fragment : field.getFragments()) {
+						builder.value(fragment.string());
+					}
+				}
+				builder.endArray();
+			}
+			builder.endObject();
+		}
+		builder.endObject();
+	}
+}
@@ -0,0 +1,28 @@
+package fr.mgargadennec.es.examples.util;
+
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+
+/**
+ * Lecture des options des outils en ligne de commande (--option=valeur)
+ * Les options sont rendues sous forme de Settings, pour profiter de getAsInt(), getAsTime(), getAsArray(), ...
+ *
+ * @author mgargadennec
+ *
+ */
+public final class CommandLineOptions {
+
+	private CommandLineOptions() {
+	}
+
+	public static Settings parse(String[] args) {
+		ImmutableSettings.Builder options = ImmutableSettings.settingsBuilder();
+		for (String arg : args) {
+			if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+				throw new IllegalArgumentException("Expected --option=value but got [" + arg + "]");
+			}
+			options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+		}
+		return options.build();
+	}
+}